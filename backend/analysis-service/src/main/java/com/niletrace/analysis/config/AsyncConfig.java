@@ -1,22 +1,24 @@
 package com.niletrace.analysis.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
-
-import java.util.concurrent.Executor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 @Configuration
 public class AsyncConfig {
 
-    @Bean(name = "analysisExecutor")
-    public Executor analysisExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(5);
-        executor.setMaxPoolSize(10);
-        executor.setQueueCapacity(25);
-        executor.setThreadNamePrefix("analysis-");
-        executor.initialize();
-        return executor;
+    /**
+     * Bounded scheduler for the CPU-bound pipeline stages (PII sanitization, sampling,
+     * prompt building). Network waits happen on the HTTP client's event loop, so this
+     * pool only needs to match the available cores; its queue caps work waiting for CPU.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler analysisScheduler(
+            @Value("${analysis.cpu.threads:0}") int threads,
+            @Value("${analysis.cpu.queue-capacity:1000}") int queueCapacity) {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        return Schedulers.newBoundedElastic(poolSize, queueCapacity, "analysis");
     }
 }
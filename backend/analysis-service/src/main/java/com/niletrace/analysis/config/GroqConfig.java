@@ -1,12 +1,23 @@
 package com.niletrace.analysis.config;
 
+import io.netty.channel.ChannelOption;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
+import java.time.Duration;
+
+/**
+ * WebClient for the Groq API on a dedicated, bounded Reactor Netty connection pool.
+ * Pool and client metrics are published to Micrometer under {@code reactor.netty.*}.
+ */
 @Configuration
 public class GroqConfig {
 
@@ -16,12 +27,79 @@ public class GroqConfig {
     @Value("${groq.api.base-url:https://api.groq.com/openai/v1}")
     private String baseUrl;
 
+    @Value("${groq.http.max-connections:100}")
+    private int maxConnections;
+
+    @Value("${groq.http.pending-acquire-max-count:1000}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${groq.http.pending-acquire-timeout-seconds:60}")
+    private int pendingAcquireTimeoutSeconds;
+
+    @Value("${groq.http.max-idle-seconds:30}")
+    private int maxIdleSeconds;
+
+    @Value("${groq.http.max-life-minutes:10}")
+    private int maxLifeMinutes;
+
+    @Value("${groq.http.evict-interval-seconds:30}")
+    private int evictIntervalSeconds;
+
+    @Value("${groq.http.connect-timeout-millis:5000}")
+    private int connectTimeoutMillis;
+
+    @Value("${groq.http.response-timeout-seconds:60}")
+    private int responseTimeoutSeconds;
+
+    @Value("${groq.http.http2:true}")
+    private boolean http2;
+
+    @Value("${groq.http.compress-requests:false}")
+    private boolean compressRequests;
+
+    @Value("${groq.http.metrics:true}")
+    private boolean metrics;
+
+    @Bean(destroyMethod = "disposeLater")
+    public ConnectionProvider groqConnectionProvider() {
+        return ConnectionProvider.builder("groq")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofSeconds(pendingAcquireTimeoutSeconds))
+                // Close connections before the provider's or a proxy's idle timeout does it mid-request
+                .maxIdleTime(Duration.ofSeconds(maxIdleSeconds))
+                .maxLifeTime(Duration.ofMinutes(maxLifeMinutes))
+                .evictInBackground(Duration.ofSeconds(evictIntervalSeconds))
+                .lifo()
+                .metrics(metrics)
+                .build();
+    }
+
     @Bean
-    public WebClient groqWebClient() {
-        return WebClient.builder()
+    public WebClient groqWebClient(ConnectionProvider groqConnectionProvider) {
+        HttpClient httpClient = HttpClient.create(groqConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .keepAlive(true)
+                // Maximum gap between response reads, so a stalled stream fails instead of hanging
+                .responseTimeout(Duration.ofSeconds(responseTimeoutSeconds))
+                // Accept gzip responses
+                .compress(true)
+                .metrics(metrics, uri -> "/chat/completions");
+
+        // HTTP/2 needs TLS with ALPN; HTTP/1.1 stays available as the negotiated fallback
+        if (http2 && baseUrl.startsWith("https")) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+
+        WebClient.Builder builder = WebClient.builder()
                 .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
                 .defaultHeader(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
-                .build();
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        if (compressRequests) {
+            builder.filter(new GzipRequestFilter());
+        }
+        return builder.build();
     }
 }
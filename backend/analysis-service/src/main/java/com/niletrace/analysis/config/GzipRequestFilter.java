@@ -0,0 +1,121 @@
+package com.niletrace.analysis.config;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.reactive.ClientHttpRequestDecorator;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzips request bodies above a minimum size and marks them with {@code Content-Encoding: gzip}.
+ * Prompts carry large, repetitive log excerpts, so they typically shrink several times over.
+ * Bodies are compressed as they are written: each buffer is deflated into small output buffers
+ * and released, so the body is never joined or copied whole. Only the first
+ * {@link #MIN_COMPRESS_BYTES} are held back, to tell small bodies apart; compressed bodies are
+ * sent without a length (chunked).
+ */
+public class GzipRequestFilter implements ExchangeFilterFunction {
+
+    static final int MIN_COMPRESS_BYTES = 1024;
+
+    private static final int OUTPUT_CHUNK_BYTES = 8192;
+
+    // Magic, deflate, no flags, no modification time, no extra flags, unknown OS
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        ClientRequest compressed = ClientRequest.from(request)
+                .body((outputMessage, context) -> request.body().insert(new ClientHttpRequestDecorator(outputMessage) {
+                    @Override
+                    public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                        // The first group holds buffers up to the threshold, or the whole body if it is smaller
+                        AtomicInteger seen = new AtomicInteger();
+                        return Flux.<DataBuffer>from(body)
+                                .bufferUntil(buffer -> seen.addAndGet(buffer.readableByteCount()) >= MIN_COMPRESS_BYTES)
+                                .switchOnFirst((first, groups) -> {
+                                    Flux<DataBuffer> buffers = groups.concatMapIterable(group -> group);
+                                    // Headers are sent when writing starts, so they are settled first
+                                    if (seen.get() < MIN_COMPRESS_BYTES) {
+                                        return super.writeWith(buffers);
+                                    }
+                                    getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+                                    getHeaders().remove(HttpHeaders.CONTENT_LENGTH);
+                                    return super.writeWith(gzip(buffers, bufferFactory()));
+                                })
+                                .then();
+                    }
+                }, context))
+                .build();
+        return next.exchange(compressed);
+    }
+
+    /**
+     * Gzips a stream of buffers, releasing each input buffer once it has been deflated.
+     */
+    static Flux<DataBuffer> gzip(Flux<DataBuffer> body, DataBufferFactory bufferFactory) {
+        return Flux.defer(() -> {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[OUTPUT_CHUNK_BYTES];
+            return Flux.just(bufferFactory.wrap(GZIP_HEADER.clone()))
+                    .concatWith(body.concatMapIterable(buffer -> {
+                        try {
+                            List<DataBuffer> output = new ArrayList<>();
+                            try (DataBuffer.ByteBufferIterator input = buffer.readableByteBuffers()) {
+                                while (input.hasNext()) {
+                                    ByteBuffer bytes = input.next();
+                                    crc.update(bytes.duplicate());
+                                    deflater.setInput(bytes);
+                                    while (!deflater.needsInput()) {
+                                        drain(deflater, chunk, bufferFactory, output);
+                                    }
+                                }
+                            }
+                            return output;
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    }))
+                    .concatWith(Flux.defer(() -> {
+                        List<DataBuffer> output = new ArrayList<>();
+                        deflater.finish();
+                        while (!deflater.finished()) {
+                            drain(deflater, chunk, bufferFactory, output);
+                        }
+                        // Trailer: CRC-32 and uncompressed size, little-endian
+                        output.add(bufferFactory.wrap(ByteBuffer.allocate(8)
+                                .order(ByteOrder.LITTLE_ENDIAN)
+                                .putInt((int) crc.getValue())
+                                .putInt((int) deflater.getBytesRead())
+                                .flip()));
+                        return Flux.fromIterable(output);
+                    }))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    .doFinally(signal -> deflater.end());
+        });
+    }
+
+    private static void drain(Deflater deflater, byte[] chunk, DataBufferFactory bufferFactory,
+                              List<DataBuffer> output) {
+        int length = deflater.deflate(chunk);
+        if (length > 0) {
+            output.add(bufferFactory.allocateBuffer(length).write(chunk, 0, length));
+        }
+    }
+}
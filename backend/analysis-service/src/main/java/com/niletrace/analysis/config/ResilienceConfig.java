@@ -0,0 +1,61 @@
+package com.niletrace.analysis.config;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.core.registry.EntryAddedEvent;
+import io.github.resilience4j.core.registry.EntryRemovedEvent;
+import io.github.resilience4j.core.registry.EntryReplacedEvent;
+import io.github.resilience4j.core.registry.RegistryEventConsumer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Circuit breakers and bulkhead guarding the Groq API. Every model gets its own breaker
+ * (see {@code ModelRouter}) built from {@code resilience4j.circuitbreaker.configs.groq};
+ * the bulkhead, shared by all models, is {@code resilience4j.bulkhead.instances.groq}.
+ * State, call and permit metrics are published by the Resilience4j Micrometer binding,
+ * and state transitions are counted here.
+ */
+@Configuration
+@Slf4j
+public class ResilienceConfig {
+
+    public static final String GROQ = "groq";
+
+    @Bean
+    public RegistryEventConsumer<CircuitBreaker> groqCircuitBreakerTransitions(MeterRegistry meterRegistry) {
+        return new RegistryEventConsumer<>() {
+            @Override
+            public void onEntryAddedEvent(EntryAddedEvent<CircuitBreaker> event) {
+                CircuitBreaker circuitBreaker = event.getAddedEntry();
+                circuitBreaker.getEventPublisher().onStateTransition(transition -> {
+                    log.warn("Circuit breaker {}: {}", circuitBreaker.getName(), transition.getStateTransition());
+                    Counter.builder("groq.circuitbreaker.transitions")
+                            .description("Groq circuit breaker state transitions")
+                            .tag("name", circuitBreaker.getName())
+                            .tag("from", transition.getStateTransition().getFromState().name())
+                            .tag("to", transition.getStateTransition().getToState().name())
+                            .register(meterRegistry)
+                            .increment();
+                });
+            }
+
+            @Override
+            public void onEntryRemovedEvent(EntryRemovedEvent<CircuitBreaker> event) {
+            }
+
+            @Override
+            public void onEntryReplacedEvent(EntryReplacedEvent<CircuitBreaker> event) {
+            }
+        };
+    }
+
+    @Bean
+    public Bulkhead groqBulkhead(BulkheadRegistry registry) {
+        return registry.bulkhead(GROQ);
+    }
+}
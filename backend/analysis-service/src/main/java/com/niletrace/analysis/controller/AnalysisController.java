@@ -4,8 +4,10 @@ import com.niletrace.analysis.dto.AnalysisJobResponse;
 import com.niletrace.analysis.dto.AnalysisResultResponse;
 import com.niletrace.analysis.dto.IncidentSnapshot;
 import com.niletrace.analysis.dto.JobStatus;
+import com.niletrace.analysis.dto.LogPreviewResponse;
 import com.niletrace.analysis.service.AnalysisService;
 import com.niletrace.analysis.service.JobManagerService;
+import com.niletrace.analysis.service.ReportStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -16,15 +18,22 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.UUID;
 
 /**
  * REST Controller for the Analysis Service API.
- * Provides endpoints for submitting analysis jobs and polling for results.
+ * Provides endpoints for submitting analysis jobs and polling, long-polling or subscribing for results.
  */
 @RestController
 @RequestMapping("/api/analysis")
@@ -35,6 +44,10 @@ public class AnalysisController {
 
     private final AnalysisService analysisService;
     private final JobManagerService jobManagerService;
+    private final ReportStreamService reportStreamService;
+
+    @Value("${analysis.job.max-wait-seconds:60}")
+    private int maxWaitSeconds;
 
     /**
      * Submit a new analysis job.
@@ -44,7 +57,8 @@ public class AnalysisController {
     @Operation(summary = "Submit analysis job", description = "Submits an incident snapshot for AI-powered analysis. Returns a job ID for polling.")
     @ApiResponses({
             @ApiResponse(responseCode = "202", description = "Job accepted and queued for processing"),
-            @ApiResponse(responseCode = "400", description = "Invalid request payload")
+            @ApiResponse(responseCode = "400", description = "Invalid request payload"),
+            @ApiResponse(responseCode = "429", description = "LLM token budget exceeded")
     })
     public ResponseEntity<AnalysisJobResponse> submitAnalysisJob(
             @Valid @RequestBody IncidentSnapshot snapshot) {
@@ -82,6 +96,127 @@ public class AnalysisController {
                 });
     }
 
+    /**
+     * Long poll for a job: answers once the job reaches {@code waitFor} or finishes, or with its
+     * current state after {@code timeout} (capped at {@code analysis.job.max-wait-seconds}).
+     */
+    @GetMapping(value = "/jobs/{jobId}", params = "waitFor")
+    @Operation(summary = "Wait for job status", description = "Holds the request until the job reaches the given status or finishes, then returns its status and result. Returns the current state when the timeout passes first.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Job found", content = @Content(schema = @Schema(implementation = AnalysisResultResponse.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid timeout"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    public Mono<ResponseEntity<AnalysisResultResponse>> awaitJobResult(
+            @Parameter(description = "Job UUID") @PathVariable UUID jobId,
+            @Parameter(description = "Status to wait for") @RequestParam JobStatus waitFor,
+            @Parameter(description = "Longest wait, e.g. 30s") @RequestParam(defaultValue = "30s") String timeout) {
+        Duration wait = parseTimeout(timeout);
+        log.debug("Waiting up to {} for job {} to reach {}", wait, jobId, waitFor);
+
+        return jobManagerService.awaitStatus(jobId, waitFor, wait)
+                .map(ResponseEntity::ok)
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    private Duration parseTimeout(String timeout) {
+        Duration wait;
+        try {
+            wait = DurationStyle.detectAndParse(timeout);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        }
+        if (wait.isNegative()) {
+            throw new IllegalArgumentException("Invalid timeout: " + timeout);
+        }
+        Duration max = Duration.ofSeconds(maxWaitSeconds);
+        return wait.compareTo(max) > 0 ? max : wait;
+    }
+
+    /**
+     * Stream the status transitions of an analysis job.
+     * Emits a {@code status} event with the current status, then one per change, ending after
+     * COMPLETED or FAILED; the result is then fetched once from {@code GET /jobs/{jobId}}.
+     */
+    @GetMapping(value = "/jobs/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream job status", description = "Server-sent events with each status transition of the job, ending once it has finished.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Event stream opened"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamJobStatus(
+            @Parameter(description = "Job UUID") @PathVariable UUID jobId) {
+        if (!jobManagerService.jobExists(jobId)) {
+            log.warn("Job not found: {}", jobId);
+            return ResponseEntity.notFound().build();
+        }
+
+        return ResponseEntity.ok(jobManagerService.statusChanges(jobId)
+                .map(status -> ServerSentEvent.builder(status.name()).event("status").build()));
+    }
+
+    /**
+     * Stream the report of an analysis job as it is generated.
+     * Emits {@code token} events with report fragments, then a {@code done} event, or an
+     * {@code error} event if the job fails. Finished jobs are replayed as a single token event.
+     */
+    @GetMapping(value = "/jobs/{jobId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Stream job report", description = "Server-sent events with the report tokens as the LLM generates them.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Event stream opened"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    public ResponseEntity<Flux<ServerSentEvent<String>>> streamJobReport(
+            @Parameter(description = "Job UUID") @PathVariable UUID jobId) {
+        if (!jobManagerService.jobExists(jobId)) {
+            log.warn("Job not found: {}", jobId);
+            return ResponseEntity.notFound().build();
+        }
+
+        Flux<ServerSentEvent<String>> events = reportStreamService.tokens(jobId)
+                .map(tokens -> tokens
+                        .map(token -> ServerSentEvent.builder(token).event("token").build())
+                        .concatWith(Flux.just(doneEvent(jobId)))
+                        .onErrorResume(e -> Flux.just(errorEvent(e.getMessage()))))
+                .orElseGet(() -> finishedJobEvents(jobId));
+
+        return ResponseEntity.ok(events);
+    }
+
+    private Flux<ServerSentEvent<String>> finishedJobEvents(UUID jobId) {
+        return jobManagerService.getJobResult(jobId)
+                .map(result -> switch (result.getStatus()) {
+                    case COMPLETED -> Flux.just(
+                            ServerSentEvent.builder(result.getMarkdownReport()).event("token").build(),
+                            doneEvent(jobId));
+                    case FAILED -> Flux.just(errorEvent(result.getErrorMessage()));
+                    default -> Flux.just(errorEvent("Report stream is not available for this job"));
+                })
+                .orElseGet(() -> Flux.just(errorEvent("Job not found")));
+    }
+
+    private static ServerSentEvent<String> doneEvent(UUID jobId) {
+        return ServerSentEvent.builder(jobId.toString()).event("done").build();
+    }
+
+    private static ServerSentEvent<String> errorEvent(String message) {
+        return ServerSentEvent.builder(message != null ? message : "Analysis failed").event("error").build();
+    }
+
+    /**
+     * Preview the log content that would be sent to the LLM.
+     */
+    @PostMapping("/preview")
+    @Operation(summary = "Preview sanitized log", description = "Runs PII sanitization and priority-preserving sampling on the snapshot's log content without starting an analysis job.")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Preview generated"),
+            @ApiResponse(responseCode = "400", description = "Invalid request payload")
+    })
+    public ResponseEntity<LogPreviewResponse> previewLogs(@Valid @RequestBody IncidentSnapshot snapshot) {
+        log.debug("Generating log preview for incident {}", snapshot.getIncidentId());
+        return ResponseEntity.ok(analysisService.previewLogs(snapshot));
+    }
+
     /**
      * Health check endpoint.
      */
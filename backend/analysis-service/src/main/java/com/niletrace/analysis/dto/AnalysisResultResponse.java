@@ -6,6 +6,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -24,4 +25,10 @@ public class AnalysisResultResponse {
     private Instant createdAt;
     private Instant completedAt;
     private int piiEntitiesMasked;
+    private String model; // model that wrote the report
+    private String routingDecision;
+    private List<ModelCall> modelCalls;
+    private int promptTokens; // billed tokens over all model calls
+    private int completionTokens;
+    private double estimatedCostUsd;
 }
@@ -0,0 +1,50 @@
+package com.niletrace.analysis.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One server-sent chunk of a streamed Groq Chat Completions response.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class GroqChatChunk {
+    private String id;
+    private String model;
+    private List<Choice> choices;
+    private GroqChatResponse.Usage usage; // OpenAI-style final chunk
+    private XGroq x_groq; // Groq reports usage of a stream here, on the final chunk
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Choice {
+        private int index;
+        private Delta delta;
+        private String finish_reason;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class XGroq {
+        private GroqChatResponse.Usage usage;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public static class Delta {
+        private String role;
+        private String content;
+    }
+}
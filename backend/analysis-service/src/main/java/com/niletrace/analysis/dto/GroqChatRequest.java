@@ -19,6 +19,7 @@ public class GroqChatRequest {
     private List<Message> messages;
     private double temperature;
     private int max_tokens;
+    private boolean stream;
 
     @Data
     @Builder
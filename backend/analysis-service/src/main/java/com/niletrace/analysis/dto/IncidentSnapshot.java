@@ -15,7 +15,7 @@ import java.util.UUID;
  * This is the contract between incident-service and analysis-service.
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class IncidentSnapshot {
@@ -45,6 +45,7 @@ public class IncidentSnapshot {
     private String serviceName;
     private String environment; // production, staging, dev
     private String region;
+    private String ownerId; // for per-owner token budgets
 
     // Convenience method to get Severity enum if needed
     public Severity getSeverityEnum() {
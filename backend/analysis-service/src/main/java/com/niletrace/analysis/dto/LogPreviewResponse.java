@@ -0,0 +1,28 @@
+package com.niletrace.analysis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+/**
+ * Sanitized and sampled log content as it would be sent to the LLM.
+ * Digested logs are previewed as the digest followed by the raw sample.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LogPreviewResponse {
+    private UUID incidentId;
+    private String content;
+    private boolean sampled;
+    private boolean digested;
+    private int totalLines;
+    private int keptLines;
+    private int priorityLines;
+    private int originalChars;
+    private int piiEntitiesMasked;
+}
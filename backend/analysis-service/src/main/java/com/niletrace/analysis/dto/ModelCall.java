@@ -0,0 +1,33 @@
+package com.niletrace.analysis.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * One LLM call made for a job (or skipped by routing), in the order it happened.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ModelCall {
+
+    public enum Outcome {
+        SUCCEEDED, CACHED, FAILED, SKIPPED,
+        CANCELLED // lost a hedged race to a faster request, or the report timed out
+    }
+
+    private String model;
+    private String purpose; // report, reduce, chunk i/n, section i/n
+    private Outcome outcome;
+    private long latencyMillis; // total, including queue wait
+    private long queueWaitMillis; // waiting for rate-limit capacity
+    private long timeToFirstTokenMillis;
+    private int promptTokens;
+    private int completionTokens;
+    private boolean usageEstimated; // provider did not report usage; counts are local estimates
+    private double estimatedCostUsd;
+    private String detail; // failure or skip reason, or "hedge" for a hedge request
+}
@@ -0,0 +1,12 @@
+package com.niletrace.analysis.exception;
+
+/**
+ * Thrown when the LLM provider is not called at all because the circuit breaker is open
+ * or the concurrency bulkhead is full.
+ */
+public class LlmUnavailableException extends RuntimeException {
+
+    public LlmUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
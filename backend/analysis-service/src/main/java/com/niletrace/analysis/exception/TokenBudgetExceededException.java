@@ -0,0 +1,12 @@
+package com.niletrace.analysis.exception;
+
+/**
+ * Thrown when a job is submitted after the global or per-owner LLM token budget is used up
+ * and the budget is configured to reject.
+ */
+public class TokenBudgetExceededException extends RuntimeException {
+
+    public TokenBudgetExceededException(String message) {
+        super(message);
+    }
+}
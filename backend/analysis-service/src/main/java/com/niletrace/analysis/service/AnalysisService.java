@@ -1,27 +1,65 @@
 package com.niletrace.analysis.service;
 
 import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.LogPreviewResponse;
+import com.niletrace.analysis.dto.ModelCall;
+import com.niletrace.analysis.exception.LlmUnavailableException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Core analysis service that orchestrates the analysis workflow:
  * 1. PII Sanitization
- * 2. LLM Report Generation
- * 3. Job Status Management
+ * 2. Digest of very large logs
+ * 3. LLM Report Generation (map-reduce over chunks when the log exceeds one prompt and is not digested;
+ *    otherwise one prompt whose log section {@link PromptBuilder} fills by priority within its token budget)
+ * 4. Job Status Management
+ * When the LLM is unavailable (circuit open, bulkhead full) jobs fail fast, or complete
+ * with a statistics-only report if {@code analysis.fallback.local-report} is enabled.
+ * Concurrent submissions for the same incident and log content share one run
+ * (single-flight): later jobs attach to the in-flight one and complete with it.
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class AnalysisService {
 
+    // Model name recorded for reports built from log statistics
+    static final String LOCAL_MODEL = "local";
+
     private final PiiSanitizerService piiSanitizerService;
+    private final LogSamplerService logSamplerService;
+    private final LogDigestService logDigestService;
+    private final PromptBuilder promptBuilder;
     private final GroqClientService groqClientService;
     private final JobManagerService jobManagerService;
+    private final ReportStreamService reportStreamService;
+    private final LocalReportGenerator localReportGenerator;
+    private final LlmUsageService llmUsageService;
+    private final Scheduler analysisScheduler;
+
+    @Value("${analysis.fallback.local-report:false}")
+    private boolean localFallbackEnabled;
+
+    // In-flight runs keyed by incident ID and log content hash
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
 
     /**
      * Submits a new analysis job and returns immediately with the job ID.
@@ -29,49 +67,306 @@ public class AnalysisService {
      *
      * @param snapshot The incident snapshot to analyze
      * @return The job ID for tracking
+     * @throws com.niletrace.analysis.exception.TokenBudgetExceededException if the token budget
+     *                                                                     is used up and set to reject
      */
     public UUID submitAnalysis(IncidentSnapshot snapshot) {
+        llmUsageService.checkAdmission(snapshot);
         UUID jobId = jobManagerService.createJob(snapshot);
-        processAnalysisAsync(jobId);
+        start(jobId, snapshot);
         return jobId;
     }
 
     /**
-     * Asynchronously processes the analysis job.
-     * This method runs in a separate thread from the analysisExecutor pool.
+     * Resumes the jobs that were queued or processing when the service last stopped, as
+     * recovered from the job journal. Each one runs again from the start.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeRecoveredJobs() {
+        for (UUID jobId : jobManagerService.takeRecoveredJobs()) {
+            jobManagerService.getJobSnapshot(jobId).ifPresent(snapshot -> {
+                log.info("Resuming recovered job {} for incident {}", jobId, snapshot.getIncidentId());
+                start(jobId, snapshot);
+            });
+        }
+    }
+
+    /**
+     * Runs a queued job, or attaches it to the in-flight run for the same incident and log.
+     */
+    private void start(UUID jobId, IncidentSnapshot snapshot) {
+        String flightKey = flightKeyOf(snapshot);
+
+        // Joining happens inside compute so it cannot interleave with the leader finishing
+        Flight flight = flights.compute(flightKey, (key, existing) -> {
+            if (existing == null) {
+                reportStreamService.open(jobId);
+                return new Flight(jobId);
+            }
+            existing.followers.add(jobId);
+            reportStreamService.follow(jobId, existing.leaderJobId);
+            if (existing.started) {
+                jobManagerService.markProcessing(jobId);
+            }
+            return existing;
+        });
+
+        if (flight.leaderJobId.equals(jobId)) {
+            processAnalysis(jobId, flightKey);
+        } else {
+            log.info("Job {} for incident {} joined in-flight job {}",
+                    jobId, snapshot.getIncidentId(), flight.leaderJobId);
+        }
+    }
+
+    /**
+     * Starts the analysis pipeline for a job without blocking the caller: sanitization and
+     * sampling run on the bounded analysis scheduler, the Groq call runs on the HTTP client's
+     * event loop, and the job is updated from the completion callback. No thread is held
+     * while waiting on the network.
+     *
+     * @param jobId     The leading job of the flight
+     * @param flightKey Key of the flight whose followers complete together with this job
+     */
+    public void processAnalysis(UUID jobId, String flightKey) {
+        log.info("Starting analysis for job {}", jobId);
+        JobTrace trace = new JobTrace(jobId);
+
+        Mono.fromCallable(() -> {
+                    // Update status to PROCESSING, together with any jobs already attached
+                    flights.computeIfPresent(flightKey, (key, flight) -> {
+                        flight.started = true;
+                        jobManagerService.markProcessing(jobId);
+                        flight.followers.forEach(jobManagerService::markProcessing);
+                        return flight;
+                    });
+
+                    IncidentSnapshot snapshot = jobManagerService.getJobSnapshot(jobId)
+                            .orElseThrow(() -> new RuntimeException("Job not found: " + jobId));
+
+                    // Step 1: Sanitize PII from log content
+                    log.debug("Sanitizing PII for job {}", jobId);
+                    PiiSanitizerService.SanitizationResult sanitizationResult = piiSanitizerService
+                            .sanitize(snapshot.getLogContent());
+                    return new Prepared(snapshot, sanitizationResult);
+                })
+                .subscribeOn(analysisScheduler)
+                // Steps 2-3: Condense, chunk or budget oversized logs, keeping the failures and lines near
+                // the incident start, and generate the postmortem report via Groq LLM
+                .flatMap(prepared -> generateReport(trace, prepared.snapshot(),
+                        prepared.sanitization().sanitizedContent())
+                        .map(report -> new Outcome(report, prepared.sanitization().totalMaskedEntities())))
+                .subscribe(
+                        // Step 4: Mark job (and coalesced jobs) as completed
+                        result -> {
+                            List<UUID> jobIds = land(flightKey, jobId);
+                            for (UUID id : jobIds) {
+                                trace.applyTo(id);
+                                jobManagerService.markCompleted(id, result.report(), result.piiEntitiesMasked());
+                                reportStreamService.complete(id);
+                            }
+                            log.info("Analysis completed for job {} ({} coalesced). PII entities masked: {}",
+                                    jobId, jobIds.size() - 1, result.piiEntitiesMasked());
+                        },
+                        e -> {
+                            log.error("Analysis failed for job {}: {}", jobId, e.getMessage(), e);
+                            for (UUID id : land(flightKey, jobId)) {
+                                trace.applyTo(id);
+                                jobManagerService.markFailed(id, e.getMessage());
+                                reportStreamService.fail(id, e.getMessage());
+                            }
+                        });
+    }
+
+    /**
+     * Ends a flight and returns the leader followed by every job that joined it.
+     * Submissions after this point start a new flight.
      */
-    @Async("analysisExecutor")
-    public void processAnalysisAsync(UUID jobId) {
-        log.info("Starting async analysis for job {}", jobId);
+    private List<UUID> land(String flightKey, UUID leaderJobId) {
+        Flight flight = flights.remove(flightKey);
+        List<UUID> jobIds = new ArrayList<>();
+        jobIds.add(leaderJobId);
+        if (flight != null && flight.leaderJobId.equals(leaderJobId)) {
+            jobIds.addAll(flight.followers);
+        }
+        return jobIds;
+    }
 
+    private static String flightKeyOf(IncidentSnapshot snapshot) {
         try {
-            // Update status to PROCESSING
-            jobManagerService.markProcessing(jobId);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(String.valueOf(snapshot.getLogContent()).getBytes(StandardCharsets.UTF_8));
+            return snapshot.getIncidentId() + ":" + HexFormat.of().formatHex(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Runs the same sanitization and log reduction (digest, chunked-mode sampling or prompt budget)
+     * as an analysis job and returns the log exactly as it would be sent to the LLM (used for UI previews).
+     */
+    public LogPreviewResponse previewLogs(IncidentSnapshot snapshot) {
+        PiiSanitizerService.SanitizationResult sanitizationResult = piiSanitizerService
+                .sanitize(snapshot.getLogContent());
+        String sanitizedContent = sanitizationResult.sanitizedContent();
 
-            // Get the snapshot
-            IncidentSnapshot snapshot = jobManagerService.getJobSnapshot(jobId)
-                    .orElseThrow(() -> new RuntimeException("Job not found: " + jobId));
+        if (logDigestService.appliesTo(sanitizedContent)) {
+            LogDigestService.Digest digest = logDigestService.digest(sanitizedContent,
+                    snapshot.getIncidentStartTime());
+            return LogPreviewResponse.builder()
+                    .incidentId(snapshot.getIncidentId())
+                    .content(digest.content() + "\n### Raw Sample\n\n" + digest.sample())
+                    .sampled(true)
+                    .digested(true)
+                    .totalLines(digest.totalLines())
+                    .keptLines(digest.sampleLines())
+                    .originalChars(snapshot.getLogContent().length())
+                    .piiEntitiesMasked(sanitizationResult.totalMaskedEntities())
+                    .build();
+        }
 
-            // Step 1: Sanitize PII from log content
-            log.debug("Sanitizing PII for job {}", jobId);
-            PiiSanitizerService.SanitizationResult sanitizationResult = piiSanitizerService
-                    .sanitize(snapshot.getLogContent());
+        if (groqClientService.requiresChunking(snapshot, sanitizedContent)) {
+            LogSamplerService.SampledLog sampledLog = sampleForChunks(snapshot, sanitizedContent);
+            return LogPreviewResponse.builder()
+                    .incidentId(snapshot.getIncidentId())
+                    .content(sampledLog.content())
+                    .sampled(sampledLog.sampled())
+                    .totalLines(sampledLog.totalLines())
+                    .keptLines(sampledLog.keptLines())
+                    .priorityLines(sampledLog.priorityLines())
+                    .originalChars(snapshot.getLogContent().length())
+                    .piiEntitiesMasked(sanitizationResult.totalMaskedEntities())
+                    .build();
+        }
 
-            // Step 2: Generate postmortem report via Groq LLM
-            log.debug("Generating postmortem for job {}", jobId);
-            String markdownReport = groqClientService.generatePostmortemReport(
-                    snapshot,
-                    sanitizationResult.sanitizedContent());
+        PromptBuilder.LogSelection selection = promptBuilder.build(snapshot, sanitizedContent).logSelection();
+        return LogPreviewResponse.builder()
+                .incidentId(snapshot.getIncidentId())
+                .content(selection.content())
+                .sampled(selection.reduced())
+                .totalLines(selection.totalLines())
+                .keptLines(selection.includedLines())
+                .priorityLines((int) LogLines.parse(selection.content()).stream().filter(LogLines.Line::isPriority).count())
+                .originalChars(snapshot.getLogContent().length())
+                .piiEntitiesMasked(sanitizationResult.totalMaskedEntities())
+                .build();
+    }
 
-            // Step 3: Mark job as completed
-            jobManagerService.markCompleted(jobId, markdownReport, sanitizationResult.totalMaskedEntities());
+    private Mono<String> generateReport(JobTrace trace, IncidentSnapshot snapshot, String sanitizedContent) {
+        return generateLlmReport(snapshot, sanitizedContent, trace)
+                .onErrorResume(LlmUnavailableException.class, e -> {
+                    if (!localFallbackEnabled) {
+                        return Mono.error(e);
+                    }
+                    log.warn("LLM unavailable for job {}, generating local fallback report: {}",
+                            trace.jobId, e.getMessage());
+                    return Mono.fromCallable(() -> localReportGenerator.generate(snapshot, sanitizedContent))
+                            .subscribeOn(analysisScheduler)
+                            .doOnNext(report -> {
+                                trace.onModelCall(ModelCall.builder()
+                                        .model(LOCAL_MODEL)
+                                        .purpose("report")
+                                        .outcome(ModelCall.Outcome.SUCCEEDED)
+                                        .detail("LLM unavailable")
+                                        .build());
+                                trace.onToken(report);
+                            });
+                });
+    }
 
-            log.info("Analysis completed for job {}. PII entities masked: {}",
-                    jobId, sanitizationResult.totalMaskedEntities());
+    /**
+     * Picks how the log reaches the model; the first match wins:
+     * <ol>
+     *   <li>logs of at least {@code analysis.digest.min-chars} are sent as a digest,</li>
+     *   <li>logs that do not fit one prompt are summarized in chunks (map-reduce),</li>
+     *   <li>everything else goes into a single prompt.</li>
+     * </ol>
+     * The digest threshold defaults above the chunked mode's capacity, so map-reduce handles
+     * the logs it can read whole and only larger ones are digested.
+     */
+    private Mono<String> generateLlmReport(IncidentSnapshot snapshot, String sanitizedContent,
+                                           GenerationListener listener) {
+        if (logDigestService.appliesTo(sanitizedContent)) {
+            LogDigestService.Digest digest = logDigestService.digest(sanitizedContent,
+                    snapshot.getIncidentStartTime());
+            return groqClientService.generateDigestReport(snapshot, digest, listener);
+        }
+        if (groqClientService.requiresChunking(snapshot, sanitizedContent)) {
+            return groqClientService.generateChunkedPostmortemReport(snapshot,
+                    sampleForChunks(snapshot, sanitizedContent).content(), listener);
+        }
+
+        // The full log goes to the prompt builder, which selects lines within the prompt's token budget
+        return groqClientService.generatePostmortemReport(snapshot, sanitizedContent, listener);
+    }
+
+    /**
+     * Chunked mode reads the whole log; only logs beyond its capacity are sampled.
+     */
+    private LogSamplerService.SampledLog sampleForChunks(IncidentSnapshot snapshot, String sanitizedContent) {
+        return logSamplerService.sample(sanitizedContent, snapshot.getIncidentStartTime(), seedOf(snapshot),
+                groqClientService.maxChunkedLogChars());
+    }
+
+    private static long seedOf(IncidentSnapshot snapshot) {
+        // Seed from the incident so re-analyses and previews pick the same lines
+        return snapshot.getIncidentId().getMostSignificantBits() ^ snapshot.getIncidentId().getLeastSignificantBits();
+    }
+
+    private record Prepared(IncidentSnapshot snapshot, PiiSanitizerService.SanitizationResult sanitization) {
+    }
+
+    private record Outcome(String report, int piiEntitiesMasked) {
+    }
+
+    /**
+     * Relays report tokens to SSE subscribers while the final report is assembled, and keeps the
+     * routing decision and model calls of a run. They are published on the leading job as they
+     * happen and copied to every coalesced job when the run lands.
+     */
+    private final class JobTrace implements GenerationListener {
+        private final UUID jobId;
+        private final List<ModelCall> modelCalls = new CopyOnWriteArrayList<>();
+        private volatile String routingDecision;
+
+        JobTrace(UUID jobId) {
+            this.jobId = jobId;
+        }
+
+        @Override
+        public void onToken(String token) {
+            reportStreamService.emit(jobId, token);
+        }
+
+        @Override
+        public void onRoute(ModelRouter.Route route) {
+            routingDecision = route.toString();
+            applyTo(jobId);
+        }
+
+        @Override
+        public void onModelCall(ModelCall call) {
+            modelCalls.add(call);
+            applyTo(jobId);
+        }
+
+        void applyTo(UUID id) {
+            jobManagerService.recordRouting(id, routingDecision, modelCalls);
+        }
+    }
+
+    /**
+     * One running analysis and the jobs waiting on its result. Mutated only inside
+     * {@code flights.compute*} calls, which serialize access per key.
+     */
+    private static final class Flight {
+        private final UUID leaderJobId;
+        private final List<UUID> followers = new ArrayList<>();
+        private boolean started;
 
-        } catch (Exception e) {
-            log.error("Analysis failed for job {}: {}", jobId, e.getMessage(), e);
-            jobManagerService.markFailed(jobId, e.getMessage());
+        Flight(UUID leaderJobId) {
+            this.leaderJobId = leaderJobId;
         }
     }
 }
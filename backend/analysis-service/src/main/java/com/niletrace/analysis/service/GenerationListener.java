@@ -0,0 +1,23 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.ModelCall;
+
+/**
+ * Receives progress of a report generation: report tokens as they stream in, the routing
+ * decision and every model call made along the way. Only {@link #onToken} is required,
+ * so a plain token consumer can be passed as a lambda.
+ */
+@FunctionalInterface
+public interface GenerationListener {
+
+    GenerationListener NONE = token -> {
+    };
+
+    void onToken(String token);
+
+    default void onRoute(ModelRouter.Route route) {
+    }
+
+    default void onModelCall(ModelCall call) {
+    }
+}
@@ -1,34 +1,90 @@
 package com.niletrace.analysis.service;
 
-import com.niletrace.analysis.dto.GroqChatRequest;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.analysis.dto.GroqChatChunk;
 import com.niletrace.analysis.dto.GroqChatResponse;
 import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.ModelCall;
+import com.niletrace.analysis.exception.LlmUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.function.BodyInserter;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
 
 import java.time.Duration;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Client service for interacting with Groq LLM API.
- * Handles prompt engineering and API communication with retry logic.
+ * Handles API communication with retry logic; prompts come from {@link PromptBuilder}.
+ * Logs too large for one request are analyzed map-reduce style: chunks are summarized
+ * concurrently, then a final call writes the postmortem from the summaries.
+ * The report call itself is streamed, handing each token to the caller as it arrives.
+ * The model for each call comes from {@link ModelRouter}; a model that is failing or slow
+ * hands over to the next one in the route's fallback chain. Every call first waits for
+ * capacity from {@link GroqRateLimiter} and runs behind its model's circuit breaker and the
+ * shared bulkhead, failing fast with {@link LlmUnavailableException} while the provider is degraded.
+ * A call still pending at the model's p95 latency may be hedged with a second request ({@link HedgePolicy}).
+ * Reports for the most severe incidents can be written section by section in parallel calls.
  */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class GroqClientService {
 
-    private final WebClient groqWebClient;
+    static final String CHUNK_UNAVAILABLE = "_Summary unavailable for this part of the log._";
+
+    static final String SECTION_UNAVAILABLE = "_This section could not be generated._";
+
+    private static final String STREAM_DONE = "[DONE]";
+
+    // Detail of model calls made as hedge requests
+    private static final String HEDGE = "hedge";
 
-    @Value("${groq.api.model:llama-3.1-70b-versatile}")
-    private String model;
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_TYPE =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private final WebClient groqWebClient;
+    private final PromptBuilder promptBuilder;
+    private final GroqRequestWriter requestWriter;
+    private final ObjectMapper objectMapper;
+    private final LlmResponseCache responseCache;
+    private final GroqRateLimiter rateLimiter;
+    private final ModelRouter modelRouter;
+    private final HedgePolicy hedgePolicy;
+    private final LlmUsageService llmUsageService;
+    private final TokenEstimator tokenEstimator;
+    private final Bulkhead groqBulkhead;
 
     @Value("${groq.api.temperature:0.3}")
     private double temperature;
@@ -36,168 +92,642 @@ public class GroqClientService {
     @Value("${groq.api.max-tokens:4096}")
     private int maxTokens;
 
+    @Value("${groq.api.stream:true}")
+    private boolean streamEnabled;
+
     @Value("${groq.api.retry.max-attempts:3}")
     private int maxRetryAttempts;
 
     @Value("${groq.api.retry.delay-seconds:2}")
     private int retryDelaySeconds;
 
-    private static final String SYSTEM_PROMPT = """
-            You are an expert Site Reliability Engineer (SRE) and incident response specialist.
-            Your task is to analyze incident logs and generate a comprehensive postmortem report.
+    @Value("${groq.api.timeout-seconds:120}")
+    private int reportTimeoutSeconds;
+
+    @Value("${groq.sections.enabled:false}")
+    private boolean sectionsEnabled;
 
-            IMPORTANT GUIDELINES:
-            1. Be concise but thorough
-            2. Focus on actionable insights
-            3. Use technical language appropriate for engineering teams
-            4. Base your analysis ONLY on the provided log content and incident context
-            5. If information is insufficient, clearly state what additional data would be helpful
-            6. Do not make up specific timestamps or details not present in the logs
-            7. Note that some PII may have been redacted (marked as [TYPE_REDACTED]) - this is expected
+    @Value("${groq.sections.severities:SEV1,SEV2}")
+    private List<String> sectionSeverities;
 
-            OUTPUT FORMAT:
-            You MUST respond with a properly formatted Markdown document following the exact template structure provided.
-            Do not add any sections not specified in the template.
-            Do not include any preamble or explanation outside the markdown structure.
-            """;
+    @Value("${groq.sections.concurrency:7}")
+    private int sectionConcurrency;
 
-    private static final String REPORT_TEMPLATE = """
+    @Value("${groq.sections.max-tokens:768}")
+    private int sectionMaxTokens;
 
-            Generate a postmortem report using EXACTLY this structure:
+    @Value("${groq.map-reduce.enabled:true}")
+    private boolean mapReduceEnabled;
+
+    @Value("${groq.map-reduce.chunk-tokens:6000}")
+    private int chunkTokens;
+
+    @Value("${groq.map-reduce.max-chunks:16}")
+    private int maxChunks;
+
+    @Value("${groq.map-reduce.concurrency:4}")
+    private int chunkConcurrency;
+
+    @Value("${groq.map-reduce.summary-max-tokens:512}")
+    private int summaryMaxTokens;
+
+    @Value("${groq.map-reduce.timeout-seconds:300}")
+    private int mapReduceTimeoutSeconds;
+
+    /**
+     * Generates a postmortem report by calling the Groq LLM API. Nothing blocks: the
+     * returned Mono completes from the HTTP client's callbacks.
+     *
+     * @param snapshot            The sanitized incident snapshot
+     * @param sanitizedLogContent The PII-scrubbed log content
+     * @param listener            Receives report fragments as they are generated, the route and each model call
+     * @return Generated markdown report
+     */
+    public Mono<String> generatePostmortemReport(IncidentSnapshot snapshot, String sanitizedLogContent,
+                                                 GenerationListener listener) {
+        return generateReport(snapshot, promptBuilder.build(snapshot, sanitizedLogContent), listener);
+    }
 
-            # Executive Summary
-            [High-level explanation of what happened and why it matters - 2-3 sentences]
+    /**
+     * Generates a postmortem report from a log digest instead of raw log lines.
+     *
+     * @param snapshot The sanitized incident snapshot
+     * @param digest   Digest and raw sample of the PII-scrubbed log
+     * @param listener Receives report fragments as they are generated, the route and each model call
+     * @return Generated markdown report
+     */
+    public Mono<String> generateDigestReport(IncidentSnapshot snapshot, LogDigestService.Digest digest,
+                                             GenerationListener listener) {
+        return generateReport(snapshot, promptBuilder.buildDigestPrompt(snapshot, digest), listener);
+    }
 
-            ## Incident Timeline
-            [Chronological sequence of key events - use bullet points with timestamps if available]
+    private Mono<String> generateReport(IncidentSnapshot snapshot, PromptBuilder.Prompt prompt,
+                                        GenerationListener listener) {
+        ModelRouter.Route route = budgeted(snapshot, modelRouter.route(snapshot, prompt.estimatedTokens()));
+        GenerationListener events = listener != null ? listener : GenerationListener.NONE;
+        events.onRoute(route);
 
-            ## Root Cause Analysis
-            [Primary root cause and contributing factors - be specific and technical]
+        if (generatesSections(snapshot)) {
+            return generateSections(snapshot, prompt, route, events, listener != null);
+        }
 
-            ## Impact Assessment
-            [Who and what was affected, and for how long - quantify if possible]
+        log.info("Calling Groq API for incident {} via {} (~{} prompt tokens)",
+                snapshot.getIncidentId(), route, prompt.estimatedTokens());
 
-            ## Resolution Steps
-            [Actions taken to restore service - numbered list]
+        return complete(new Call(prompt, maxTokens, snapshot, "report", route, events, listener != null))
+                .onErrorMap(e -> mapError(snapshot, e));
+    }
 
-            ## Lessons Learned
-            [Process, tooling, or architectural gaps discovered - bullet points]
+    private boolean generatesSections(IncidentSnapshot snapshot) {
+        return sectionsEnabled && snapshot.getSeverity() != null && sectionSeverities.stream()
+                .anyMatch(severity -> severity.trim().equalsIgnoreCase(snapshot.getSeverity().trim()));
+    }
 
-            ## Action Items
-            - [ ] Short-term remediation
-            - [ ] Long-term prevention
-            - [ ] Monitoring improvements
+    /**
+     * Writes each report section in its own call, at most {@code groq.sections.concurrency} at once,
+     * and stitches them together in template order. Every call shares the prompt up to its closing
+     * instruction and writes a few hundred tokens instead of the whole report, so the report takes
+     * about as long as its longest section. Sections are relayed in order as soon as they and all
+     * sections before them are done. A failed section is marked as unavailable rather than failing
+     * the report, unless the provider is unavailable altogether.
+     */
+    private Mono<String> generateSections(IncidentSnapshot snapshot, PromptBuilder.Prompt prompt,
+                                          ModelRouter.Route route, GenerationListener events, boolean relayTokens) {
+        List<PromptBuilder.Section> sections = PromptBuilder.REPORT_SECTIONS;
+        List<PromptBuilder.Prompt> prompts = promptBuilder.buildSectionPrompts(prompt);
+
+        log.info("Calling Groq API for incident {} via {} in {} sections, concurrency {} (~{} prompt tokens each)",
+                snapshot.getIncidentId(), route, sections.size(), sectionConcurrency, prompt.estimatedTokens());
+
+        AtomicInteger failedSections = new AtomicInteger();
+        return Flux.range(0, sections.size())
+                .flatMapSequential(index -> {
+                    PromptBuilder.Section section = sections.get(index);
+                    String purpose = "section " + (index + 1) + "/" + sections.size();
+                    return complete(new Call(prompts.get(index), sectionMaxTokens, snapshot, purpose, route, events,
+                            false))
+                            .map(section::render)
+                            .onErrorResume(e -> !isUnavailable(e), e -> {
+                                failedSections.incrementAndGet();
+                                log.warn("Section \"{}\" failed for incident {}: {}",
+                                        section.title(), snapshot.getIncidentId(), e.getMessage());
+                                return Mono.just(section.render(SECTION_UNAVAILABLE));
+                            });
+                }, Math.max(1, sectionConcurrency))
+                .concatWith(Mono.defer(() -> failedSections.get() == sections.size()
+                        ? Mono.error(new IllegalStateException("All " + sections.size() + " report sections failed"))
+                        : Mono.just(PromptBuilder.REPORT_FOOTER)))
+                .doOnNext(text -> {
+                    if (relayTokens) {
+                        events.onToken(text);
+                    }
+                })
+                .collect(StringBuilder::new, StringBuilder::append)
+                .map(StringBuilder::toString)
+                .onErrorMap(e -> mapError(snapshot, e));
+    }
 
-            ---
-            *Generated by NileTrace Analysis Service*
-            """;
+    /**
+     * Whether the log is too large for a single prompt and should be analyzed in chunks.
+     */
+    public boolean requiresChunking(IncidentSnapshot snapshot, String sanitizedLogContent) {
+        return mapReduceEnabled && !promptBuilder.fitsSingleCall(snapshot, sanitizedLogContent);
+    }
 
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
-            .ofPattern("yyyy-MM-dd HH:mm:ss z")
-            .withZone(ZoneId.of("UTC"));
+    /**
+     * Upper bound, in characters, of log content the chunked mode will accept. Larger logs
+     * are sampled down to this size first so the number of chunk calls stays bounded.
+     */
+    public int maxChunkedLogChars() {
+        // Log text averages well over three characters per estimated token
+        return (int) Math.min(Integer.MAX_VALUE, 3L * chunkTokens * maxChunks);
+    }
 
     /**
-     * Generates a postmortem report by calling the Groq LLM API.
+     * Generates a postmortem report for a log that does not fit one prompt: each chunk is
+     * summarized concurrently (at most {@code groq.map-reduce.concurrency} calls in flight),
+     * then a reduce call writes the report from the summaries in log order. Summaries go to
+     * the fast model; the reduce call is routed like any large incident.
      *
      * @param snapshot            The sanitized incident snapshot
      * @param sanitizedLogContent The PII-scrubbed log content
+     * @param listener            Receives fragments of the final report as they are generated, the route
+     *                            and each model call
      * @return Generated markdown report
      */
-    public String generatePostmortemReport(IncidentSnapshot snapshot, String sanitizedLogContent) {
-        String userPrompt = buildUserPrompt(snapshot, sanitizedLogContent);
+    public Mono<String> generateChunkedPostmortemReport(IncidentSnapshot snapshot, String sanitizedLogContent,
+                                                        GenerationListener listener) {
+        int budget = promptBuilder.chunkBudget(snapshot, chunkTokens, summaryMaxTokens);
+        List<String> chunks = promptBuilder.chunkLogs(sanitizedLogContent, budget);
+        ModelRouter.Route route = budgeted(snapshot, modelRouter.routeChunked(chunks.size()));
+        GenerationListener events = listener != null ? listener : GenerationListener.NONE;
+        events.onRoute(route);
+
+        log.info("Calling Groq API for incident {} in map-reduce mode: {} chunks of up to {} tokens, concurrency {}",
+                snapshot.getIncidentId(), chunks.size(), budget, chunkConcurrency);
+
+        AtomicInteger failedChunks = new AtomicInteger();
+        return Flux.range(0, chunks.size())
+                .flatMapSequential(index -> summarizeChunk(snapshot, chunks, index, failedChunks, events),
+                        Math.max(1, chunkConcurrency))
+                .collectList()
+                .flatMap(summaries -> {
+                    if (failedChunks.get() == chunks.size()) {
+                        return Mono.error(new IllegalStateException("All " + chunks.size()
+                                + " chunk summaries failed"));
+                    }
+                    PromptBuilder.Prompt reducePrompt = promptBuilder.buildReducePrompt(snapshot, summaries);
+                    log.info("Reducing {} chunk summaries for incident {} via {} ({} failed, ~{} prompt tokens)",
+                            summaries.size(), snapshot.getIncidentId(), route, failedChunks.get(),
+                            reducePrompt.estimatedTokens());
+                    return complete(new Call(reducePrompt, maxTokens, snapshot, "reduce", route, events,
+                            listener != null));
+                })
+                .timeout(Duration.ofSeconds(mapReduceTimeoutSeconds))
+                .onErrorMap(e -> mapError(snapshot, e));
+    }
+
+    private ModelRouter.Route budgeted(IncidentSnapshot snapshot, ModelRouter.Route route) {
+        return llmUsageService.shouldDowngrade(snapshot) ? modelRouter.downgrade(route) : route;
+    }
+
+    private Mono<String> summarizeChunk(IncidentSnapshot snapshot, List<String> chunks, int index,
+                                        AtomicInteger failedChunks, GenerationListener events) {
+        PromptBuilder.Prompt prompt = promptBuilder.buildChunkPrompt(snapshot, chunks.get(index), index, chunks.size());
+        String purpose = "chunk " + (index + 1) + "/" + chunks.size();
+        // A failed chunk leaves a gap in the summaries rather than failing the whole report,
+        // unless the provider is unavailable altogether
+        return complete(new Call(prompt, summaryMaxTokens, snapshot, purpose, modelRouter.routeSummary(), events, false))
+                .onErrorResume(e -> !isUnavailable(e), e -> {
+                    failedChunks.incrementAndGet();
+                    log.warn("Summary of chunk {}/{} failed for incident {}: {}",
+                            index + 1, chunks.size(), snapshot.getIncidentId(), e.getMessage());
+                    return Mono.just(CHUNK_UNAVAILABLE);
+                });
+    }
+
+    /**
+     * Runs one chat completion along the route's fallback chain, starting with its first model.
+     */
+    private Mono<String> complete(Call call) {
+        return attempt(call, 0);
+    }
+
+    /**
+     * Tries the model at {@code index} of the route. A model over its latency SLO for this kind of
+     * call is skipped (unless the route relies on it, see {@link ModelRouter#isSkippable}), and one whose breaker is open or that keeps failing with 429/5xx hands over to the next model;
+     * the last model in the chain is always tried and its error is final. Every attempt is
+     * reported to the listener and to {@link LlmUsageService} with its tokens, timings and cost.
+     */
+    private Mono<String> attempt(Call call, int index) {
+        List<String> models = call.route().models();
+        String model = models.get(index);
+        boolean last = index == models.size() - 1;
+
+        if (!last && modelRouter.isSkippable(call.route(), model) && modelRouter.isOverSlo(model, call.kind())) {
+            log.warn("Skipping Groq model {} for {} of incident {}: p95 latency over SLO",
+                    model, call.purpose(), call.snapshot().getIncidentId());
+            report(call, ModelCall.builder()
+                    .model(model)
+                    .purpose(call.purpose())
+                    .outcome(ModelCall.Outcome.SKIPPED)
+                    .detail("p95 latency over SLO")
+                    .build());
+            return attempt(call, index + 1);
+        }
 
-        log.info("Calling Groq API for incident {} with model {}", snapshot.getIncidentId(), model);
+        // Set once tokens were relayed: neither a retry nor a fallback may repeat them
+        AtomicBoolean relayed = new AtomicBoolean();
+        return Mono.defer(() -> race(call, index, relayed))
+                .onErrorResume(e -> {
+                    if (last || relayed.get() || !isFallbackable(e)) {
+                        return Mono.error(e);
+                    }
+                    log.warn("Groq model {} failed for {} of incident {}, falling back to {}: {}",
+                            model, call.purpose(), call.snapshot().getIncidentId(), models.get(index + 1),
+                            e.getMessage());
+                    return attempt(call, index + 1);
+                });
+    }
 
-        GroqChatRequest request = GroqChatRequest.builder()
+    /**
+     * Calls the model at {@code index} and, once the request has been on the network for the
+     * model's rolling p95 latency without a token or an answer, sends a hedge request within the
+     * {@link HedgePolicy} budget. Whichever request answers first (or, when streaming, relays
+     * the first token) wins and the other is cancelled. The error of the primary request is
+     * the one reported when both fail. The hedge delay runs from rate-limit admission of the
+     * primary request, so a call that is only waiting for capacity is never hedged.
+     */
+    private Mono<String> race(Call call, int index, AtomicBoolean relayed) {
+        String model = call.route().models().get(index);
+        hedgePolicy.onCall();
+        Optional<Duration> hedgeDelay = hedgePolicy.delayFor(model, call.kind());
+        if (hedgeDelay.isEmpty()) {
+            return single(call, model, relayTo(call.listener(), relayed, null, null, null), false, () -> { });
+        }
+
+        AtomicReference<Object> owner = new AtomicReference<>();
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        Sinks.One<Boolean> primaryClaimed = Sinks.one();
+        Sinks.One<Boolean> hedgeClaimed = Sinks.one();
+        Sinks.One<Boolean> primaryFailed = Sinks.one();
+        Sinks.One<Boolean> primaryAdmitted = Sinks.one();
+        Object primaryToken = new Object();
+        Object hedgeToken = new Object();
+
+        Mono<String> primary = single(call, model,
+                relayTo(call.listener(), relayed, owner, primaryToken, primaryClaimed), false,
+                () -> primaryAdmitted.tryEmitValue(true))
+                .takeUntilOther(hedgeClaimed.asMono())
+                .doOnError(e -> {
+                    primaryError.set(e);
+                    primaryFailed.tryEmitValue(true);
+                });
+        Mono<String> hedge = primaryAdmitted.asMono()
+                .then(Mono.delay(hedgeDelay.get()))
+                .takeUntilOther(primaryFailed.asMono())
+                .filter(tick -> owner.get() == null && hedgePolicy.tryAcquire())
+                .flatMap(tick -> {
+                    String hedgeModel = hedgePolicy.hedgeModel(call.route().models(), index, call.kind());
+                    log.info("Hedging {} of incident {}: {} in flight over {} ms, sending to {}",
+                            call.purpose(), call.snapshot().getIncidentId(), model,
+                            hedgeDelay.get().toMillis(), hedgeModel);
+                    return single(call, hedgeModel,
+                            relayTo(call.listener(), relayed, owner, hedgeToken, hedgeClaimed), true, () -> { })
+                            .takeUntilOther(primaryClaimed.asMono())
+                            .doOnNext(text -> hedgePolicy.onHedgeWon());
+                });
+
+        return Mono.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class, e -> {
+                    Throwable cause = primaryError.get();
+                    if (cause != null) {
+                        return cause;
+                    }
+                    Throwable[] suppressed = e.getSuppressed();
+                    return suppressed.length > 0 ? suppressed[0] : e;
+                });
+    }
+
+    /**
+     * Relays tokens to the listener. In a hedged race, tokens are relayed only for the request
+     * that produced the first one, and claiming that first token cancels the other request.
+     */
+    private static GenerationListener relayTo(GenerationListener listener, AtomicBoolean relayed,
+                                              AtomicReference<Object> owner, Object token,
+                                              Sinks.One<Boolean> claimed) {
+        if (owner == null) {
+            return fragment -> {
+                relayed.set(true);
+                listener.onToken(fragment);
+            };
+        }
+        return fragment -> {
+            if (owner.compareAndSet(null, token)) {
+                claimed.tryEmitValue(true);
+            } else if (owner.get() != token) {
+                return;
+            }
+            relayed.set(true);
+            listener.onToken(fragment);
+        };
+    }
+
+    /**
+     * One request to one model, reported to the listener and to {@link LlmUsageService} when it
+     * succeeds, fails or is cancelled after losing a hedged race. {@code onAdmitted} runs each
+     * time an attempt is admitted by the rate limiter.
+     */
+    private Mono<String> single(Call call, String model, GenerationListener relay, boolean hedge,
+                                Runnable onAdmitted) {
+        return Mono.defer(() -> {
+            CallStats stats = new CallStats(onAdmitted);
+            AtomicBoolean done = new AtomicBoolean();
+            return callModel(call, model, relay, stats)
+                    .doOnNext(completion -> {
+                        done.set(true);
+                        long now = System.nanoTime();
+                        long latencyNanos = now - stats.startNanos;
+                        if (!completion.cached()) {
+                            // Network time of the attempt that answered: no queue wait, no failed attempts
+                            modelRouter.recordLatency(model, call.kind(), Duration.ofNanos(now - stats.admittedNanos));
+                        }
+                        ModelCall succeeded = succeeded(call, model, completion, stats, latencyNanos);
+                        if (hedge) {
+                            succeeded.setDetail(HEDGE);
+                        }
+                        report(call, succeeded);
+                    })
+                    .map(Completion::text)
+                    .doOnError(e -> {
+                        done.set(true);
+                        report(call, ended(call, model, stats, ModelCall.Outcome.FAILED,
+                                hedge ? HEDGE + ": " + e.getMessage() : e.getMessage()));
+                    })
+                    .doOnCancel(() -> {
+                        if (done.compareAndSet(false, true)) {
+                            report(call, ended(call, model, stats, ModelCall.Outcome.CANCELLED,
+                                    hedge ? HEDGE : null));
+                        }
+                    });
+        });
+    }
+
+    private ModelCall ended(Call call, String model, CallStats stats, ModelCall.Outcome outcome, String detail) {
+        return ModelCall.builder()
                 .model(model)
-                .temperature(temperature)
-                .max_tokens(maxTokens)
-                .messages(List.of(
-                        GroqChatRequest.Message.builder()
-                                .role("system")
-                                .content(SYSTEM_PROMPT)
-                                .build(),
-                        GroqChatRequest.Message.builder()
-                                .role("user")
-                                .content(userPrompt)
-                                .build()))
+                .purpose(call.purpose())
+                .outcome(outcome)
+                .latencyMillis(Duration.ofNanos(System.nanoTime() - stats.startNanos).toMillis())
+                .queueWaitMillis(Duration.ofNanos(stats.queueNanos.get()).toMillis())
+                .detail(detail)
                 .build();
+    }
 
-        try {
-            GroqChatResponse response = groqWebClient.post()
-                    .uri("/chat/completions")
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(GroqChatResponse.class)
-                    .retryWhen(Retry.backoff(maxRetryAttempts, Duration.ofSeconds(retryDelaySeconds))
-                            .filter(this::isRetryableException)
-                            .doBeforeRetry(signal -> log.warn("Retrying Groq API call, attempt {}",
-                                    signal.totalRetries() + 1)))
-                    .block(Duration.ofSeconds(120));
-
-            if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
-                throw new RuntimeException("Empty response from Groq API");
-            }
+    private ModelCall succeeded(Call call, String model, Completion completion, CallStats stats, long latencyNanos) {
+        // Usage comes from the provider when it reports it, otherwise from local estimates
+        boolean estimated = stats.promptTokens < 0;
+        int promptTokens = estimated ? call.prompt().estimatedTokens() : stats.promptTokens;
+        int completionTokens = estimated ? tokenEstimator.estimate(completion.text()) : stats.completionTokens;
+        long firstTokenNanos = stats.firstTokenNanos > 0 ? stats.firstTokenNanos - stats.startNanos : latencyNanos;
+        return ModelCall.builder()
+                .model(model)
+                .purpose(call.purpose())
+                .outcome(completion.cached() ? ModelCall.Outcome.CACHED : ModelCall.Outcome.SUCCEEDED)
+                .latencyMillis(Duration.ofNanos(latencyNanos).toMillis())
+                .queueWaitMillis(Duration.ofNanos(stats.queueNanos.get()).toMillis())
+                .timeToFirstTokenMillis(Duration.ofNanos(firstTokenNanos).toMillis())
+                .promptTokens(promptTokens)
+                .completionTokens(completionTokens)
+                .usageEstimated(estimated)
+                // Cache hits are not billed
+                .estimatedCostUsd(completion.cached() ? 0 : llmUsageService.costOf(model, promptTokens, completionTokens))
+                .build();
+    }
 
-            String content = response.getChoices().get(0).getMessage().getContent();
-            log.info("Successfully generated report for incident {}. Tokens used: {}",
-                    snapshot.getIncidentId(),
-                    response.getUsage() != null ? response.getUsage().getTotal_tokens() : "unknown");
+    private void report(Call call, ModelCall modelCall) {
+        llmUsageService.record(call.snapshot(), modelCall);
+        call.listener().onModelCall(modelCall);
+    }
 
+    /**
+     * One call to one model. When tokens are relayed (and streaming is enabled) the response is
+     * streamed and each fragment is passed on as it arrives; the assembled text is returned either way.
+     */
+    private Mono<Completion> callModel(Call call, String model, GenerationListener relay, CallStats stats) {
+        PromptBuilder.Prompt prompt = call.prompt();
+        boolean stream = streamEnabled && call.relayTokens();
+        BodyInserter<Void, ReactiveHttpOutputMessage> request = requestWriter.body(model, temperature,
+                call.completionTokens(), stream, prompt);
+
+        Mono<Completion> content = Mono.defer(() -> {
+                    // An open breaker fails the call before it takes a place in the rate-limit queue
+                    CircuitBreaker breaker = modelRouter.circuitBreaker(model);
+                    return breaker.getState() == CircuitBreaker.State.OPEN
+                            || breaker.getState() == CircuitBreaker.State.FORCED_OPEN
+                            ? Mono.<String>error(CallNotPermittedException.createCallNotPermittedException(breaker))
+                            : stream
+                            ? streamCompletion(request, call, model, relay, stats)
+                            : blockingCompletion(request, call, model, stats);
+                })
+                .switchIfEmpty(Mono.error(() -> new RuntimeException("Empty response from Groq API")))
+                .map(text -> new Completion(text, false));
+        if (!responseCache.isEnabled()) {
             return content;
-
-        } catch (WebClientResponseException e) {
-            log.error("Groq API error for incident {}: {} - {}",
-                    snapshot.getIncidentId(), e.getStatusCode(), e.getResponseBodyAsString());
-            throw new RuntimeException("Groq API call failed: " + e.getMessage(), e);
-        } catch (Exception e) {
-            log.error("Error generating report for incident {}: {}", snapshot.getIncidentId(), e.getMessage());
-            throw new RuntimeException("Failed to generate postmortem report: " + e.getMessage(), e);
         }
+
+        // Identical model, parameters and prompt return the stored completion; cache I/O stays off the event loop
+        String cacheKey = LlmResponseCache.keyOf(model, temperature, call.completionTokens(),
+                prompt.systemPrompt(), prompt.userParts());
+        return Mono.fromCallable(() -> responseCache.get(cacheKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(cached -> cached
+                        .map(text -> {
+                            log.info("Groq call ({}) for incident {} served from cache",
+                                    call.purpose(), call.snapshot().getIncidentId());
+                            if (call.relayTokens()) {
+                                relay.onToken(text);
+                            }
+                            return Mono.just(new Completion(text, true));
+                        })
+                        .orElseGet(() -> content.flatMap(completion -> Mono.fromRunnable(() ->
+                                        responseCache.put(cacheKey, completion.text()))
+                                .subscribeOn(Schedulers.boundedElastic())
+                                .thenReturn(completion))));
     }
 
-    private String buildUserPrompt(IncidentSnapshot snapshot, String sanitizedLogContent) {
-        StringBuilder prompt = new StringBuilder();
+    private Mono<String> blockingCompletion(BodyInserter<Void, ReactiveHttpOutputMessage> request, Call call,
+                                            String model, CallStats stats) {
+        // Admitted per attempt so every retry waits for rate-limit capacity again
+        return admitted(call, model, stats, reservation -> groqWebClient.post()
+                        .uri("/chat/completions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(request)
+                        .retrieve()
+                        .toEntity(GroqChatResponse.class)
+                        .flux()
+                        .transform(this::withDeadline)
+                        .doOnNext(entity -> rateLimiter.onResponse(model, entity.getHeaders()))
+                        .doOnError(WebClientResponseException.class, e -> rateLimiter.onResponse(model, e.getHeaders()))
+                        .doOnNext(entity -> {
+                            GroqChatResponse response = entity.getBody();
+                            if (response != null && response.getUsage() != null) {
+                                stats.usage(response.getUsage());
+                                reservation.settle(stats.promptTokens, stats.completionTokens);
+                            }
+                        }))
+                .retryWhen(retrySpec(call.purpose(), () -> false))
+                .next()
+                .flatMap(entity -> {
+                    GroqChatResponse response = entity.getBody();
+                    if (response == null || response.getChoices() == null || response.getChoices().isEmpty()) {
+                        return Mono.error(new RuntimeException("Empty response from Groq API"));
+                    }
+                    stats.firstTokenNanos = System.nanoTime();
+                    log.info("Groq call ({}) for incident {} succeeded. Tokens used: {}",
+                            call.purpose(), call.snapshot().getIncidentId(),
+                            response.getUsage() != null ? response.getUsage().getTotal_tokens() : "unknown");
+                    return Mono.justOrEmpty(response.getChoices().get(0).getMessage().getContent());
+                });
+    }
 
-        prompt.append("## INCIDENT CONTEXT\n\n");
-        prompt.append("**Incident ID:** ").append(snapshot.getIncidentId()).append("\n");
-        prompt.append("**Title:** ").append(snapshot.getTitle()).append("\n");
-        prompt.append("**Description:** ").append(snapshot.getDescription()).append("\n");
-        prompt.append("**Severity:** ").append(snapshot.getSeverity()).append("\n");
-        prompt.append("**Incident Start Time:** ").append(FORMATTER.format(snapshot.getIncidentStartTime()))
-                .append("\n");
-        prompt.append("**Created At:** ").append(FORMATTER.format(snapshot.getCreatedAt())).append("\n");
+    private Mono<String> streamCompletion(BodyInserter<Void, ReactiveHttpOutputMessage> request, Call call,
+                                          String model, GenerationListener listener, CallStats stats) {
+        // Once tokens have been relayed a retry would repeat them, so only failures before the first one retry
+        return admitted(call, model, stats, reservation -> groqWebClient.post()
+                        .uri("/chat/completions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .body(request)
+                        .retrieve()
+                        .toEntityFlux(SSE_TYPE)
+                        .doOnNext(entity -> rateLimiter.onResponse(model, entity.getHeaders()))
+                        .doOnError(WebClientResponseException.class, e -> rateLimiter.onResponse(model, e.getHeaders()))
+                        .flatMapMany(entity -> entity.getBody() != null ? entity.getBody() : Flux.empty())
+                        .transform(this::withDeadline)
+                        .mapNotNull(ServerSentEvent::data)
+                        .takeWhile(data -> !STREAM_DONE.equals(data.strip()))
+                        .<String>handle((data, sink) -> {
+                            GroqChatChunk chunk = parseChunk(data);
+                            if (chunk == null) {
+                                return;
+                            }
+                            GroqChatResponse.Usage usage = chunk.getX_groq() != null
+                                    ? chunk.getX_groq().getUsage()
+                                    : chunk.getUsage();
+                            if (usage != null) {
+                                stats.usage(usage);
+                                reservation.settle(stats.promptTokens, stats.completionTokens);
+                            }
+                            String token = deltaContent(chunk);
+                            if (token != null && !token.isEmpty()) {
+                                sink.next(token);
+                            }
+                        }))
+                .doOnNext(token -> {
+                    if (stats.started.compareAndSet(false, true)) {
+                        stats.firstTokenNanos = System.nanoTime();
+                    }
+                    listener.onToken(token);
+                })
+                .retryWhen(retrySpec(call.purpose(), stats.started::get))
+                .collect(StringBuilder::new, StringBuilder::append)
+                .filter(report -> !report.isEmpty())
+                .map(StringBuilder::toString)
+                .doOnNext(report -> log.info("Groq stream ({}) finished with {} characters",
+                        call.purpose(), report.length()));
+    }
 
-        // Add optional context if available
-        if (snapshot.getServiceName() != null && !snapshot.getServiceName().isBlank()) {
-            prompt.append("**Service:** ").append(snapshot.getServiceName()).append("\n");
-        }
-        if (snapshot.getEnvironment() != null && !snapshot.getEnvironment().isBlank()) {
-            prompt.append("**Environment:** ").append(snapshot.getEnvironment()).append("\n");
-        }
-        if (snapshot.getRegion() != null && !snapshot.getRegion().isBlank()) {
-            prompt.append("**Region:** ").append(snapshot.getRegion()).append("\n");
-        }
+    /**
+     * Runs one attempt once the rate limiter admits it, adding the time spent queued to the call's
+     * queue wait. The reservation is released however the attempt ends, so a failed, timed-out or
+     * cancelled attempt (such as the losing side of a hedge) gives back the tokens it did not use.
+     * The model's circuit breaker and the bulkhead only wrap the admitted network attempt: a call
+     * waiting in the queue holds no bulkhead permit, and queue time never counts as a slow call.
+     */
+    private <T> Flux<T> admitted(Call call, String model, CallStats stats,
+                                 Function<GroqRateLimiter.Reservation, Flux<T>> attempt) {
+        return Flux.defer(() -> {
+            long queuedAt = System.nanoTime();
+            return Flux.usingWhen(
+                    rateLimiter.acquire(model, call.prompt().estimatedTokens(), call.completionTokens())
+                            .doFinally(signal -> stats.queueNanos.addAndGet(System.nanoTime() - queuedAt)),
+                    reservation -> Flux.defer(() -> {
+                                stats.admittedNanos = System.nanoTime();
+                                stats.onAdmitted.run();
+                                return attempt.apply(reservation);
+                            })
+                            // Bulkhead outermost: a rejected attempt never reaches the breaker or counts against it
+                            .transformDeferred(CircuitBreakerOperator.of(modelRouter.circuitBreaker(model)))
+                            .transformDeferred(BulkheadOperator.of(groqBulkhead)),
+                    reservation -> Mono.fromRunnable(reservation::release),
+                    (reservation, error) -> Mono.fromRunnable(reservation::release),
+                    reservation -> Mono.fromRunnable(reservation::release));
+        });
+    }
 
-        prompt.append("\n## LOG CONTENT (PII Redacted)\n\n");
-        prompt.append("```\n");
-        prompt.append(truncateIfNeeded(sanitizedLogContent, 15000)); // Limit log content for API limits
-        prompt.append("\n```\n");
+    /**
+     * Bounds an attempt by {@code groq.api.timeout-seconds} from the moment it is subscribed, which
+     * is after rate-limit admission: waiting in the queue never times a call out.
+     */
+    private <T> Flux<T> withDeadline(Flux<T> attempt) {
+        return Flux.defer(() -> {
+            long deadline = System.nanoTime() + Duration.ofSeconds(reportTimeoutSeconds).toNanos();
+            Supplier<Mono<Long>> remaining = () ->
+                    Mono.delay(Duration.ofNanos(Math.max(0, deadline - System.nanoTime())));
+            return attempt.timeout(remaining.get(), item -> remaining.get());
+        });
+    }
+
+    private GroqChatChunk parseChunk(String data) {
+        try {
+            return objectMapper.readValue(data, GroqChatChunk.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Skipping unparseable Groq stream event: {}", e.getOriginalMessage());
+            return null;
+        }
+    }
 
-        prompt.append(REPORT_TEMPLATE);
+    private static String deltaContent(GroqChatChunk chunk) {
+        if (chunk.getChoices() == null || chunk.getChoices().isEmpty()
+                || chunk.getChoices().get(0).getDelta() == null) {
+            return null;
+        }
+        return chunk.getChoices().get(0).getDelta().getContent();
+    }
 
-        return prompt.toString();
+    private Retry retrySpec(String purpose, BooleanSupplier streamStarted) {
+        return Retry.backoff(maxRetryAttempts, Duration.ofSeconds(retryDelaySeconds))
+                .filter(e -> !streamStarted.getAsBoolean() && isRetryableException(e))
+                .doBeforeRetry(signal -> log.warn("Retrying Groq API call ({}), attempt {}",
+                        purpose, signal.totalRetries() + 1));
     }
 
-    private String truncateIfNeeded(String content, int maxLength) {
-        if (content == null) {
-            return "";
+    private RuntimeException mapError(IncidentSnapshot snapshot, Throwable e) {
+        if (isUnavailable(e)) {
+            log.warn("Groq API unavailable for incident {}: {}", snapshot.getIncidentId(), e.getMessage());
+            return new LlmUnavailableException("Groq API unavailable: " + e.getMessage(), e);
         }
-        if (content.length() <= maxLength) {
-            return content;
+        if (e instanceof WebClientResponseException responseException) {
+            log.error("Groq API error for incident {}: {} - {}",
+                    snapshot.getIncidentId(), responseException.getStatusCode(),
+                    responseException.getResponseBodyAsString());
+            return new RuntimeException("Groq API call failed: " + e.getMessage(), e);
         }
-        log.warn("Log content truncated from {} to {} characters", content.length(), maxLength);
-        return content.substring(0, maxLength) + "\n\n[... LOG TRUNCATED DUE TO SIZE LIMIT ...]";
+        log.error("Error generating report for incident {}: {}", snapshot.getIncidentId(), e.getMessage());
+        return new RuntimeException("Failed to generate postmortem report: " + e.getMessage(), e);
+    }
+
+    /**
+     * Errors specific to one model that another model in the chain may not have.
+     */
+    private boolean isFallbackable(Throwable throwable) {
+        Throwable cause = Exceptions.isRetryExhausted(throwable) ? throwable.getCause() : throwable;
+        return cause instanceof CallNotPermittedException || isRetryableException(cause);
+    }
+
+    private static boolean isUnavailable(Throwable throwable) {
+        return throwable instanceof CallNotPermittedException || throwable instanceof BulkheadFullException;
     }
 
     private boolean isRetryableException(Throwable throwable) {
@@ -208,4 +738,45 @@ public class GroqClientService {
         }
         return false;
     }
+
+    /**
+     * One logical completion: what to send, for which job step, and along which route.
+     */
+    private record Call(PromptBuilder.Prompt prompt, int completionTokens, IncidentSnapshot snapshot,
+                        String purpose, ModelRouter.Route route, GenerationListener listener, boolean relayTokens) {
+
+        /**
+         * The purpose without its position ("chunk 2/5" is a "chunk"), which latency windows are kept for.
+         */
+        String kind() {
+            int space = purpose.indexOf(' ');
+            return space < 0 ? purpose : purpose.substring(0, space);
+        }
+    }
+
+    private record Completion(String text, boolean cached) {
+    }
+
+    /**
+     * Timings and provider-reported usage of one attempt, filled in as the call progresses.
+     */
+    private static final class CallStats {
+        private final long startNanos = System.nanoTime();
+        private final Runnable onAdmitted;
+        private final AtomicLong queueNanos = new AtomicLong();
+        private volatile long admittedNanos; // start of the latest network attempt
+        private final AtomicBoolean started = new AtomicBoolean(); // tokens received from the stream
+        private volatile long firstTokenNanos;
+        private volatile int promptTokens = -1;
+        private volatile int completionTokens = -1;
+
+        CallStats(Runnable onAdmitted) {
+            this.onAdmitted = onAdmitted;
+        }
+
+        void usage(GroqChatResponse.Usage usage) {
+            completionTokens = usage.getCompletion_tokens();
+            promptTokens = usage.getPrompt_tokens();
+        }
+    }
 }
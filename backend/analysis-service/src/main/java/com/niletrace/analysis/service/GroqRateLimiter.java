@@ -0,0 +1,324 @@
+package com.niletrace.analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Client-side governor for the Groq API with one token bucket for requests per minute
+ * and one for tokens per minute per model, as Groq enforces its limits per model. Callers
+ * reserve capacity up front and are delayed (without holding a thread) until their reservation
+ * is covered, so requests queue in arrival order instead of being rejected with 429. A model's
+ * buckets start from the configured budgets and follow the {@code x-ratelimit-*} and
+ * {@code retry-after} headers of that model's responses.
+ * <p>
+ * A reservation covers the prompt plus the completion a call is expected to write, not its
+ * {@code max_tokens}: the expectation starts at {@code groq.rate-limit.initial-completion-tokens}
+ * and then follows the usage Groq reports for calls with the same {@code max_tokens}. Settling
+ * a call corrects its reservation to the actual usage; a call that is cancelled or fails first
+ * returns what it did not use.
+ */
+@Service
+@Slf4j
+public class GroqRateLimiter {
+
+    // Groq reset values look like "7.66s", "2m59.56s" or "1h2m3s"
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private static final long NANOS_PER_MINUTE = Duration.ofMinutes(1).toNanos();
+
+    // Weight of the latest call in the expected completion size
+    private static final double USAGE_WEIGHT = 0.2;
+
+    private final boolean enabled;
+    private final int requestsPerMinute;
+    private final int tokensPerMinute;
+    private final int initialCompletionTokens;
+    private final Map<String, Limits> models = new HashMap<>();
+
+    public GroqRateLimiter(
+            @Value("${groq.rate-limit.enabled:true}") boolean enabled,
+            @Value("${groq.rate-limit.requests-per-minute:30}") int requestsPerMinute,
+            @Value("${groq.rate-limit.tokens-per-minute:12000}") int tokensPerMinute,
+            @Value("${groq.rate-limit.initial-completion-tokens:1024}") int initialCompletionTokens) {
+        this.enabled = enabled;
+        this.requestsPerMinute = requestsPerMinute;
+        this.tokensPerMinute = tokensPerMinute;
+        this.initialCompletionTokens = initialCompletionTokens;
+    }
+
+    private Limits limitsOf(String model, long now) {
+        return models.computeIfAbsent(model, key -> new Limits(requestsPerMinute, tokensPerMinute, now));
+    }
+
+    /**
+     * Reserves one request and the expected tokens of a call to {@code model}, emitting the
+     * reservation once they are available. Cancelling while queued returns the whole reservation;
+     * after that the caller must {@link Reservation#settle settle} or {@link Reservation#release release} it.
+     */
+    public Mono<Reservation> acquire(String model, int promptTokens, int maxCompletionTokens) {
+        if (!enabled) {
+            return Mono.just(new Reservation(null, promptTokens, maxCompletionTokens, 0));
+        }
+        return Mono.defer(() -> {
+            Reservation reservation = reserve(model, promptTokens, maxCompletionTokens);
+            if (reservation.wait.isZero()) {
+                return Mono.just(reservation);
+            }
+            log.debug("Groq rate limit: delaying request to {} by {} ms", model, reservation.wait.toMillis());
+            return Mono.delay(reservation.wait)
+                    .map(ignored -> reservation.admit())
+                    .doOnCancel(reservation::release);
+        });
+    }
+
+    synchronized Reservation reserve(String model, int promptTokens, int maxCompletionTokens) {
+        long now = System.nanoTime();
+        Limits limits = limitsOf(model, now);
+        int reserved = promptTokens + expectedCompletionTokens(model, maxCompletionTokens);
+        long waitNanos = Math.max(
+                Math.max(limits.requests.take(1, now), limits.tokens.take(reserved, now)),
+                limits.pausedUntilNanos - now);
+        Reservation reservation = new Reservation(limits, promptTokens, maxCompletionTokens, reserved);
+        reservation.wait = waitNanos > 0 ? Duration.ofNanos(waitNanos) : Duration.ZERO;
+        reservation.state = waitNanos > 0 ? State.WAITING : State.ADMITTED;
+        return reservation;
+    }
+
+    synchronized int expectedCompletionTokens(String model, int maxCompletionTokens) {
+        double expected = limitsOf(model, System.nanoTime()).completionTokens
+                .getOrDefault(maxCompletionTokens, (double) initialCompletionTokens);
+        return (int) Math.min(maxCompletionTokens, Math.ceil(expected));
+    }
+
+    private synchronized void settle(Reservation reservation, int promptTokens, int completionTokens) {
+        if (reservation.state == State.DONE || promptTokens < 0 || completionTokens < 0) {
+            return;
+        }
+        reservation.state = State.DONE;
+        // A call that wrote more than expected is debited the overshoot
+        reservation.limits.tokens.credit(reservation.reservedTokens - (promptTokens + completionTokens),
+                System.nanoTime());
+        reservation.limits.completionTokens.merge(reservation.maxCompletionTokens, (double) completionTokens,
+                (expected, actual) -> expected + USAGE_WEIGHT * (actual - expected));
+    }
+
+    private synchronized void release(Reservation reservation) {
+        long now = System.nanoTime();
+        switch (reservation.state) {
+            case WAITING -> {
+                // Never sent: the request slot and every token go back
+                reservation.limits.requests.credit(1, now);
+                reservation.limits.tokens.credit(reservation.reservedTokens, now);
+            }
+            // Sent without reported usage: assume the prompt counted but no completion was written
+            case ADMITTED -> reservation.limits.tokens.credit(reservation.reservedTokens - reservation.promptTokens, now);
+            case DONE -> {
+                return;
+            }
+        }
+        reservation.state = State.DONE;
+    }
+
+    private synchronized Reservation admit(Reservation reservation) {
+        if (reservation.state == State.WAITING) {
+            reservation.state = State.ADMITTED;
+        }
+        return reservation;
+    }
+
+    /**
+     * Aligns a model's buckets with the rate-limit headers of its Groq response (successful or not).
+     * Groq reports tokens per minute and requests per day; the daily budget is only used to
+     * pause when it is exhausted.
+     */
+    public synchronized void onResponse(String model, HttpHeaders headers) {
+        if (!enabled || headers == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        Limits limits = limitsOf(model, now);
+
+        Long tokenLimit = longHeader(headers, "x-ratelimit-limit-tokens");
+        if (tokenLimit != null && tokenLimit > 0) {
+            limits.tokens.resize(tokenLimit, now);
+        }
+        Long remainingTokens = longHeader(headers, "x-ratelimit-remaining-tokens");
+        if (remainingTokens != null) {
+            // Other clients of the same key count too; never assume more headroom than the server reports
+            limits.tokens.capBalance(remainingTokens, now);
+        }
+
+        Long remainingRequests = longHeader(headers, "x-ratelimit-remaining-requests");
+        if (remainingRequests != null && remainingRequests <= 0) {
+            pauseFor(model, limits, parseDuration(headers.getFirst("x-ratelimit-reset-requests")), now);
+        }
+        Long retryAfter = longHeader(headers, "retry-after");
+        if (retryAfter != null) {
+            pauseFor(model, limits, Duration.ofSeconds(retryAfter), now);
+        }
+    }
+
+    private static void pauseFor(String model, Limits limits, Duration duration, long now) {
+        if (duration.isZero() || duration.isNegative()) {
+            return;
+        }
+        long until = now + duration.toNanos();
+        if (until - limits.pausedUntilNanos > 0) {
+            limits.pausedUntilNanos = until;
+            log.warn("Groq rate limit reached for {}, pausing its requests for {} ms", model, duration.toMillis());
+        }
+    }
+
+    static Duration parseDuration(String value) {
+        if (value == null || value.isBlank()) {
+            return Duration.ZERO;
+        }
+        Matcher matcher = DURATION_PART.matcher(value);
+        double millis = 0;
+        while (matcher.find()) {
+            double amount = Double.parseDouble(matcher.group(1));
+            millis += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1_000;
+                default -> amount;
+            };
+        }
+        return Duration.ofMillis((long) Math.ceil(millis));
+    }
+
+    private static Long longHeader(HttpHeaders headers, String name) {
+        String value = headers.getFirst(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return (long) Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private enum State { WAITING, ADMITTED, DONE }
+
+    /**
+     * Capacity held by one call, from the moment it is queued until its usage is known or it ends.
+     */
+    public final class Reservation {
+        private final Limits limits;
+        private final int promptTokens;
+        private final int maxCompletionTokens;
+        private final int reservedTokens;
+        private Duration wait = Duration.ZERO;
+        private State state = State.DONE;
+
+        private Reservation(Limits limits, int promptTokens, int maxCompletionTokens, int reservedTokens) {
+            this.limits = limits;
+            this.promptTokens = promptTokens;
+            this.maxCompletionTokens = maxCompletionTokens;
+            this.reservedTokens = reservedTokens;
+        }
+
+        int reservedTokens() {
+            return reservedTokens;
+        }
+
+        Duration waitTime() {
+            return wait;
+        }
+
+        private Reservation admit() {
+            return GroqRateLimiter.this.admit(this);
+        }
+
+        /**
+         * Corrects the reservation to the usage the provider reported. Negative values mean unknown.
+         */
+        public void settle(int promptTokens, int completionTokens) {
+            GroqRateLimiter.this.settle(this, promptTokens, completionTokens);
+        }
+
+        /**
+         * Returns the unused part of a reservation that was never settled; safe to call more than once.
+         */
+        public void release() {
+            GroqRateLimiter.this.release(this);
+        }
+    }
+
+    /**
+     * Budgets of one model, with the completion size its calls are expected to write.
+     */
+    private static final class Limits {
+        private final Bucket requests;
+        private final Bucket tokens;
+        // Expected completion tokens per max_tokens value, following reported usage
+        private final Map<Integer, Double> completionTokens = new HashMap<>();
+        private long pausedUntilNanos;
+
+        Limits(int requestsPerMinute, int tokensPerMinute, long now) {
+            this.requests = new Bucket(requestsPerMinute, now);
+            this.tokens = new Bucket(tokensPerMinute, now);
+            this.pausedUntilNanos = now;
+        }
+    }
+
+    /**
+     * Continuously refilling bucket. The balance may go negative: that is capacity already
+     * promised to waiting callers, which is what makes the queue first-come first-served.
+     */
+    private static final class Bucket {
+        private double capacity;
+        private double balance;
+        private long lastRefillNanos;
+
+        Bucket(double perMinute, long now) {
+            this.capacity = perMinute;
+            this.balance = perMinute;
+            this.lastRefillNanos = now;
+        }
+
+        /**
+         * Takes {@code amount} units and returns the nanoseconds until they are covered.
+         */
+        long take(double amount, long now) {
+            refill(now);
+            // A single request larger than the whole bucket would otherwise never be admitted
+            balance -= Math.min(amount, capacity);
+            return balance >= 0 ? 0 : (long) Math.ceil(-balance * NANOS_PER_MINUTE / capacity);
+        }
+
+        void credit(double amount, long now) {
+            refill(now);
+            balance = Math.min(capacity, balance + amount);
+        }
+
+        void resize(double perMinute, long now) {
+            refill(now);
+            capacity = perMinute;
+            balance = Math.min(balance, capacity);
+        }
+
+        void capBalance(double remaining, long now) {
+            refill(now);
+            balance = Math.min(balance, remaining);
+        }
+
+        private void refill(long now) {
+            long elapsed = now - lastRefillNanos;
+            if (elapsed > 0) {
+                balance = Math.min(capacity, balance + elapsed * capacity / NANOS_PER_MINUTE);
+                lastRefillNanos = now;
+            }
+        }
+    }
+}
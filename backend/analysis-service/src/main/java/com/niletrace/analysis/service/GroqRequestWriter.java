@@ -0,0 +1,248 @@
+package com.niletrace.analysis.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.analysis.dto.GroqChatRequest;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyInserter;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes Groq chat completion request bodies (the shape of {@link GroqChatRequest}).
+ * The JSON of the static system messages is serialized once at startup and spliced into
+ * each body, so only the model, parameters and the incident-specific user message are
+ * encoded per request. Messages come before the parameters, keeping the static
+ * instructions at a fixed position at the start of every prompt.
+ * Bodies are generated as the request is written, in buffers of about {@link #CHUNK_BYTES}
+ * from the connection's (pooled) allocator: the user message is escaped slice by slice from its
+ * parts, so the prompt is never assembled into one string, nor into one contiguous buffer.
+ */
+@Component
+public class GroqRequestWriter {
+
+    static final int CHUNK_BYTES = 16 * 1024;
+
+    // Characters escaped at a time; a buffer overshoots CHUNK_BYTES by at most one slice
+    private static final int SLICE_CHARS = 4096;
+
+    private static final JsonStringEncoder ENCODER = JsonStringEncoder.getInstance();
+
+    private final ObjectMapper objectMapper;
+
+    // Serialized system message JSON keyed by prompt text
+    private final Map<String, String> staticMessages = new HashMap<>();
+
+    public GroqRequestWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        for (String systemPrompt : PromptBuilder.STATIC_SYSTEM_PROMPTS) {
+            staticMessages.put(systemPrompt, serializeMessage("system", systemPrompt));
+        }
+    }
+
+    /**
+     * Request body inserter. The body is generated when the request is written, once per
+     * attempt, so retries never reuse a buffer that was already sent and released.
+     */
+    public BodyInserter<Void, ReactiveHttpOutputMessage> body(String model, double temperature, int maxTokens,
+                                                             boolean stream, PromptBuilder.Prompt prompt) {
+        return (message, context) -> message.writeWith(
+                write(message.bufferFactory(), model, temperature, maxTokens, stream, prompt));
+    }
+
+    /**
+     * Serializes one request body, generating each buffer on demand.
+     *
+     * @param bufferFactory Allocator of the body buffers
+     * @param model         Model to call
+     * @param temperature   Sampling temperature
+     * @param maxTokens     Completion token limit
+     * @param stream        Whether the response is streamed as server-sent events
+     * @param prompt        System and user prompt
+     * @return UTF-8 JSON body; the subscriber owns (and releases) each buffer
+     */
+    public Flux<DataBuffer> write(DataBufferFactory bufferFactory, String model, double temperature, int maxTokens,
+                                  boolean stream, PromptBuilder.Prompt prompt) {
+        return Flux.<DataBuffer, BodyGenerator>generate(
+                        () -> new BodyGenerator(bufferFactory, model, temperature, maxTokens, stream, prompt),
+                        (body, sink) -> {
+                            DataBuffer next = body.next();
+                            if (next != null) {
+                                sink.next(next);
+                            } else {
+                                sink.complete();
+                            }
+                            return body;
+                        },
+                        BodyGenerator::close)
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    private String serializeMessage(String role, String content) {
+        try {
+            return objectMapper.writeValueAsString(GroqChatRequest.Message.builder()
+                    .role(role)
+                    .content(content)
+                    .build());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize static prompt", e);
+        }
+    }
+
+    /**
+     * State of one body being written: the envelope and system message, then the user message
+     * slice by slice, then the parameters. Each call to {@link #next} fills one buffer.
+     */
+    private final class BodyGenerator {
+        private final DataBufferFactory bufferFactory;
+        private final String model;
+        private final double temperature;
+        private final int maxTokens;
+        private final boolean stream;
+        private final PromptBuilder.Prompt prompt;
+        private final TargetStream out = new TargetStream();
+        private final JsonGenerator generator;
+        private boolean started;
+        private boolean finished;
+        private int part;
+        private int offset;
+
+        BodyGenerator(DataBufferFactory bufferFactory, String model, double temperature, int maxTokens,
+                      boolean stream, PromptBuilder.Prompt prompt) {
+            this.bufferFactory = bufferFactory;
+            this.model = model;
+            this.temperature = temperature;
+            this.maxTokens = maxTokens;
+            this.stream = stream;
+            this.prompt = prompt;
+            try {
+                this.generator = objectMapper.getFactory().createGenerator(out)
+                        .disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to serialize Groq request", e);
+            }
+        }
+
+        /**
+         * The next buffer of the body, or null once it has been written completely.
+         */
+        DataBuffer next() {
+            if (finished) {
+                return null;
+            }
+            DataBuffer buffer = bufferFactory.allocateBuffer(CHUNK_BYTES);
+            out.target = buffer;
+            try {
+                if (!started) {
+                    writeHead();
+                    started = true;
+                }
+                List<String> parts = prompt.userParts();
+                while (part < parts.size() && buffer.readableByteCount() < CHUNK_BYTES) {
+                    writeSlice(parts.get(part));
+                }
+                if (part == parts.size()) {
+                    writeTail();
+                    finished = true;
+                }
+                generator.flush();
+                return buffer;
+            } catch (IOException e) {
+                DataBufferUtils.release(buffer);
+                throw new UncheckedIOException("Failed to serialize Groq request", e);
+            } catch (RuntimeException e) {
+                DataBufferUtils.release(buffer);
+                throw e;
+            } finally {
+                out.target = null;
+            }
+        }
+
+        private void writeHead() throws IOException {
+            String systemMessage = staticMessages.get(prompt.systemPrompt());
+            generator.writeStartObject();
+            generator.writeStringField("model", model);
+            generator.writeArrayFieldStart("messages");
+            if (systemMessage != null) {
+                generator.writeRawValue(systemMessage);
+            } else {
+                generator.writeStartObject();
+                generator.writeStringField("role", "system");
+                generator.writeStringField("content", prompt.systemPrompt());
+                generator.writeEndObject();
+            }
+            generator.writeStartObject();
+            generator.writeStringField("role", "user");
+            generator.writeFieldName("content");
+            // The string is opened here and its content written raw, already escaped
+            generator.writeRawValue("\"");
+        }
+
+        private void writeSlice(String current) throws IOException {
+            int end = Math.min(current.length(), offset + SLICE_CHARS);
+            // A surrogate pair split between two raw writes would not encode
+            if (end < current.length() && Character.isHighSurrogate(current.charAt(end - 1))) {
+                end++;
+            }
+            char[] escaped = ENCODER.quoteAsString(current.subSequence(offset, end));
+            generator.writeRaw(escaped, 0, escaped.length);
+            generator.flush();
+            offset = end;
+            if (offset == current.length()) {
+                part++;
+                offset = 0;
+            }
+        }
+
+        private void writeTail() throws IOException {
+            generator.writeRaw('"');
+            generator.writeEndObject();
+            generator.writeEndArray();
+            generator.writeNumberField("temperature", temperature);
+            generator.writeNumberField("max_tokens", maxTokens);
+            generator.writeBooleanField("stream", stream);
+            generator.writeEndObject();
+        }
+
+        void close() {
+            try {
+                generator.close();
+            } catch (IOException e) {
+                // Nothing is left to write: every buffer was flushed when it was handed out
+            }
+        }
+    }
+
+    /**
+     * Writes into whichever buffer is being filled; output outside {@link BodyGenerator#next} is dropped.
+     */
+    private static final class TargetStream extends OutputStream {
+        private DataBuffer target;
+
+        @Override
+        public void write(int b) {
+            if (target != null) {
+                target.write((byte) b);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int off, int len) {
+            if (target != null) {
+                target.write(bytes, off, len);
+            }
+        }
+    }
+}
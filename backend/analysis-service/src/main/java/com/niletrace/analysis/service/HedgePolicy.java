@@ -0,0 +1,130 @@
+package com.niletrace.analysis.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a slow Groq call gets a hedge request. A hedge is sent once the primary call
+ * has been pending for the model's rolling latency percentile (p95 by default, from
+ * {@link ModelRouter}'s latency window) without answering. It goes to the next model of the route
+ * when that model is healthy, otherwise to the same model.
+ * Hedges are paid for from a budget that every call tops up by {@code budget-percent} of a
+ * request, so at most that share of extra calls is ever sent, with small bursts allowed.
+ */
+@Component
+public class HedgePolicy {
+
+    // Budget is kept in thousandths of a request
+    private static final long MILLIS_PER_REQUEST = 1000;
+
+    private final ModelRouter modelRouter;
+    private final boolean enabled;
+    private final double percentile;
+    private final int minSamples;
+    private final Duration minDelay;
+    private final boolean preferFallbackModel;
+    private final long creditPerCall;
+    private final long maxCredit;
+    private final AtomicLong credit = new AtomicLong();
+
+    private final Counter fired;
+    private final Counter won;
+    private final Counter budgetExhausted;
+
+    public HedgePolicy(ModelRouter modelRouter, MeterRegistry meterRegistry,
+                       @Value("${groq.hedging.enabled:false}") boolean enabled,
+                       @Value("${groq.hedging.percentile:0.95}") double percentile,
+                       @Value("${groq.hedging.min-samples:20}") int minSamples,
+                       @Value("${groq.hedging.min-delay-millis:1000}") long minDelayMillis,
+                       @Value("${groq.hedging.fallback-model:true}") boolean preferFallbackModel,
+                       @Value("${groq.hedging.budget-percent:5}") double budgetPercent,
+                       @Value("${groq.hedging.max-burst:5}") int maxBurst) {
+        this.modelRouter = modelRouter;
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.minDelay = Duration.ofMillis(minDelayMillis);
+        this.preferFallbackModel = preferFallbackModel;
+        this.creditPerCall = Math.round(budgetPercent / 100 * MILLIS_PER_REQUEST);
+        this.maxCredit = maxBurst * MILLIS_PER_REQUEST;
+
+        this.fired = hedgeCounter(meterRegistry, "fired");
+        this.won = hedgeCounter(meterRegistry, "won");
+        this.budgetExhausted = hedgeCounter(meterRegistry, "budget_exhausted");
+    }
+
+    private static Counter hedgeCounter(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("groq.hedge.requests")
+                .description("Hedge requests for slow Groq calls")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * How long a call to {@code model} for {@code purpose} may be pending before it is hedged; empty
+     * when hedging is disabled or the model has too few recent calls of that kind for a stable percentile.
+     */
+    public Optional<Duration> delayFor(String model, String purpose) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        return modelRouter.latencyPercentile(model, purpose, percentile, minSamples)
+                .map(latency -> latency.compareTo(minDelay) < 0 ? minDelay : latency);
+    }
+
+    /**
+     * Model for the hedge of a call for {@code purpose} to the model at {@code index} of a route.
+     */
+    public String hedgeModel(List<String> models, int index, String purpose) {
+        if (preferFallbackModel && index + 1 < models.size()) {
+            String next = models.get(index + 1);
+            if (modelRouter.circuitBreaker(next).getState() != CircuitBreaker.State.OPEN
+                    && !modelRouter.isOverSlo(next, purpose)) {
+                return next;
+            }
+        }
+        return models.get(index);
+    }
+
+    /**
+     * Adds one call's share to the hedge budget.
+     */
+    public void onCall() {
+        if (enabled) {
+            credit.accumulateAndGet(creditPerCall, (current, added) -> Math.min(maxCredit, current + added));
+        }
+    }
+
+    /**
+     * Takes one hedge request from the budget.
+     *
+     * @return false when the budget is used up
+     */
+    public boolean tryAcquire() {
+        long current;
+        do {
+            current = credit.get();
+            if (current < MILLIS_PER_REQUEST) {
+                budgetExhausted.increment();
+                return false;
+            }
+        } while (!credit.compareAndSet(current, current - MILLIS_PER_REQUEST));
+        fired.increment();
+        return true;
+    }
+
+    /**
+     * Records that a hedge answered before the call it was hedging.
+     */
+    public void onHedgeWon() {
+        won.increment();
+    }
+}
@@ -0,0 +1,365 @@
+package com.niletrace.analysis.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Write-ahead log of job state changes, so jobs survive restarts and deploys.
+ * Each change is one JSON line in {@code <directory>/jobs.wal} carrying the job's full state
+ * and a version; the incident snapshot is written only with the job's first entry. Callers
+ * only enqueue entries: a single writer thread appends everything queued since its last write
+ * and forces it to disk with one fsync (group commit), so no request thread ever waits on the
+ * disk. Jobs are acknowledged before they are durable; the writer starts a commit as soon as
+ * entries are queued, so a crash loses at most the group commit in progress. A batch that fails
+ * to write is cut from the log and retried, ahead of anything queued after it.
+ * Periodically, or once the log grows past {@code compact-bytes}, all jobs are written to
+ * {@code jobs.snapshot} and the log is truncated. Recovery replays the snapshot, then the log,
+ * keeping the highest version of each job.
+ */
+@Component
+@Slf4j
+public class JobJournal {
+
+    static final String WAL_FILE = "jobs.wal";
+    static final String SNAPSHOT_FILE = "jobs.snapshot";
+
+    private static final int MAX_BATCH = 4096;
+    private static final long IDLE_POLL_MILLIS = 200;
+    private static final long RETRY_DELAY_MILLIS = 1000;
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final Path directory;
+    private final Duration snapshotInterval;
+    private final long compactBytes;
+
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong versions = new AtomicLong();
+    private volatile Supplier<Collection<JobManagerService.AnalysisJob>> jobs = List::of;
+    private volatile boolean running;
+    private FileChannel wal;
+    private Thread writer;
+    private long lastSnapshotNanos;
+
+    public JobJournal(ObjectMapper objectMapper,
+                      @Value("${analysis.job.store.enabled:false}") boolean enabled,
+                      @Value("${analysis.job.store.directory:./data/jobs}") String directory,
+                      @Value("${analysis.job.store.snapshot-interval-seconds:300}") int snapshotIntervalSeconds,
+                      @Value("${analysis.job.store.compact-bytes:67108864}") long compactBytes) {
+        // Entries include helper getters (IncidentSnapshot.severityEnum) that are not properties;
+        // the file stays open across entries
+        this.objectMapper = objectMapper.copy()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        this.enabled = enabled;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+        this.snapshotInterval = Duration.ofSeconds(snapshotIntervalSeconds);
+        this.compactBytes = compactBytes;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Loads the jobs recorded before the last shutdown and starts the writer. Called once, before
+     * any entry is appended.
+     *
+     * @param jobs Current jobs, read when a snapshot is written
+     * @return Recovered jobs by ID, empty when the journal is disabled
+     */
+    public synchronized Map<UUID, JobManagerService.AnalysisJob> open(
+            Supplier<Collection<JobManagerService.AnalysisJob>> jobs) {
+        if (!enabled || running) {
+            return Map.of();
+        }
+        this.jobs = jobs;
+        Map<UUID, JobManagerService.AnalysisJob> recovered = new LinkedHashMap<>();
+        try {
+            Files.createDirectories(directory);
+            replay(directory.resolve(SNAPSHOT_FILE), recovered);
+            replay(directory.resolve(WAL_FILE), recovered);
+            wal = FileChannel.open(directory.resolve(WAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            wal.position(wal.size());
+            terminateTornLine();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open job journal in " + directory, e);
+        }
+        recovered.values().forEach(job -> versions.accumulateAndGet(job.version(), Math::max));
+
+        lastSnapshotNanos = System.nanoTime();
+        running = true;
+        writer = Thread.ofPlatform().name("job-journal").daemon().start(this::writeLoop);
+        log.info("Job journal opened in {}: {} jobs recovered", directory, recovered.size());
+        return recovered;
+    }
+
+    /**
+     * Ends a line left incomplete by a crash, so it does not swallow the next entry.
+     */
+    private void terminateTornLine() throws IOException {
+        long size = wal.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        wal.read(last, size - 1);
+        if (last.get(0) != '\n') {
+            wal.write(ByteBuffer.wrap(new byte[]{'\n'}));
+        }
+    }
+
+    /**
+     * Version for a new state of a job; taken while the job's entry is locked, so versions
+     * order the changes of one job.
+     */
+    public long nextVersion() {
+        return versions.incrementAndGet();
+    }
+
+    /**
+     * Records a new job, including its incident snapshot.
+     */
+    public void created(JobManagerService.AnalysisJob job) {
+        append(new Entry(Op.CREATED, job.jobId(), job.version(), job));
+    }
+
+    /**
+     * Records a job's new state; the snapshot is left out, it never changes after creation.
+     */
+    public void updated(JobManagerService.AnalysisJob job) {
+        append(new Entry(Op.UPDATED, job.jobId(), job.version(), job.withSnapshot(null)));
+    }
+
+    /**
+     * Records that a job was removed.
+     */
+    public void removed(UUID jobId, long version) {
+        append(new Entry(Op.REMOVED, jobId, version, null));
+    }
+
+    private void append(Entry entry) {
+        if (running) {
+            pending.offer(entry);
+        }
+    }
+
+    /**
+     * Stops the writer after everything queued has been written and forced to disk.
+     */
+    @PreDestroy
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+            wal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.warn("Failed to close job journal: {}", e.getMessage());
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        while (running || !pending.isEmpty() || !batch.isEmpty()) {
+            try {
+                // A batch left over from a failed write goes first, so entries stay in order
+                if (batch.isEmpty()) {
+                    Entry first = pending.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        batch.add(first);
+                        pending.drainTo(batch, MAX_BATCH - 1);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    commit(batch, buffer);
+                    batch.clear();
+                }
+                if (wal.size() > 0 && (wal.size() >= compactBytes
+                        || System.nanoTime() - lastSnapshotNanos >= snapshotInterval.toNanos())) {
+                    snapshot();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException | RuntimeException e) {
+                if (batch.isEmpty()) {
+                    log.error("Failed to snapshot the job journal: {}", e.getMessage(), e);
+                } else if (!running) {
+                    log.error("Failed to write {} job journal entries during shutdown, dropping them: {}",
+                            batch.size(), e.getMessage(), e);
+                    batch.clear();
+                } else {
+                    log.error("Failed to write {} job journal entries, retrying in {} ms: {}",
+                            batch.size(), RETRY_DELAY_MILLIS, e.getMessage(), e);
+                    try {
+                        Thread.sleep(RETRY_DELAY_MILLIS);
+                    } catch (InterruptedException interrupted) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            } finally {
+                buffer.reset();
+            }
+        }
+    }
+
+    /**
+     * Appends a batch and forces it to disk with one fsync. If that fails, whatever part of the
+     * batch reached the file is cut off again, so the retry does not follow a torn line.
+     */
+    private void commit(List<Entry> batch, ByteArrayOutputStream buffer) throws IOException {
+        for (Entry entry : batch) {
+            int mark = buffer.size();
+            try {
+                objectMapper.writeValue(buffer, entry);
+                buffer.write('\n');
+            } catch (IOException | RuntimeException e) {
+                // Retrying cannot fix an entry that does not serialize
+                log.error("Skipping job journal entry for job {} that cannot be written: {}",
+                        entry.jobId(), e.getMessage(), e);
+                byte[] written = buffer.toByteArray();
+                buffer.reset();
+                buffer.write(written, 0, mark);
+            }
+        }
+        long start = wal.position();
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                wal.write(bytes);
+            }
+            wal.force(false);
+        } catch (IOException | RuntimeException e) {
+            try {
+                wal.truncate(start);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes every current job to the snapshot file and truncates the log. Entries still queued
+     * were made after (or together with) the states the snapshot reads, so they are appended to
+     * the fresh log; replay keeps the highest version either way.
+     */
+    private void snapshot() throws IOException {
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024)) {
+            for (JobManagerService.AnalysisJob job : jobs.get()) {
+                objectMapper.writeValue(out, new Entry(Op.CREATED, job.jobId(), job.version(), job));
+                out.write('\n');
+                count++;
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        // Truncating also moves the write position back to the start
+        wal.truncate(0);
+        wal.force(true);
+        lastSnapshotNanos = System.nanoTime();
+        log.debug("Job journal snapshot written with {} jobs", count);
+    }
+
+    private void replay(Path file, Map<UUID, JobManagerService.AnalysisJob> recovered) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                Entry entry;
+                try {
+                    entry = objectMapper.readValue(line, Entry.class);
+                } catch (IOException e) {
+                    // A torn final line from a crash mid-write
+                    log.warn("Skipping unreadable job journal entry {}:{}: {}", file.getFileName(), lineNumber,
+                            e.getMessage());
+                    continue;
+                }
+                apply(entry, recovered);
+            }
+        } catch (NoSuchFileException e) {
+            // Nothing recorded yet
+        }
+    }
+
+    private static void apply(Entry entry, Map<UUID, JobManagerService.AnalysisJob> recovered) {
+        JobManagerService.AnalysisJob existing = recovered.get(entry.jobId());
+        if (existing != null && existing.version() > entry.version()) {
+            return;
+        }
+        if (entry.op() == Op.REMOVED) {
+            recovered.remove(entry.jobId());
+            return;
+        }
+        JobManagerService.AnalysisJob job = entry.job();
+        if (job.snapshot() == null && existing != null) {
+            job = job.withSnapshot(existing.snapshot());
+        }
+        if (job.snapshot() == null) {
+            log.warn("Job journal has no snapshot for job {}, skipping it", entry.jobId());
+            return;
+        }
+        recovered.put(entry.jobId(), job);
+    }
+
+    enum Op {
+        CREATED, UPDATED, REMOVED
+    }
+
+    /**
+     * One line of the journal.
+     */
+    record Entry(Op op, UUID jobId, long version, JobManagerService.AnalysisJob job) {
+    }
+}
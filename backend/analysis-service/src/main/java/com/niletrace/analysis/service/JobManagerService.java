@@ -3,31 +3,112 @@ package com.niletrace.analysis.service;
 import com.niletrace.analysis.dto.AnalysisResultResponse;
 import com.niletrace.analysis.dto.IncidentSnapshot;
 import com.niletrace.analysis.dto.JobStatus;
+import com.niletrace.analysis.dto.ModelCall;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 
 /**
  * Service for managing analysis jobs with in-memory storage.
  * Handles job lifecycle: creation, status updates, result storage, and cleanup.
+ * Every change is also recorded in the {@link JobJournal} (when enabled); the map is loaded
+ * from it at startup and stays the only place jobs are read from. Jobs that were queued or
+ * processing at shutdown are queued again, to be resumed by {@link AnalysisService}.
+ * Retained jobs are weighed by their estimated heap size: log content is dropped as soon as a
+ * job finishes, and once the weight exceeds {@code analysis.job.memory-budget-mb} the oldest
+ * reports are moved to the {@link ReportSpillStore} and read back when requested.
+ * Jobs are counted per status as they change, so counts never require a scan of the map.
+ * Finished jobs expire {@code analysis.job.retention-hours} after they finish. The retention is
+ * the same for every job, so finishing order is also expiry order: finished jobs are appended to
+ * a FIFO queue and a frequent poll removes them from its head once due, without scanning the map.
+ * Status changes are pushed to watchers of a job ({@link #statusChanges}), so clients can wait
+ * for a job over SSE or a long poll instead of polling for it.
  */
 @Service
 @Slf4j
 public class JobManagerService {
 
+    private static final Sinks.EmitFailureHandler RETRY_ON_CONTENTION =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
     private final Map<UUID, AnalysisJob> jobs = new ConcurrentHashMap<>();
+    private final JobJournal journal;
+    private final ReportSpillStore spillStore;
+    private final Queue<UUID> recoveredJobs = new ConcurrentLinkedQueue<>();
+    // Estimated heap retained by all jobs, and completed jobs whose report is in memory, oldest first
+    // (only tracked under a memory budget; expired jobs leave it)
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final Set<UUID> spillCandidates = Collections.synchronizedSet(new LinkedHashSet<>());
+    // Jobs per status, and queued jobs in the order they were queued; a job leaves as it leaves QUEUED
+    private final Map<JobStatus, LongAdder> statusCounts = new EnumMap<>(JobStatus.class);
+    private final Set<UUID> queuedJobs = Collections.synchronizedSet(new LinkedHashSet<>());
+    // Finished jobs in finishing order, and so in order of their expiry
+    private final Queue<Expiry> expiries = new ConcurrentLinkedQueue<>();
+    // Change signals for jobs someone is watching; dropped once the job has finished
+    private final Map<UUID, Sinks.Many<JobStatus>> watchers = new ConcurrentHashMap<>();
 
     @Value("${analysis.job.retention-hours:24}")
     private int retentionHours;
 
+    public JobManagerService(JobJournal journal, ReportSpillStore spillStore) {
+        this.journal = journal;
+        this.spillStore = spillStore;
+        for (JobStatus status : JobStatus.values()) {
+            statusCounts.put(status, new LongAdder());
+        }
+        journal.open(jobs::values).forEach((jobId, job) -> {
+            if (job.status() == JobStatus.QUEUED || job.status() == JobStatus.PROCESSING) {
+                job = job.withStatus(JobStatus.QUEUED, journal.nextVersion());
+                journal.updated(job);
+                recoveredJobs.add(jobId);
+                queuedJobs.add(jobId);
+            } else if (job.snapshot().getLogContent() != null) {
+                job = job.withSnapshot(withoutLogContent(job.snapshot()));
+            }
+            if (job.status() == JobStatus.COMPLETED && !job.reportSpilled()) {
+                addSpillCandidate(jobId);
+            }
+            jobs.put(jobId, job);
+            retainedBytes.addAndGet(job.weight());
+            statusCounts.get(job.status()).increment();
+        });
+        jobs.values().stream()
+                .filter(JobManagerService::isFinished)
+                .sorted(Comparator.comparing(JobManagerService::finishedAt))
+                .forEach(job -> expiries.add(new Expiry(job.jobId(), finishedAt(job))));
+        spillStore.retainOnly(jobs.keySet());
+        if (!recoveredJobs.isEmpty()) {
+            log.info("Recovered {} unfinished jobs from the job journal", recoveredJobs.size());
+        }
+        spillIfOverBudget();
+    }
+
     /**
      * Creates a new analysis job in QUEUED status.
      *
@@ -45,8 +126,17 @@ public class JobManagerService {
                 null,
                 Instant.now(),
                 null,
-                0);
+                0,
+                null,
+                List.of(),
+                false,
+                journal.nextVersion());
+        // Queued before it is visible, so leaving QUEUED always finds it
+        queuedJobs.add(jobId);
         jobs.put(jobId, job);
+        retainedBytes.addAndGet(job.weight());
+        statusCounts.get(JobStatus.QUEUED).increment();
+        journal.created(job);
         log.info("Created analysis job {} for incident {}", jobId, snapshot.getIncidentId());
         return jobId;
     }
@@ -55,9 +145,9 @@ public class JobManagerService {
      * Updates job status to PROCESSING.
      */
     public void markProcessing(UUID jobId) {
-        jobs.computeIfPresent(jobId, (id, job) -> {
+        update(jobId, job -> {
             log.info("Job {} status changed: {} -> PROCESSING", jobId, job.status());
-            return job.withStatus(JobStatus.PROCESSING);
+            return job.withStatus(JobStatus.PROCESSING, journal.nextVersion());
         });
     }
 
@@ -65,40 +155,243 @@ public class JobManagerService {
      * Marks job as COMPLETED with the generated report.
      */
     public void markCompleted(UUID jobId, String markdownReport, int piiEntitiesMasked) {
-        jobs.computeIfPresent(jobId, (id, job) -> {
+        AnalysisJob completed = update(jobId, job -> {
             log.info("Job {} completed successfully for incident {}", jobId, job.incidentId());
             return new AnalysisJob(
                     job.jobId(),
                     job.incidentId(),
-                    job.snapshot(),
+                    withoutLogContent(job.snapshot()),
                     JobStatus.COMPLETED,
                     markdownReport,
                     null,
                     job.createdAt(),
                     Instant.now(),
-                    piiEntitiesMasked);
+                    piiEntitiesMasked,
+                    job.routingDecision(),
+                    job.modelCalls(),
+                    false,
+                    journal.nextVersion());
         });
+        scheduleExpiry(completed);
+        addSpillCandidate(jobId);
+        spillIfOverBudget();
     }
 
     /**
      * Marks job as FAILED with an error message.
      */
     public void markFailed(UUID jobId, String errorMessage) {
-        jobs.computeIfPresent(jobId, (id, job) -> {
+        AnalysisJob failed = update(jobId, job -> {
             log.error("Job {} failed for incident {}: {}", jobId, job.incidentId(), errorMessage);
             return new AnalysisJob(
                     job.jobId(),
                     job.incidentId(),
-                    job.snapshot(),
+                    withoutLogContent(job.snapshot()),
                     JobStatus.FAILED,
                     null,
                     errorMessage,
                     job.createdAt(),
                     Instant.now(),
-                    0);
+                    0,
+                    job.routingDecision(),
+                    job.modelCalls(),
+                    false,
+                    journal.nextVersion());
+        });
+        scheduleExpiry(failed);
+        spillIfOverBudget();
+    }
+
+    /**
+     * Records how the job's report was routed and every model call made so far. This is called on
+     * every model call, so it only updates the job in memory: the journal gets the routing with
+     * the job's final state, in one entry, when it completes or fails.
+     */
+    public void recordRouting(UUID jobId, String routingDecision, List<ModelCall> modelCalls) {
+        update(jobId, false, job -> new AnalysisJob(
+                job.jobId(),
+                job.incidentId(),
+                job.snapshot(),
+                job.status(),
+                job.markdownReport(),
+                job.errorMessage(),
+                job.createdAt(),
+                job.completedAt(),
+                job.piiEntitiesMasked(),
+                routingDecision,
+                List.copyOf(modelCalls),
+                job.reportSpilled(),
+                journal.nextVersion()));
+    }
+
+    private AnalysisJob update(UUID jobId, UnaryOperator<AnalysisJob> change) {
+        return update(jobId, true, change);
+    }
+
+    /**
+     * Replaces a job's state, moves it between status counts and, when {@code journaled}, records
+     * the new state in the journal. The version is taken inside the update, while the job's entry
+     * is locked; the entry is journaled after the map holds the new state, so a journal snapshot
+     * can never miss a change it truncates away.
+     *
+     * @return The new state, or null when the job does not exist
+     */
+    private AnalysisJob update(UUID jobId, boolean journaled, UnaryOperator<AnalysisJob> change) {
+        AnalysisJob[] previous = new AnalysisJob[1];
+        AnalysisJob updated = jobs.computeIfPresent(jobId, (id, job) -> {
+            previous[0] = job;
+            return change.apply(job);
+        });
+        if (updated != null && updated != previous[0]) {
+            retainedBytes.addAndGet(updated.weight() - previous[0].weight());
+            if (journaled) {
+                journal.updated(updated);
+            }
+            if (updated.status() != previous[0].status()) {
+                if (previous[0].status() == JobStatus.QUEUED) {
+                    queuedJobs.remove(jobId);
+                }
+                statusCounts.get(previous[0].status()).decrement();
+                statusCounts.get(updated.status()).increment();
+                signal(jobId, updated.status(), isFinished(updated));
+            }
+        }
+        return updated;
+    }
+
+    private static IncidentSnapshot withoutLogContent(IncidentSnapshot snapshot) {
+        return snapshot.getLogContent() == null ? snapshot : snapshot.toBuilder().logContent(null).build();
+    }
+
+    private void addSpillCandidate(UUID jobId) {
+        if (spillStore.budgetBytes() > 0) {
+            spillCandidates.add(jobId);
+        }
+    }
+
+    private UUID pollSpillCandidate() {
+        synchronized (spillCandidates) {
+            Iterator<UUID> oldest = spillCandidates.iterator();
+            if (!oldest.hasNext()) {
+                return null;
+            }
+            UUID jobId = oldest.next();
+            oldest.remove();
+            return jobId;
+        }
+    }
+
+    int getSpillCandidateCount() {
+        return spillCandidates.size();
+    }
+
+    private void spillIfOverBudget() {
+        if (spillStore.isOverBudget(retainedBytes.get())) {
+            spillStore.schedule(this::spillOverBudget);
+        }
+    }
+
+    /**
+     * Moves reports of completed jobs to disk, oldest first, until retained jobs fit the budget.
+     * The file is written before the job is updated, so a report is always either in memory or on disk.
+     */
+    void spillOverBudget() {
+        int spilled = 0;
+        while (spillStore.isOverBudget(retainedBytes.get())) {
+            UUID jobId = pollSpillCandidate();
+            if (jobId == null) {
+                break;
+            }
+            AnalysisJob job = jobs.get(jobId);
+            if (job == null || job.reportSpilled() || job.markdownReport() == null) {
+                continue;
+            }
+            spillStore.write(jobId, job.markdownReport());
+            update(jobId, current -> current.reportSpilled() || current.markdownReport() == null
+                    ? current
+                    : current.withSpilledReport(journal.nextVersion()));
+            spilled++;
+        }
+        if (spilled > 0) {
+            log.info("Spilled {} reports to disk; retained jobs now ~{} KB", spilled, retainedBytes.get() / 1024);
+        }
+    }
+
+    /**
+     * Tells watchers of a job that its status changed; the last signal also ends their streams.
+     */
+    private void signal(UUID jobId, JobStatus status, boolean last) {
+        Sinks.Many<JobStatus> sink = last ? watchers.remove(jobId) : watchers.get(jobId);
+        if (sink != null) {
+            sink.emitNext(status, RETRY_ON_CONTENTION);
+            if (last) {
+                sink.tryEmitComplete();
+            }
+        }
+    }
+
+    /**
+     * Statuses of a job as it changes: the current status first, then every later one, completing
+     * once the job has finished. Empty for an unknown job, and ends if the job is removed.
+     */
+    public Flux<JobStatus> statusChanges(UUID jobId) {
+        return Flux.defer(() -> {
+            if (!jobs.containsKey(jobId)) {
+                return Flux.<JobStatus>empty();
+            }
+            Sinks.Many<JobStatus> sink = watchers.computeIfAbsent(jobId,
+                    id -> Sinks.many().multicast().directBestEffort());
+            // The signals are subscribed to before the current status is read, so no change is
+            // missed; every signal re-reads the job, so the latest status wins even out of order
+            return Flux.merge(sink.asFlux(), Mono.just(JobStatus.QUEUED))
+                    .map(ignored -> Optional.ofNullable(jobs.get(jobId)).map(AnalysisJob::status))
+                    .takeWhile(Optional::isPresent)
+                    .map(Optional::get)
+                    .distinctUntilChanged()
+                    .takeUntil(status -> status == JobStatus.COMPLETED || status == JobStatus.FAILED)
+                    .doFinally(ignored -> {
+                        AnalysisJob job = jobs.get(jobId);
+                        if (job == null || isFinished(job)) {
+                            watchers.remove(jobId, sink);
+                        }
+                    });
         });
     }
 
+    /**
+     * Waits until a job reaches {@code status} or finishes, at most {@code timeout}, then returns
+     * its result as it is at that point. Empty for an unknown job.
+     */
+    public Mono<AnalysisResultResponse> awaitStatus(UUID jobId, JobStatus status, Duration timeout) {
+        return statusChanges(jobId)
+                .filter(current -> current == status || current == JobStatus.COMPLETED
+                        || current == JobStatus.FAILED)
+                .next()
+                .timeout(timeout, Mono.empty())
+                // A spilled report is read from disk
+                .publishOn(Schedulers.boundedElastic())
+                .then(Mono.fromCallable(() -> getJobResult(jobId)))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * Estimated heap retained by all jobs, in bytes.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Jobs recovered from the journal that were queued or processing at shutdown, each returned once.
+     */
+    public List<UUID> takeRecoveredJobs() {
+        List<UUID> taken = new ArrayList<>();
+        for (UUID jobId = recoveredJobs.poll(); jobId != null; jobId = recoveredJobs.poll()) {
+            taken.add(jobId);
+        }
+        return taken;
+    }
+
     /**
      * Retrieves job status and result.
      */
@@ -112,14 +405,39 @@ public class JobManagerService {
                 .jobId(job.jobId())
                 .incidentId(job.incidentId())
                 .status(job.status())
-                .markdownReport(job.markdownReport())
+                .markdownReport(job.reportSpilled() ? spillStore.read(jobId) : job.markdownReport())
                 .errorMessage(job.errorMessage())
                 .createdAt(job.createdAt())
                 .completedAt(job.completedAt())
                 .piiEntitiesMasked(job.piiEntitiesMasked())
+                .model(reportModelOf(job.modelCalls()))
+                .routingDecision(job.routingDecision())
+                .modelCalls(job.modelCalls())
+                .promptTokens(job.modelCalls().stream()
+                        .filter(call -> call.getOutcome() == ModelCall.Outcome.SUCCEEDED)
+                        .mapToInt(ModelCall::getPromptTokens).sum())
+                .completionTokens(job.modelCalls().stream()
+                        .filter(call -> call.getOutcome() == ModelCall.Outcome.SUCCEEDED)
+                        .mapToInt(ModelCall::getCompletionTokens).sum())
+                .estimatedCostUsd(job.modelCalls().stream().mapToDouble(ModelCall::getEstimatedCostUsd).sum())
                 .build());
     }
 
+    /**
+     * Model that wrote the report: the last successful call that was not a chunk summary.
+     */
+    private static String reportModelOf(List<ModelCall> modelCalls) {
+        for (int i = modelCalls.size() - 1; i >= 0; i--) {
+            ModelCall call = modelCalls.get(i);
+            boolean answered = call.getOutcome() == ModelCall.Outcome.SUCCEEDED
+                    || call.getOutcome() == ModelCall.Outcome.CACHED;
+            if (answered && !call.getPurpose().startsWith("chunk")) {
+                return call.getModel();
+            }
+        }
+        return null;
+    }
+
     /**
      * Gets the incident snapshot for a job (used by analysis service).
      */
@@ -135,26 +453,57 @@ public class JobManagerService {
         return jobs.containsKey(jobId);
     }
 
+    private void scheduleExpiry(AnalysisJob job) {
+        if (job != null && isFinished(job)) {
+            expiries.add(new Expiry(job.jobId(), finishedAt(job)));
+        }
+    }
+
+    private static boolean isFinished(AnalysisJob job) {
+        return job.status() == JobStatus.COMPLETED || job.status() == JobStatus.FAILED;
+    }
+
+    private static Instant finishedAt(AnalysisJob job) {
+        return job.completedAt() != null ? job.completedAt() : job.createdAt();
+    }
+
     /**
-     * Scheduled cleanup of old jobs (runs every hour).
+     * Removes finished jobs whose retention has passed. Only due entries at the head of the
+     * expiry queue are visited, so each job costs one poll however many jobs are retained.
      */
-    @Scheduled(fixedRate = 3600000) // Every hour
+    @Scheduled(fixedDelayString = "${analysis.job.expiry-poll-millis:1000}")
     public void cleanupOldJobs() {
         Instant cutoff = Instant.now().minus(retentionHours, ChronoUnit.HOURS);
         int removedCount = 0;
 
-        for (Map.Entry<UUID, AnalysisJob> entry : jobs.entrySet()) {
-            AnalysisJob job = entry.getValue();
-            // Only remove completed or failed jobs older than retention period
-            if ((job.status() == JobStatus.COMPLETED || job.status() == JobStatus.FAILED)
-                    && job.createdAt().isBefore(cutoff)) {
-                jobs.remove(entry.getKey());
+        // Only the scheduler takes from the queue, so the head that was peeked is the one polled
+        for (Expiry expiry = expiries.peek(); expiry != null && !expiry.finishedAt().isAfter(cutoff);
+             expiry = expiries.peek()) {
+            expiries.poll();
+            AnalysisJob[] removed = new AnalysisJob[1];
+            jobs.computeIfPresent(expiry.jobId(), (id, job) -> {
+                if (!isFinished(job)) {
+                    return job;
+                }
+                removed[0] = job;
+                return null;
+            });
+            AnalysisJob job = removed[0];
+            if (job != null) {
+                retainedBytes.addAndGet(-job.weight());
+                statusCounts.get(job.status()).decrement();
+                spillCandidates.remove(job.jobId());
+                if (job.reportSpilled()) {
+                    spillStore.delete(job.jobId());
+                }
+                journal.removed(job.jobId(), journal.nextVersion());
+                signal(job.jobId(), job.status(), true);
                 removedCount++;
             }
         }
 
         if (removedCount > 0) {
-            log.info("Cleanup: Removed {} old jobs (retention: {} hours)", removedCount, retentionHours);
+            log.info("Cleanup: Removed {} expired jobs (retention: {} hours)", removedCount, retentionHours);
         }
     }
 
@@ -162,9 +511,38 @@ public class JobManagerService {
      * Returns current job count (for monitoring/health checks).
      */
     public int getActiveJobCount() {
-        return (int) jobs.values().stream()
-                .filter(job -> job.status() == JobStatus.QUEUED || job.status() == JobStatus.PROCESSING)
-                .count();
+        return (int) (getJobCount(JobStatus.QUEUED) + getJobCount(JobStatus.PROCESSING));
+    }
+
+    /**
+     * Number of retained jobs in a status.
+     */
+    public long getJobCount(JobStatus status) {
+        return statusCounts.get(status).sum();
+    }
+
+    /**
+     * How long the oldest queued job has been waiting, zero when none is queued.
+     */
+    public Duration getOldestQueuedAge() {
+        UUID jobId;
+        synchronized (queuedJobs) {
+            Iterator<UUID> oldest = queuedJobs.iterator();
+            if (!oldest.hasNext()) {
+                return Duration.ZERO;
+            }
+            jobId = oldest.next();
+        }
+        AnalysisJob job = jobs.get(jobId);
+        if (job == null) {
+            return Duration.ZERO;
+        }
+        Duration age = Duration.between(job.createdAt(), Instant.now());
+        return age.isNegative() ? Duration.ZERO : age;
+    }
+
+    int getQueuedJobCount() {
+        return queuedJobs.size();
     }
 
     public int getTotalJobCount() {
@@ -172,9 +550,15 @@ public class JobManagerService {
     }
 
     /**
-     * Internal record for storing job data.
+     * A finished job waiting to expire.
      */
-    private record AnalysisJob(
+    private record Expiry(UUID jobId, Instant finishedAt) {
+    }
+
+    /**
+     * Internal record for storing job data; also the state recorded in the {@link JobJournal}.
+     */
+    record AnalysisJob(
             UUID jobId,
             UUID incidentId,
             IncidentSnapshot snapshot,
@@ -183,11 +567,52 @@ public class JobManagerService {
             String errorMessage,
             Instant createdAt,
             Instant completedAt,
-            int piiEntitiesMasked) {
-        AnalysisJob withStatus(JobStatus newStatus) {
+            int piiEntitiesMasked,
+            String routingDecision,
+            List<ModelCall> modelCalls,
+            boolean reportSpilled, // report moved to the ReportSpillStore
+            long version) {
+
+        // Rough heap cost of the record, a model call, and a string character
+        private static final long JOB_BYTES = 1024;
+        private static final long MODEL_CALL_BYTES = 256;
+        private static final long CHAR_BYTES = 2;
+
+        AnalysisJob withStatus(JobStatus newStatus, long newVersion) {
             return new AnalysisJob(
                     jobId, incidentId, snapshot, newStatus,
-                    markdownReport, errorMessage, createdAt, completedAt, piiEntitiesMasked);
+                    markdownReport, errorMessage, createdAt, completedAt, piiEntitiesMasked,
+                    routingDecision, modelCalls, reportSpilled, newVersion);
+        }
+
+        AnalysisJob withSnapshot(IncidentSnapshot newSnapshot) {
+            return new AnalysisJob(
+                    jobId, incidentId, newSnapshot, status,
+                    markdownReport, errorMessage, createdAt, completedAt, piiEntitiesMasked,
+                    routingDecision, modelCalls, reportSpilled, version);
+        }
+
+        AnalysisJob withSpilledReport(long newVersion) {
+            return new AnalysisJob(
+                    jobId, incidentId, snapshot, status,
+                    null, errorMessage, createdAt, completedAt, piiEntitiesMasked,
+                    routingDecision, modelCalls, true, newVersion);
+        }
+
+        /**
+         * Estimated heap retained by this job, dominated by log content and the report.
+         */
+        long weight() {
+            long chars = length(markdownReport) + length(errorMessage) + length(routingDecision);
+            if (snapshot != null) {
+                chars += length(snapshot.getLogContent()) + length(snapshot.getTitle())
+                        + length(snapshot.getDescription());
+            }
+            return JOB_BYTES + MODEL_CALL_BYTES * modelCalls.size() + CHAR_BYTES * chars;
+        }
+
+        private static long length(String value) {
+            return value != null ? value.length() : 0;
         }
     }
 }
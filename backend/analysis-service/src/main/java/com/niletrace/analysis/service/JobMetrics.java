@@ -0,0 +1,35 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.JobStatus;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gauges over the job counters kept by {@link JobManagerService}: jobs per status (the
+ * {@code queued} series is the queue depth), the age of the oldest queued job and the estimated
+ * heap retained by jobs. Every gauge reads a counter, so scrapes cost the same at any job count.
+ */
+@Component
+public class JobMetrics {
+
+    public JobMetrics(JobManagerService jobManagerService, MeterRegistry meterRegistry) {
+        for (JobStatus status : JobStatus.values()) {
+            Gauge.builder("analysis.jobs", jobManagerService, service -> service.getJobCount(status))
+                    .description("Retained analysis jobs by status")
+                    .tag("status", status.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+        TimeGauge.builder("analysis.jobs.oldest-queued-age", jobManagerService, TimeUnit.MILLISECONDS,
+                        service -> service.getOldestQueuedAge().toMillis())
+                .description("Time the oldest queued job has been waiting")
+                .register(meterRegistry);
+        Gauge.builder("analysis.jobs.retained", jobManagerService, JobManagerService::getRetainedBytes)
+                .description("Estimated heap retained by analysis jobs")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+}
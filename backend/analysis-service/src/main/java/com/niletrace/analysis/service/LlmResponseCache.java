@@ -0,0 +1,256 @@
+package com.niletrace.analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Two-tier cache for LLM completions, keyed by a SHA-256 of the model, sampling
+ * parameters and the exact prompt. A bounded LRU map serves hot entries; every entry is
+ * also written gzip-compressed to {@code <directory>/<hh>/<hash>.gz} so it survives restarts.
+ * Entries expire after the configured TTL, judged by the file's modification time.
+ */
+@Service
+@Slf4j
+public class LlmResponseCache {
+
+    // Characters of prompt text encoded per digest update
+    private static final int HASH_SLICE_CHARS = 2048;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final Path root;
+    private final Duration ttl;
+
+    private final Map<String, Entry> memory;
+
+    public LlmResponseCache(
+            @Value("${groq.cache.enabled:true}") boolean enabled,
+            @Value("${groq.cache.max-entries:256}") int maxEntries,
+            @Value("${groq.cache.directory:./data/llm-cache}") String directory,
+            @Value("${groq.cache.ttl-hours:168}") int ttlHours) {
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.root = Path.of(directory).toAbsolutePath().normalize();
+        this.ttl = Duration.ofHours(ttlHours);
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > LlmResponseCache.this.maxEntries;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Cache key for a completion request with the user prompt as a single string.
+     */
+    public static String keyOf(String model, double temperature, int maxTokens, String systemPrompt,
+                               String userPrompt) {
+        return keyOf(model, temperature, maxTokens, systemPrompt, List.of(userPrompt));
+    }
+
+    /**
+     * Cache key for a completion request. Any change to the model, sampling parameters
+     * or prompt text yields a different key. The user prompt is hashed part by part, with
+     * the same result as hashing the parts joined.
+     */
+    public static String keyOf(String model, double temperature, int maxTokens, String systemPrompt,
+                               List<String> userParts) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // Length-prefixed fields so no two different requests serialize to the same bytes
+            for (String field : new String[]{model, Double.toString(temperature), Integer.toString(maxTokens),
+                    systemPrompt}) {
+                byte[] bytes = String.valueOf(field).getBytes(StandardCharsets.UTF_8);
+                digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+                digest.update((byte) ':');
+                digest.update(bytes);
+            }
+            long userBytes = 0;
+            for (String part : userParts) {
+                userBytes += utf8Length(part);
+            }
+            digest.update(Long.toString(userBytes).getBytes(StandardCharsets.US_ASCII));
+            digest.update((byte) ':');
+            // Encoded in slices so large logs are never copied into one byte array
+            CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            ByteBuffer bytes = ByteBuffer.allocate(HASH_SLICE_CHARS * 3);
+            for (String part : userParts) {
+                int start = 0;
+                while (start < part.length()) {
+                    int end = Math.min(part.length(), start + HASH_SLICE_CHARS);
+                    if (end < part.length() && Character.isHighSurrogate(part.charAt(end - 1))) {
+                        end--;
+                    }
+                    encoder.reset().encode(CharBuffer.wrap(part, start, end), bytes, true);
+                    encoder.flush(bytes);
+                    digest.update(bytes.flip());
+                    bytes.clear();
+                    start = end;
+                }
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates encode as a one-byte replacement
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Looks a completion up in memory, then on disk (promoting disk hits to memory).
+     */
+    public Optional<String> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (!isExpired(entry.storedAt())) {
+                    return Optional.of(entry.content());
+                }
+                memory.remove(key);
+            }
+        }
+
+        Path file = pathOf(key);
+        try {
+            Instant storedAt = Files.getLastModifiedTime(file).toInstant();
+            if (isExpired(storedAt)) {
+                Files.deleteIfExists(file);
+                return Optional.empty();
+            }
+            String content;
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), 16 * 1024)) {
+                content = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            synchronized (memory) {
+                memory.put(key, new Entry(content, storedAt));
+            }
+            return Optional.of(content);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException e) {
+            log.warn("Failed to read LLM cache entry {}: {}", key, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Stores a completion in both tiers. Disk failures are logged and otherwise ignored.
+     */
+    public void put(String key, String content) {
+        if (!enabled || content == null) {
+            return;
+        }
+
+        synchronized (memory) {
+            memory.put(key, new Entry(content, Instant.now()));
+        }
+
+        Path target = pathOf(key);
+        try {
+            Files.createDirectories(target.getParent());
+            // Write to a temp file first so a crash never leaves a truncated entry behind
+            Path temp = target.resolveSibling(target.getFileName() + "." + Thread.currentThread().threadId() + ".tmp");
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 16 * 1024)) {
+                out.write(content.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write LLM cache entry {}: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Scheduled removal of expired disk entries (runs every hour).
+     */
+    @Scheduled(fixedRate = 3600000)
+    public void purgeExpired() {
+        if (!enabled || !Files.isDirectory(root)) {
+            return;
+        }
+        int removed = 0;
+        try (Stream<Path> files = Files.walk(root, 2)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                try {
+                    if (isExpired(Files.getLastModifiedTime(file).toInstant()) && Files.deleteIfExists(file)) {
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    log.warn("Failed to purge LLM cache file {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan LLM cache directory {}: {}", root, e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("LLM cache: removed {} expired entries", removed);
+        }
+    }
+
+    private boolean isExpired(Instant storedAt) {
+        return storedAt.plus(ttl).isBefore(Instant.now());
+    }
+
+    private Path pathOf(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key + ".gz");
+    }
+
+    private record Entry(String content, Instant storedAt) {
+    }
+}
@@ -0,0 +1,225 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.ModelCall;
+import com.niletrace.analysis.exception.TokenBudgetExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Accounting for LLM calls: prices each call from {@code groq.pricing}, publishes token,
+ * latency and cost meters ({@code groq.tokens}, {@code groq.call.*}, {@code groq.cost})
+ * and enforces the token budget. Budgets count billed tokens (cache hits are free) in
+ * fixed windows, globally and per incident owner; once one is used up new jobs are either
+ * rejected or downgraded to the fast model, per {@code analysis.budget.action}.
+ */
+@Service
+@Slf4j
+public class LlmUsageService {
+
+    public enum BudgetAction {
+        REJECT, DOWNGRADE
+    }
+
+    private static final String NO_OWNER = "-";
+
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Price> prices;
+    private final boolean budgetEnabled;
+    private final long windowNanos;
+    private final long globalTokenBudget;
+    private final long ownerTokenBudget;
+    private final BudgetAction budgetAction;
+
+    private final LongAdder globalTokens = new LongAdder();
+    private final Map<String, LongAdder> ownerTokens = new ConcurrentHashMap<>();
+    private final AtomicLong windowStartNanos = new AtomicLong(System.nanoTime());
+
+    public LlmUsageService(MeterRegistry meterRegistry,
+                           @Value("${groq.pricing:}") String pricing,
+                           @Value("${analysis.budget.enabled:false}") boolean budgetEnabled,
+                           @Value("${analysis.budget.window-hours:24}") int windowHours,
+                           @Value("${analysis.budget.global-tokens:0}") long globalTokenBudget,
+                           @Value("${analysis.budget.owner-tokens:0}") long ownerTokenBudget,
+                           @Value("${analysis.budget.action:DOWNGRADE}") BudgetAction budgetAction) {
+        this.meterRegistry = meterRegistry;
+        this.prices = parsePricing(pricing);
+        this.budgetEnabled = budgetEnabled;
+        this.windowNanos = Duration.ofHours(windowHours).toNanos();
+        this.globalTokenBudget = globalTokenBudget;
+        this.ownerTokenBudget = ownerTokenBudget;
+        this.budgetAction = budgetAction;
+    }
+
+    /**
+     * Estimated cost in USD of a call, or 0 for models without a configured price.
+     */
+    public double costOf(String model, int promptTokens, int completionTokens) {
+        Price price = prices.get(model);
+        if (price == null) {
+            return 0;
+        }
+        return (promptTokens * price.inputPerMillion() + completionTokens * price.outputPerMillion()) / 1_000_000;
+    }
+
+    /**
+     * Publishes the meters of one model call and charges its tokens to the budgets.
+     */
+    public void record(IncidentSnapshot snapshot, ModelCall call) {
+        if (call.getOutcome() == ModelCall.Outcome.SKIPPED) {
+            return;
+        }
+        String model = call.getModel();
+        String purpose = purposeTag(call.getPurpose());
+        String outcome = call.getOutcome().name().toLowerCase();
+
+        Timer.builder("groq.call.duration")
+                .description("Total LLM call latency, including queue wait")
+                .tags("model", model, "purpose", purpose, "outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofMillis(call.getLatencyMillis()));
+        if (call.getOutcome() != ModelCall.Outcome.SUCCEEDED) {
+            return;
+        }
+
+        Timer.builder("groq.call.queue-wait")
+                .description("Time waiting for rate-limit capacity before the request was sent")
+                .tags("model", model)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofMillis(call.getQueueWaitMillis()));
+        Timer.builder("groq.call.time-to-first-token")
+                .description("Time from call start to the first response token")
+                .tags("model", model, "purpose", purpose)
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(Duration.ofMillis(call.getTimeToFirstTokenMillis()));
+        tokenSummary(model, purpose, "prompt").record(call.getPromptTokens());
+        tokenSummary(model, purpose, "completion").record(call.getCompletionTokens());
+        Counter.builder("groq.cost")
+                .description("Estimated LLM cost")
+                .baseUnit("usd")
+                .tag("model", model)
+                .register(meterRegistry)
+                .increment(call.getEstimatedCostUsd());
+
+        charge(ownerOf(snapshot), call.getPromptTokens() + call.getCompletionTokens());
+    }
+
+    private DistributionSummary tokenSummary(String model, String purpose, String type) {
+        return DistributionSummary.builder("groq.tokens")
+                .description("Tokens per LLM call")
+                .baseUnit("tokens")
+                .tags("model", model, "purpose", purpose, "type", type)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    /**
+     * Admission check for a new job: throws when a budget is used up and the action is
+     * {@code REJECT}. With {@code DOWNGRADE} the job is admitted and routed to the fast model.
+     */
+    public void checkAdmission(IncidentSnapshot snapshot) {
+        if (budgetAction == BudgetAction.REJECT && isOverBudget(snapshot)) {
+            budgetCounter(BudgetAction.REJECT).increment();
+            throw new TokenBudgetExceededException("LLM token budget exceeded"
+                    + (snapshot.getOwnerId() != null ? " for owner " + snapshot.getOwnerId() : ""));
+        }
+    }
+
+    /**
+     * Whether calls for this incident should be kept on the fast model to save tokens.
+     */
+    public boolean shouldDowngrade(IncidentSnapshot snapshot) {
+        if (budgetAction != BudgetAction.DOWNGRADE || !isOverBudget(snapshot)) {
+            return false;
+        }
+        budgetCounter(BudgetAction.DOWNGRADE).increment();
+        return true;
+    }
+
+    private Counter budgetCounter(BudgetAction action) {
+        return Counter.builder("groq.budget.exceeded")
+                .description("Jobs rejected or downgraded by the token budget")
+                .tag("action", action.name().toLowerCase())
+                .register(meterRegistry);
+    }
+
+    boolean isOverBudget(IncidentSnapshot snapshot) {
+        if (!budgetEnabled) {
+            return false;
+        }
+        rollWindow();
+        if (globalTokenBudget > 0 && globalTokens.sum() >= globalTokenBudget) {
+            return true;
+        }
+        LongAdder owner = ownerTokens.get(ownerOf(snapshot));
+        return ownerTokenBudget > 0 && snapshot.getOwnerId() != null && owner != null
+                && owner.sum() >= ownerTokenBudget;
+    }
+
+    private void charge(String owner, int tokens) {
+        if (!budgetEnabled) {
+            return;
+        }
+        rollWindow();
+        globalTokens.add(tokens);
+        ownerTokens.computeIfAbsent(owner, key -> new LongAdder()).add(tokens);
+    }
+
+    private void rollWindow() {
+        long start = windowStartNanos.get();
+        long now = System.nanoTime();
+        if (now - start >= windowNanos && windowStartNanos.compareAndSet(start, now)) {
+            log.info("Token budget window rolled over after {} tokens", globalTokens.sum());
+            globalTokens.reset();
+            ownerTokens.clear();
+        }
+    }
+
+    private static String ownerOf(IncidentSnapshot snapshot) {
+        return snapshot.getOwnerId() != null ? snapshot.getOwnerId() : NO_OWNER;
+    }
+
+    private static String purposeTag(String purpose) {
+        // "chunk 3/8" would make one tag value per position
+        if (purpose.startsWith("chunk")) {
+            return "chunk";
+        }
+        return purpose.startsWith("section") ? "section" : purpose;
+    }
+
+    /**
+     * Parses {@code model:inputUsdPerMillion:outputUsdPerMillion} entries separated by commas.
+     */
+    static Map<String, Price> parsePricing(String pricing) {
+        Map<String, Price> prices = new HashMap<>();
+        for (String entry : pricing.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 3) {
+                throw new IllegalArgumentException("Invalid groq.pricing entry: " + entry);
+            }
+            prices.put(parts[0], new Price(Double.parseDouble(parts[1]), Double.parseDouble(parts[2])));
+        }
+        return Map.copyOf(prices);
+    }
+
+    record Price(double inputPerMillion, double outputPerMillion) {
+    }
+}
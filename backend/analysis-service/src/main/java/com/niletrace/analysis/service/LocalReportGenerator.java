@@ -0,0 +1,106 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a postmortem skeleton from log statistics alone, used when the LLM is
+ * unavailable. Follows the section structure of the LLM report template so the UI
+ * renders it the same way, and states clearly that no model analysis took place.
+ * The statistics come from {@link LogDigest}, the same extraction that condenses large logs
+ * for the model.
+ */
+@Component
+public class LocalReportGenerator {
+
+    private static final int TOP_SIGNATURES = 5;
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss z")
+            .withZone(ZoneId.of("UTC"));
+
+    /**
+     * @param snapshot            The incident snapshot
+     * @param sanitizedLogContent The PII-scrubbed log content
+     * @return Markdown report following the postmortem template
+     */
+    public String generate(IncidentSnapshot snapshot, String sanitizedLogContent) {
+        LogDigest digest = LogDigest.of(sanitizedLogContent, null, 0, 0);
+        List<LogDigest.Signature> topSignatures = digest.signatures();
+        LogLines.Line firstError = digest.firstFailure();
+        Instant firstTimestamp = digest.firstTimestamp();
+        Instant lastTimestamp = digest.lastTimestamp();
+        int errorCount = digest.errorLines();
+
+        StringBuilder report = new StringBuilder();
+        report.append("# Executive Summary\n");
+        report.append("Automated analysis was unavailable, so this report was generated from log statistics only. ")
+                .append("Incident \"").append(snapshot.getTitle()).append("\" (").append(snapshot.getSeverity())
+                .append(") logged ").append(errorCount).append(" error lines across ")
+                .append(topSignatures.size()).append(" distinct error messages.\n\n");
+
+        report.append("## Incident Timeline\n");
+        report.append("- ").append(FORMATTER.format(snapshot.getIncidentStartTime())).append(": Incident start\n");
+        if (firstTimestamp != null) {
+            report.append("- ").append(FORMATTER.format(firstTimestamp)).append(": First log line\n");
+        }
+        if (firstError != null) {
+            report.append("- ").append(firstError.timestamp() != null ? FORMATTER.format(firstError.timestamp()) : "Unknown time")
+                    .append(": First error: `").append(truncate(firstError.text())).append("`\n");
+        }
+        if (lastTimestamp != null) {
+            report.append("- ").append(FORMATTER.format(lastTimestamp)).append(": Last log line\n");
+        }
+        report.append('\n');
+
+        report.append("## Root Cause Analysis\n");
+        if (topSignatures.isEmpty()) {
+            report.append("No error lines were found in the log. Root cause requires manual investigation.\n\n");
+        } else {
+            report.append("Root cause not determined (no model analysis). Most frequent errors:\n\n");
+            for (LogDigest.Signature signature : topSignatures.subList(0, Math.min(TOP_SIGNATURES, topSignatures.size()))) {
+                report.append("- ").append(signature.count()).append("x `").append(truncate(signature.example()))
+                        .append("`\n");
+            }
+            report.append('\n');
+        }
+
+        report.append("## Impact Assessment\n");
+        report.append("- Log lines: ").append(digest.totalLines()).append('\n');
+        for (Map.Entry<LogLines.Level, Integer> entry : digest.levelCounts().entrySet()) {
+            if (entry.getKey() != LogLines.Level.UNKNOWN) {
+                report.append("- ").append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+            }
+        }
+        report.append("- Stack trace lines: ").append(digest.stackTraceLines()).append('\n');
+        if (snapshot.getServiceName() != null && !snapshot.getServiceName().isBlank()) {
+            report.append("- Service: ").append(snapshot.getServiceName()).append('\n');
+        }
+        report.append('\n');
+
+        report.append("## Resolution Steps\n");
+        report.append("1. Not available from log statistics; record the steps taken manually.\n\n");
+
+        report.append("## Lessons Learned\n");
+        report.append("- Re-run the analysis once the LLM provider is available for a full postmortem.\n\n");
+
+        report.append("## Action Items\n");
+        report.append("- [ ] Short-term remediation\n");
+        report.append("- [ ] Long-term prevention\n");
+        report.append("- [ ] Monitoring improvements\n\n");
+        report.append("---\n");
+        report.append("*Generated locally by NileTrace Analysis Service (LLM unavailable)*\n");
+        return report.toString();
+    }
+
+    private static String truncate(String text) {
+        String stripped = text.strip().replace('`', '\'');
+        return stripped.length() > 200 ? stripped.substring(0, 200) + "..." : stripped;
+    }
+}
@@ -0,0 +1,286 @@
+package com.niletrace.analysis.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Deterministic, extractive statistics of a log: level counts, the first failure, error
+ * signatures with counts, distinct stack traces and the error rate around the incident start.
+ * Computed in one pass over the classified lines; the same input always yields the same digest.
+ * A small excerpt of raw lines around the incident start (or the first failure) keeps the
+ * original log format visible.
+ */
+record LogDigest(
+        int totalLines,
+        Map<LogLines.Level, Integer> levelCounts,
+        Instant firstTimestamp,
+        Instant lastTimestamp,
+        LogLines.Line firstFailure,
+        List<String> firstFailureTrace,
+        List<Signature> signatures,
+        List<StackTrace> stackTraces,
+        int stackTraceLines,
+        ErrorRate errorRate,
+        String sample,
+        int sampleLines) {
+
+    // Frames kept per stack trace, and frames that decide whether two traces are the same
+    static final int MAX_TRACE_LINES = 12;
+    private static final int TRACE_KEY_FRAMES = 4;
+
+    /**
+     * @param content           The (sanitized) log content
+     * @param incidentStartTime Incident start for the error rate comparison, may be null
+     * @param windowMinutes     Minutes on either side of the incident start to compare
+     * @param sampleChars       Size of the raw excerpt, 0 for none
+     */
+    static LogDigest of(String content, Instant incidentStartTime, int windowMinutes, int sampleChars) {
+        List<LogLines.Line> lines = LogLines.parse(content);
+
+        Map<LogLines.Level, Integer> levelCounts = new EnumMap<>(LogLines.Level.class);
+        Map<String, Signature.Builder> signatures = new LinkedHashMap<>();
+        Map<String, StackTrace.Builder> stackTraces = new LinkedHashMap<>();
+        ErrorRate.Builder errorRate = incidentStartTime != null
+                ? new ErrorRate.Builder(incidentStartTime, windowMinutes)
+                : null;
+        LogLines.Line firstFailure = null;
+        int anchor = -1;
+        List<String> firstFailureTrace = List.of();
+        Instant firstTimestamp = null;
+        Instant lastTimestamp = null;
+        int stackTraceLines = 0;
+
+        for (int i = 0; i < lines.size(); i++) {
+            LogLines.Line line = lines.get(i);
+
+            // A stack trace block: the exception message line and the frames that follow it
+            if (line.stackTrace() && (i == 0 || !lines.get(i - 1).stackTrace())) {
+                int end = i;
+                while (end < lines.size() && lines.get(end).stackTrace()) {
+                    end++;
+                }
+                List<String> block = lines.subList(i, end).stream().map(LogLines.Line::text).toList();
+                stackTraces.computeIfAbsent(traceKeyOf(block), key -> new StackTrace.Builder(block, line.timestamp()))
+                        .count++;
+                if (firstFailure == null && isFailure(line)) {
+                    firstFailureTrace = block.subList(1, Math.min(block.size(), MAX_TRACE_LINES));
+                }
+            }
+
+            if (!line.text().isBlank()) {
+                levelCounts.merge(line.level(), 1, Integer::sum);
+                if (line.timestamp() != null) {
+                    if (firstTimestamp == null) {
+                        firstTimestamp = line.timestamp();
+                    }
+                    lastTimestamp = line.timestamp();
+                    if (anchor < 0 && incidentStartTime != null && !line.timestamp().isBefore(incidentStartTime)) {
+                        anchor = i;
+                    }
+                }
+                if (LogLines.isStackTraceLine(line.text())) {
+                    stackTraceLines++;
+                } else {
+                    if (errorRate != null) {
+                        errorRate.add(line);
+                    }
+                    if (isFailure(line)) {
+                        if (firstFailure == null) {
+                            firstFailure = line;
+                            if (incidentStartTime == null) {
+                                anchor = i;
+                            }
+                        }
+                        signatures.computeIfAbsent(LogLines.signatureOf(line.text()), key -> new Signature.Builder(line))
+                                .add(line);
+                    }
+                }
+            }
+        }
+
+        List<Signature> sortedSignatures = new ArrayList<>(signatures.size());
+        signatures.values().forEach(builder -> sortedSignatures.add(builder.build()));
+        // Stable sort: equally frequent signatures stay in order of first appearance
+        sortedSignatures.sort((a, b) -> Integer.compare(b.count(), a.count()));
+
+        List<StackTrace> sortedTraces = new ArrayList<>(stackTraces.size());
+        stackTraces.values().forEach(builder -> sortedTraces.add(builder.build()));
+        sortedTraces.sort((a, b) -> Integer.compare(b.count(), a.count()));
+
+        int[] excerpt = excerptAround(lines, Math.max(anchor, 0), sampleChars);
+        StringBuilder sample = new StringBuilder(sampleChars + 64);
+        if (excerpt[0] > 0) {
+            sample.append("[... ").append(excerpt[0]).append(" earlier lines ...]\n");
+        }
+        for (int i = excerpt[0]; i < excerpt[1]; i++) {
+            sample.append(lines.get(i).text()).append('\n');
+        }
+        if (excerpt[1] < lines.size()) {
+            sample.append("[... ").append(lines.size() - excerpt[1]).append(" later lines ...]\n");
+        }
+
+        return new LogDigest(lines.size(), Collections.unmodifiableMap(levelCounts), firstTimestamp, lastTimestamp,
+                firstFailure, firstFailureTrace, sortedSignatures, sortedTraces, stackTraceLines,
+                errorRate != null ? errorRate.build() : null, sample.toString(), excerpt[1] - excerpt[0]);
+    }
+
+    /**
+     * Contiguous range of lines around {@code anchor}, grown alternately forward and backward
+     * while it fits in {@code maxChars}. Returns {@code [from, to)}.
+     */
+    private static int[] excerptAround(List<LogLines.Line> lines, int anchor, int maxChars) {
+        int from = Math.min(anchor, lines.size());
+        int to = from;
+        int used = 0;
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            if (to < lines.size() && used + lines.get(to).text().length() + 1 <= maxChars) {
+                used += lines.get(to++).text().length() + 1;
+                grown = true;
+            }
+            if (from > 0 && used + lines.get(from - 1).text().length() + 1 <= maxChars) {
+                used += lines.get(--from).text().length() + 1;
+                grown = true;
+            }
+        }
+        return new int[]{from, to};
+    }
+
+    int errorLines() {
+        return levelCounts.getOrDefault(LogLines.Level.FATAL, 0) + levelCounts.getOrDefault(LogLines.Level.ERROR, 0);
+    }
+
+    private static boolean isFailure(LogLines.Line line) {
+        return line.level() == LogLines.Level.FATAL || line.level() == LogLines.Level.ERROR;
+    }
+
+    private static String traceKeyOf(List<String> block) {
+        StringBuilder key = new StringBuilder();
+        for (String text : block.subList(0, Math.min(block.size(), TRACE_KEY_FRAMES + 1))) {
+            key.append(LogLines.signatureOf(text)).append('\n');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Error lines sharing a signature (same text once timestamps and variable tokens are masked).
+     */
+    record Signature(String example, int count, Instant firstSeen, Instant lastSeen) {
+
+        private static final class Builder {
+            private final String example;
+            private int count;
+            private Instant firstSeen;
+            private Instant lastSeen;
+
+            Builder(LogLines.Line first) {
+                this.example = first.text();
+            }
+
+            void add(LogLines.Line line) {
+                count++;
+                if (line.timestamp() != null) {
+                    if (firstSeen == null) {
+                        firstSeen = line.timestamp();
+                    }
+                    lastSeen = line.timestamp();
+                }
+            }
+
+            Signature build() {
+                return new Signature(example, count, firstSeen, lastSeen);
+            }
+        }
+    }
+
+    /**
+     * A distinct stack trace: the first occurrence, cut to {@link #MAX_TRACE_LINES} lines, and how often it recurs.
+     */
+    record StackTrace(List<String> lines, int totalLines, int count, Instant firstSeen) {
+
+        private static final class Builder {
+            private final List<String> lines;
+            private final int totalLines;
+            private final Instant firstSeen;
+            private int count;
+
+            Builder(List<String> block, Instant firstSeen) {
+                this.lines = List.copyOf(block.subList(0, Math.min(block.size(), MAX_TRACE_LINES)));
+                this.totalLines = block.size();
+                this.firstSeen = firstSeen;
+            }
+
+            StackTrace build() {
+                return new StackTrace(lines, totalLines, count, firstSeen);
+            }
+        }
+    }
+
+    /**
+     * Lines and errors per minute within the window around the incident start.
+     */
+    record ErrorRate(Instant incidentStartTime, int windowMinutes, List<Bucket> buckets, int errorsBefore,
+                     int errorsAfter) {
+
+        double errorsPerMinuteBefore() {
+            return windowMinutes == 0 ? 0 : (double) errorsBefore / windowMinutes;
+        }
+
+        double errorsPerMinuteAfter() {
+            return windowMinutes == 0 ? 0 : (double) errorsAfter / windowMinutes;
+        }
+
+        record Bucket(Instant minute, int lines, int errors) {
+        }
+
+        private static final class Builder {
+            private final Instant incidentStartTime;
+            private final int windowMinutes;
+            private final Instant from;
+            private final Instant to;
+            private final TreeMap<Instant, int[]> buckets = new TreeMap<>();
+            private int errorsBefore;
+            private int errorsAfter;
+
+            Builder(Instant incidentStartTime, int windowMinutes) {
+                this.incidentStartTime = incidentStartTime;
+                this.windowMinutes = windowMinutes;
+                Duration window = Duration.ofMinutes(windowMinutes);
+                this.from = incidentStartTime.minus(window);
+                this.to = incidentStartTime.plus(window);
+            }
+
+            void add(LogLines.Line line) {
+                Instant timestamp = line.timestamp();
+                if (timestamp == null || timestamp.isBefore(from) || !timestamp.isBefore(to)) {
+                    return;
+                }
+                int[] counts = buckets.computeIfAbsent(timestamp.truncatedTo(ChronoUnit.MINUTES), key -> new int[2]);
+                counts[0]++;
+                if (isFailure(line)) {
+                    counts[1]++;
+                    if (timestamp.isBefore(incidentStartTime)) {
+                        errorsBefore++;
+                    } else {
+                        errorsAfter++;
+                    }
+                }
+            }
+
+            ErrorRate build() {
+                List<Bucket> result = new ArrayList<>(buckets.size());
+                buckets.forEach((minute, counts) -> result.add(new Bucket(minute, counts[0], counts[1])));
+                return new ErrorRate(incidentStartTime, windowMinutes, result, errorsBefore, errorsAfter);
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.niletrace.analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Pre-LLM stage that condenses large logs into an extractive digest: the first failure,
+ * the most frequent error signatures with counts, distinct stack traces and the error rate
+ * around the incident start, followed by a short excerpt of raw lines from that time. The
+ * model receives this instead of the raw log, typically a fraction of its size, while keeping
+ * the evidence a postmortem is built on. Output is deterministic for a given log and incident.
+ */
+@Service
+@Slf4j
+public class LogDigestService {
+
+    private static final int MAX_LINE_CHARS = 300;
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss z")
+            .withZone(ZoneId.of("UTC"));
+
+    private static final DateTimeFormatter MINUTE_FORMATTER = DateTimeFormatter
+            .ofPattern("HH:mm")
+            .withZone(ZoneId.of("UTC"));
+
+    @Value("${analysis.digest.enabled:true}")
+    private boolean enabled;
+
+    @Value("${analysis.digest.min-chars:300000}")
+    private int minChars;
+
+    @Value("${analysis.digest.top-signatures:10}")
+    private int topSignatures;
+
+    @Value("${analysis.digest.max-stack-traces:5}")
+    private int maxStackTraces;
+
+    @Value("${analysis.digest.window-minutes:10}")
+    private int windowMinutes;
+
+    @Value("${analysis.digest.sample-chars:3000}")
+    private int sampleChars;
+
+    /**
+     * Whether a log is large enough to be sent as a digest rather than as raw lines.
+     */
+    public boolean appliesTo(String sanitizedLogContent) {
+        return enabled && sanitizedLogContent != null && sanitizedLogContent.length() >= minChars;
+    }
+
+    /**
+     * @param sanitizedLogContent The PII-scrubbed log content
+     * @param incidentStartTime   Incident start, for the error rate comparison and the excerpt
+     * @return The rendered digest and raw sample
+     */
+    public Digest digest(String sanitizedLogContent, Instant incidentStartTime) {
+        LogDigest digest = LogDigest.of(sanitizedLogContent, incidentStartTime, windowMinutes, sampleChars);
+        String content = render(digest);
+
+        log.debug("Digested {} log chars into {} digest chars and a {}-line sample",
+                sanitizedLogContent.length(), content.length(), digest.sampleLines());
+        return new Digest(content, digest.sample(), digest.totalLines(), digest.sampleLines(),
+                sanitizedLogContent.length());
+    }
+
+    String render(LogDigest digest) {
+        StringBuilder out = new StringBuilder(4096);
+
+        out.append("**Lines:** ").append(digest.totalLines());
+        if (digest.firstTimestamp() != null) {
+            out.append(" (").append(FORMATTER.format(digest.firstTimestamp())).append(" to ")
+                    .append(FORMATTER.format(digest.lastTimestamp())).append(')');
+        }
+        out.append('\n');
+        out.append("**Levels:**");
+        for (Map.Entry<LogLines.Level, Integer> entry : digest.levelCounts().entrySet()) {
+            if (entry.getKey() != LogLines.Level.UNKNOWN) {
+                out.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+            }
+        }
+        out.append("\n\n");
+
+        out.append("### First Failure\n\n");
+        if (digest.firstFailure() == null) {
+            out.append("No ERROR or FATAL lines.\n\n");
+        } else {
+            out.append("```\n").append(truncate(digest.firstFailure().text())).append('\n');
+            digest.firstFailureTrace().forEach(line -> out.append(truncate(line)).append('\n'));
+            out.append("```\n\n");
+        }
+
+        List<LogDigest.Signature> signatures = digest.signatures();
+        out.append("### Top Error Signatures (").append(Math.min(topSignatures, signatures.size())).append(" of ")
+                .append(signatures.size()).append(" distinct)\n\n");
+        for (LogDigest.Signature signature : signatures.subList(0, Math.min(topSignatures, signatures.size()))) {
+            out.append("- ").append(signature.count()).append('x');
+            if (signature.firstSeen() != null) {
+                out.append(", first ").append(FORMATTER.format(signature.firstSeen()))
+                        .append(", last ").append(FORMATTER.format(signature.lastSeen()));
+            }
+            out.append(": `").append(truncate(signature.example()).replace('`', '\'')).append("`\n");
+        }
+        out.append('\n');
+
+        List<LogDigest.StackTrace> traces = digest.stackTraces();
+        out.append("### Distinct Stack Traces (").append(Math.min(maxStackTraces, traces.size())).append(" of ")
+                .append(traces.size()).append(")\n\n");
+        for (LogDigest.StackTrace trace : traces.subList(0, Math.min(maxStackTraces, traces.size()))) {
+            out.append(trace.count()).append("x");
+            if (trace.firstSeen() != null) {
+                out.append(", first ").append(FORMATTER.format(trace.firstSeen()));
+            }
+            out.append(":\n```\n");
+            trace.lines().forEach(line -> out.append(truncate(line)).append('\n'));
+            if (trace.totalLines() > trace.lines().size()) {
+                out.append("... ").append(trace.totalLines() - trace.lines().size()).append(" more lines\n");
+            }
+            out.append("```\n");
+        }
+        out.append('\n');
+
+        LogDigest.ErrorRate rate = digest.errorRate();
+        if (rate != null) {
+            out.append("### Error Rate Around Incident Start (+/- ").append(rate.windowMinutes()).append(" min)\n\n");
+            out.append("- Before: ").append(format(rate.errorsPerMinuteBefore())).append(" errors/min (")
+                    .append(rate.errorsBefore()).append(" errors)\n");
+            out.append("- After: ").append(format(rate.errorsPerMinuteAfter())).append(" errors/min (")
+                    .append(rate.errorsAfter()).append(" errors)\n\n");
+            if (!rate.buckets().isEmpty()) {
+                out.append("| Minute (UTC) | Lines | Errors |\n|---|---|---|\n");
+                for (LogDigest.ErrorRate.Bucket bucket : rate.buckets()) {
+                    out.append("| ").append(MINUTE_FORMATTER.format(bucket.minute()))
+                            .append(bucket.minute().isBefore(rate.incidentStartTime()) ? "" : " *")
+                            .append(" | ").append(bucket.lines()).append(" | ").append(bucket.errors()).append(" |\n");
+                }
+                out.append("\n_* at or after the incident start_\n");
+            }
+        }
+        return out.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    private static String truncate(String text) {
+        String stripped = text.stripTrailing();
+        return stripped.length() > MAX_LINE_CHARS ? stripped.substring(0, MAX_LINE_CHARS) + " [...]" : stripped;
+    }
+
+    /**
+     * A log condensed for the model.
+     *
+     * @param content       Markdown digest of the whole log
+     * @param sample        Short excerpt of raw lines
+     * @param totalLines    Lines in the original log
+     * @param sampleLines   Lines in the sample
+     * @param originalChars Characters in the original log
+     */
+    public record Digest(
+            String content,
+            String sample,
+            int totalLines,
+            int sampleLines,
+            int originalChars) {
+    }
+}
@@ -0,0 +1,155 @@
+package com.niletrace.analysis.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Line-level classification of raw log text: severity level, stack-trace
+ * membership and timestamp. Shared by the sampling and prompt-building stages.
+ */
+final class LogLines {
+
+    private static final Pattern LEVEL_PATTERN = Pattern.compile(
+            "\\b(FATAL|CRITICAL|SEVERE|ERROR|WARN(?:ING)?|INFO|DEBUG|TRACE)\\b");
+
+    // Structured forms such as level=error or "level":"warn"
+    private static final Pattern LEVEL_KV_PATTERN = Pattern.compile(
+            "\\blevel[\"']?\\s*[=:]\\s*[\"']?(fatal|critical|error|warn(?:ing)?|info|debug|trace)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern STACK_FRAME_PATTERN = Pattern.compile(
+            "^\\s+at\\s+\\S+|" + // Java / JS frame
+                    "^\\s*\\.\\.\\. \\d+ (?:more|common frames omitted)|" + // Java elided frames
+                    "^Caused by:|^\\s*Suppressed:|" + // Java chained causes
+                    "^Traceback \\(most recent call last\\):|" + // Python header
+                    "^\\s+File \".*\", line \\d+"); // Python frame
+
+    private static final Pattern TIMESTAMP_PATTERN = Pattern.compile(
+            "(\\d{4}-\\d{2}-\\d{2})[T ](\\d{2}:\\d{2}:\\d{2})(?:[.,](\\d{1,9}))?\\s?(Z|[+-]\\d{2}:?\\d{2})?");
+
+    // Variable tokens (ids, hex, numbers) masked when grouping repeated lines
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile(
+            "[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}|" +
+                    "\\b0x[0-9a-fA-F]+\\b|\\b[0-9a-fA-F]*\\d[0-9a-fA-F]{7,}\\b|\\d+");
+
+    private LogLines() {
+    }
+
+    enum Level {
+        FATAL, ERROR, WARN, INFO, DEBUG, TRACE, UNKNOWN;
+
+        boolean isPriority() {
+            return this == FATAL || this == ERROR || this == WARN;
+        }
+    }
+
+    /**
+     * A classified log line. Timestamps are inherited by continuation lines
+     * (stack frames, wrapped messages) from the last line that carried one.
+     */
+    record Line(int index, String text, Level level, Instant timestamp, boolean stackTrace) {
+        boolean isPriority() {
+            return stackTrace || level.isPriority();
+        }
+    }
+
+    static List<String> split(String content) {
+        if (content == null || content.isEmpty()) {
+            return List.of();
+        }
+        return content.lines().toList();
+    }
+
+    static List<Line> parse(String content) {
+        List<String> raw = split(content);
+        List<Line> lines = new ArrayList<>(raw.size());
+
+        Instant lastTimestamp = null;
+        for (int i = 0; i < raw.size(); i++) {
+            String text = raw.get(i);
+            Instant timestamp = timestampOf(text);
+            if (timestamp != null) {
+                lastTimestamp = timestamp;
+            }
+            boolean stackTrace = isStackTraceLine(text);
+
+            // The line right before the first frame carries the exception message
+            if (stackTrace && !lines.isEmpty()) {
+                Line previous = lines.get(lines.size() - 1);
+                if (!previous.stackTrace() && !previous.text().isBlank()) {
+                    lines.set(lines.size() - 1, new Line(previous.index(), previous.text(), previous.level(),
+                            previous.timestamp(), true));
+                }
+            }
+
+            lines.add(new Line(i, text, levelOf(text), timestamp != null ? timestamp : lastTimestamp, stackTrace));
+        }
+        return lines;
+    }
+
+    /**
+     * Template of a line with its timestamp removed and variable tokens masked,
+     * so repeats of the same event map to the same signature.
+     */
+    static String signatureOf(String line) {
+        String withoutTimestamp = TIMESTAMP_PATTERN.matcher(line).replaceFirst("");
+        return VARIABLE_PATTERN.matcher(withoutTimestamp.strip()).replaceAll("#");
+    }
+
+    static Level levelOf(String line) {
+        Matcher matcher = LEVEL_PATTERN.matcher(line);
+        if (matcher.find()) {
+            return toLevel(matcher.group(1));
+        }
+        matcher = LEVEL_KV_PATTERN.matcher(line);
+        if (matcher.find()) {
+            return toLevel(matcher.group(1));
+        }
+        return Level.UNKNOWN;
+    }
+
+    static boolean isStackTraceLine(String line) {
+        return STACK_FRAME_PATTERN.matcher(line).find();
+    }
+
+    static Instant timestampOf(String line) {
+        Matcher matcher = TIMESTAMP_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return null;
+        }
+        String fraction = matcher.group(3) != null ? "." + matcher.group(3) : "";
+        String iso = matcher.group(1) + "T" + matcher.group(2) + fraction;
+        try {
+            String zone = matcher.group(4);
+            if (zone == null) {
+                // Logs without an offset are assumed to be UTC, like the incident timestamps
+                return LocalDateTime.parse(iso).toInstant(ZoneOffset.UTC);
+            }
+            if (!zone.equals("Z") && zone.indexOf(':') < 0) {
+                zone = zone.substring(0, 3) + ":" + zone.substring(3);
+            }
+            return OffsetDateTime.parse(iso + zone).toInstant();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static Level toLevel(String token) {
+        return switch (token.toUpperCase()) {
+            case "FATAL", "CRITICAL" -> Level.FATAL;
+            case "SEVERE", "ERROR" -> Level.ERROR;
+            case "WARN", "WARNING" -> Level.WARN;
+            case "INFO" -> Level.INFO;
+            case "DEBUG" -> Level.DEBUG;
+            case "TRACE" -> Level.TRACE;
+            default -> Level.UNKNOWN;
+        };
+    }
+}
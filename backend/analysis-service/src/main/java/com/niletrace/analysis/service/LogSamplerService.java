@@ -0,0 +1,145 @@
+package com.niletrace.analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Priority-preserving sampler for logs beyond the capacity of chunked analysis.
+ * Keeps every ERROR/WARN/FATAL line and stack-trace block, then lines nearest to
+ * the incident start, and reservoir-samples the remaining lines down to a budget.
+ * Single-prompt logs are not sampled here; {@link PromptBuilder} selects their lines by token budget.
+ */
+@Service
+@Slf4j
+public class LogSamplerService {
+
+    // Approximate size of an omission marker; sampled lines are mostly separated by one
+    private static final int OMISSION_MARKER_CHARS = 40;
+
+    @Value("${analysis.sampling.window-minutes:5}")
+    private int windowMinutes;
+
+    /**
+     * Samples log content down to a character budget if it exceeds it.
+     *
+     * @param content           The (sanitized) log content
+     * @param incidentStartTime Incident start used to keep nearby lines, may be null
+     * @param seed              Seed for the reservoir so repeated runs pick the same lines
+     * @param budgetChars       Largest log to leave untouched, and the target size when sampling
+     * @return The sampled log; unchanged content if within the budget
+     */
+    public SampledLog sample(String content, Instant incidentStartTime, long seed, int budgetChars) {
+        if (content == null || content.length() <= budgetChars) {
+            int lineCount = LogLines.split(content).size();
+            return new SampledLog(content == null ? "" : content, lineCount, lineCount, 0, false);
+        }
+
+        List<LogLines.Line> lines = LogLines.parse(content);
+        boolean[] keep = new boolean[lines.size()];
+        long used = 0;
+        int priorityLines = 0;
+
+        // 1. Every error/warning line and every stack-trace block
+        for (LogLines.Line line : lines) {
+            if (line.isPriority()) {
+                keep[line.index()] = true;
+                used += line.text().length() + 1;
+                priorityLines++;
+            }
+        }
+
+        // 2. Lines around the incident start, nearest first, while within budget
+        if (incidentStartTime != null) {
+            Duration window = Duration.ofMinutes(windowMinutes);
+            List<LogLines.Line> nearStart = lines.stream()
+                    .filter(line -> !keep[line.index()] && line.timestamp() != null)
+                    .filter(line -> Duration.between(line.timestamp(), incidentStartTime).abs().compareTo(window) <= 0)
+                    .sorted(Comparator.comparing(
+                            (LogLines.Line line) -> Duration.between(line.timestamp(), incidentStartTime).abs()))
+                    .toList();
+            for (LogLines.Line line : nearStart) {
+                if (used + line.text().length() + 1 > budgetChars) {
+                    break;
+                }
+                keep[line.index()] = true;
+                used += line.text().length() + 1;
+            }
+        }
+
+        // 3. Reservoir-sample the remaining lines into whatever budget is left
+        List<LogLines.Line> rest = new ArrayList<>();
+        long restChars = 0;
+        for (LogLines.Line line : lines) {
+            if (!keep[line.index()]) {
+                rest.add(line);
+                restChars += line.text().length() + 1;
+            }
+        }
+        long remaining = budgetChars - used;
+        if (remaining > 0 && !rest.isEmpty()) {
+            double averageLength = (double) restChars / rest.size() + OMISSION_MARKER_CHARS;
+            int reservoirSize = (int) Math.min(rest.size(), Math.max(1, remaining / averageLength));
+            for (LogLines.Line line : reservoirSample(rest, reservoirSize, new Random(seed))) {
+                keep[line.index()] = true;
+            }
+        }
+
+        SampledLog sampled = render(lines, keep, priorityLines);
+        log.info("Sampled oversized log: {} -> {} lines ({} -> {} chars, {} priority lines kept)",
+                sampled.totalLines(), sampled.keptLines(), content.length(), sampled.content().length(),
+                priorityLines);
+        return sampled;
+    }
+
+    private List<LogLines.Line> reservoirSample(List<LogLines.Line> candidates, int size, Random random) {
+        List<LogLines.Line> reservoir = new ArrayList<>(candidates.subList(0, size));
+        for (int i = size; i < candidates.size(); i++) {
+            int j = random.nextInt(i + 1);
+            if (j < size) {
+                reservoir.set(j, candidates.get(i));
+            }
+        }
+        return reservoir;
+    }
+
+    private SampledLog render(List<LogLines.Line> lines, boolean[] keep, int priorityLines) {
+        StringBuilder out = new StringBuilder();
+        int kept = 0;
+        int omitted = 0;
+        for (LogLines.Line line : lines) {
+            if (!keep[line.index()]) {
+                omitted++;
+                continue;
+            }
+            if (omitted > 0) {
+                out.append("[... ").append(omitted).append(" lines omitted by sampling ...]\n");
+                omitted = 0;
+            }
+            out.append(line.text()).append('\n');
+            kept++;
+        }
+        if (omitted > 0) {
+            out.append("[... ").append(omitted).append(" lines omitted by sampling ...]\n");
+        }
+        return new SampledLog(out.toString(), lines.size(), kept, priorityLines, true);
+    }
+
+    /**
+     * Result of sampling: the content plus line statistics for previews.
+     */
+    public record SampledLog(
+            String content,
+            int totalLines,
+            int keptLines,
+            int priorityLines,
+            boolean sampled) {
+    }
+}
@@ -0,0 +1,248 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.config.ResilienceConfig;
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.Severity;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Picks the Groq model for each call. Small incidents of low severity go to the fast model;
+ * SEV1/SEV2, unknown severities and large prompts go to the large model. Each route is a
+ * fallback chain: the chosen model first, then the other tier, then any extra fallback models.
+ * Every model has its own circuit breaker (configured under
+ * {@code resilience4j.circuitbreaker.configs.groq}) and a rolling latency window per call purpose
+ * (a full report and a chunk summary differ by an order of magnitude in output). A model whose
+ * p95 latency for a purpose is over the SLO is skipped while another model remains in the chain,
+ * except the large model when a route starts with it.
+ */
+@Component
+public class ModelRouter {
+
+    private static final int LATENCY_SAMPLES = 256;
+    private static final int MIN_SLO_SAMPLES = 5;
+
+    private final CircuitBreakerRegistry circuitBreakerRegistry;
+    private final boolean enabled;
+    private final String fastModel;
+    private final String largeModel;
+    private final List<String> fallbackModels;
+    private final Set<Severity> fastSeverities;
+    private final int largePromptTokens;
+    private final Duration latencySlo;
+    private final Duration latencyWindow;
+
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<LatencyKey, Deque<Sample>> latencies = new ConcurrentHashMap<>();
+
+    public ModelRouter(CircuitBreakerRegistry circuitBreakerRegistry,
+                       @Value("${groq.routing.enabled:true}") boolean enabled,
+                       @Value("${groq.routing.fast-model:llama-3.1-8b-instant}") String fastModel,
+                       @Value("${groq.routing.large-model:llama-3.3-70b-versatile}") String largeModel,
+                       @Value("${groq.routing.fallback-models:}") String fallbackModels,
+                       @Value("${groq.routing.fast-severities:SEV3,SEV4,SEV5}") String fastSeverities,
+                       @Value("${groq.routing.large-prompt-tokens:4000}") int largePromptTokens,
+                       @Value("${groq.routing.latency-slo-seconds:30}") int latencySloSeconds,
+                       @Value("${groq.routing.latency-window-seconds:300}") int latencyWindowSeconds) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.enabled = enabled;
+        this.fastModel = fastModel;
+        this.largeModel = largeModel;
+        this.fallbackModels = splitList(fallbackModels);
+        this.fastSeverities = splitList(fastSeverities).stream()
+                .map(Severity::valueOf)
+                .collect(Collectors.toUnmodifiableSet());
+        this.largePromptTokens = largePromptTokens;
+        this.latencySlo = Duration.ofSeconds(latencySloSeconds);
+        this.latencyWindow = Duration.ofSeconds(latencyWindowSeconds);
+    }
+
+    /**
+     * Ordered models to try for a report, with the reason the first one was chosen.
+     *
+     * @param snapshot     The incident being analyzed
+     * @param promptTokens Estimated size of the prompt, or of the whole log in chunked mode
+     */
+    public Route route(IncidentSnapshot snapshot, int promptTokens) {
+        if (!enabled) {
+            return chain(largeModel, "routing disabled");
+        }
+        String severity = snapshot.getSeverity();
+        if (promptTokens > largePromptTokens) {
+            return chain(largeModel, "~" + promptTokens + " prompt tokens > " + largePromptTokens);
+        }
+        Severity parsed = parseSeverity(severity);
+        if (parsed == null || !fastSeverities.contains(parsed)) {
+            return chain(largeModel, "severity " + severity);
+        }
+        return chain(fastModel, "severity " + severity + ", ~" + promptTokens + " prompt tokens");
+    }
+
+    /**
+     * Models for the reduce call of a log analyzed in chunks, which is a large incident by definition.
+     */
+    public Route routeChunked(int chunks) {
+        return chain(largeModel, enabled ? "log split into " + chunks + " chunks" : "routing disabled");
+    }
+
+    /**
+     * Models for chunk summaries in map-reduce mode: extraction work the fast model handles well.
+     */
+    public Route routeSummary() {
+        return chain(enabled ? fastModel : largeModel, enabled ? "chunk summary" : "routing disabled");
+    }
+
+    /**
+     * The route restricted to the fast model and the extra fallback models, for incidents
+     * whose owner is over the token budget.
+     */
+    public Route downgrade(Route route) {
+        List<String> models = new ArrayList<>();
+        models.add(fastModel);
+        fallbackModels.stream().filter(model -> !model.equals(largeModel) && !models.contains(model)).forEach(models::add);
+        return new Route(List.copyOf(models), route.reason() + ", downgraded: token budget exceeded");
+    }
+
+    private Route chain(String primary, String reason) {
+        Set<String> models = new LinkedHashSet<>();
+        models.add(primary);
+        models.add(primary.equals(fastModel) ? largeModel : fastModel);
+        models.addAll(fallbackModels);
+        return new Route(List.copyOf(models), reason);
+    }
+
+    /**
+     * Circuit breaker of one model, created on first use from the shared {@code groq} configuration.
+     */
+    public CircuitBreaker circuitBreaker(String model) {
+        return circuitBreakers.computeIfAbsent(model, key -> {
+            CircuitBreakerConfig config = circuitBreakerRegistry.getConfiguration(ResilienceConfig.GROQ)
+                    .orElseGet(circuitBreakerRegistry::getDefaultConfig);
+            return circuitBreakerRegistry.circuitBreaker(ResilienceConfig.GROQ + "-" + key, config);
+        });
+    }
+
+    /**
+     * Records the network time of a completed call to a model, from rate-limit admission to the
+     * answer of the attempt that succeeded.
+     *
+     * @param purpose Kind of call ({@code report}, {@code reduce}, {@code chunk}, {@code section})
+     */
+    public void recordLatency(String model, String purpose, Duration latency) {
+        Deque<Sample> samples = latencies.computeIfAbsent(new LatencyKey(model, purpose), key -> new ArrayDeque<>());
+        synchronized (samples) {
+            samples.addLast(new Sample(System.nanoTime(), latency.toNanos()));
+            if (samples.size() > LATENCY_SAMPLES) {
+                samples.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Latency percentile (0-1) of a model's calls for a purpose within the latency window, if any were recorded.
+     */
+    public Optional<Duration> latencyPercentile(String model, String purpose, double percentile) {
+        return latencyPercentile(model, purpose, percentile, 1);
+    }
+
+    /**
+     * Latency percentile (0-1) of a model's calls for a purpose within the latency window, once at
+     * least {@code minSamples} calls were recorded.
+     */
+    public Optional<Duration> latencyPercentile(String model, String purpose, double percentile, int minSamples) {
+        long[] sorted = recentLatencies(new LatencyKey(model, purpose));
+        if (sorted.length == 0 || sorted.length < minSamples) {
+            return Optional.empty();
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return Optional.of(Duration.ofNanos(sorted[Math.max(0, Math.min(sorted.length - 1, index))]));
+    }
+
+    /**
+     * Whether enough recent calls to a model for a purpose have been slow for it to be skipped.
+     * Samples age out of the window, so a skipped model is retried once it has been idle.
+     */
+    public boolean isOverSlo(String model, String purpose) {
+        return latencyPercentile(model, purpose, 0.95, MIN_SLO_SAMPLES)
+                .map(p95 -> p95.compareTo(latencySlo) > 0)
+                .orElse(false);
+    }
+
+    /**
+     * Whether a model of a route may be skipped for being over its SLO. The large model is never
+     * skipped when the route starts with it: SEV1/SEV2 and large incidents wait for it rather than
+     * get a report from the fast model because it was slow.
+     */
+    public boolean isSkippable(Route route, String model) {
+        return !(model.equals(largeModel) && route.primary().equals(largeModel));
+    }
+
+    private long[] recentLatencies(LatencyKey key) {
+        Deque<Sample> samples = latencies.get(key);
+        if (samples == null) {
+            return new long[0];
+        }
+        long cutoff = System.nanoTime() - latencyWindow.toNanos();
+        synchronized (samples) {
+            while (!samples.isEmpty() && samples.peekFirst().recordedAt() < cutoff) {
+                samples.removeFirst();
+            }
+            return samples.stream().mapToLong(Sample::nanos).toArray();
+        }
+    }
+
+    private static Severity parseSeverity(String severity) {
+        try {
+            return severity != null ? Severity.valueOf(severity.trim().toUpperCase()) : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static List<String> splitList(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.isBlank()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Models to try in order, and why the first one was picked.
+     */
+    public record Route(List<String> models, String reason) {
+        public String primary() {
+            return models.get(0);
+        }
+
+        @Override
+        public String toString() {
+            return reason + " -> " + String.join(" > ", models);
+        }
+    }
+
+    private record LatencyKey(String model, String purpose) {
+    }
+
+    private record Sample(long recordedAt, long nanos) {
+    }
+}
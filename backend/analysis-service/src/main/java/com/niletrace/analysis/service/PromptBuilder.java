@@ -0,0 +1,641 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the postmortem prompt within a token budget.
+ * The model context is split between the fixed prompt sections and the logs; the
+ * log budget is then filled by priority: errors and stack traces, lines near the
+ * incident start, and finally the remaining lines with repeats collapsed into one
+ * line with a count.
+ * Instructions and the report template come first, in the system message, and never vary;
+ * incident context and logs follow in the user message. Providers that cache prompt
+ * prefixes can then reuse the instruction tokens across every report request.
+ */
+@Component
+@Slf4j
+@RequiredArgsConstructor
+public class PromptBuilder {
+
+    static final String SYSTEM_PROMPT = """
+            You are an expert Site Reliability Engineer (SRE) and incident response specialist.
+            Your task is to analyze incident logs and generate a comprehensive postmortem report.
+
+            IMPORTANT GUIDELINES:
+            1. Be concise but thorough
+            2. Focus on actionable insights
+            3. Use technical language appropriate for engineering teams
+            4. Base your analysis ONLY on the provided log content and incident context
+            5. If information is insufficient, clearly state what additional data would be helpful
+            6. Do not make up specific timestamps or details not present in the logs
+            7. Note that some PII may have been redacted (marked as [TYPE_REDACTED]) - this is expected
+
+            OUTPUT FORMAT:
+            You MUST respond with a properly formatted Markdown document following the exact template structure provided.
+            Do not add any sections not specified in the template.
+            Do not include any preamble or explanation outside the markdown structure.
+            """;
+
+    static final String REPORT_TEMPLATE = """
+
+            Generate a postmortem report using EXACTLY this structure:
+
+            # Executive Summary
+            [High-level explanation of what happened and why it matters - 2-3 sentences]
+
+            ## Incident Timeline
+            [Chronological sequence of key events - use bullet points with timestamps if available]
+
+            ## Root Cause Analysis
+            [Primary root cause and contributing factors - be specific and technical]
+
+            ## Impact Assessment
+            [Who and what was affected, and for how long - quantify if possible]
+
+            ## Resolution Steps
+            [Actions taken to restore service - numbered list]
+
+            ## Lessons Learned
+            [Process, tooling, or architectural gaps discovered - bullet points]
+
+            ## Action Items
+            - [ ] Short-term remediation
+            - [ ] Long-term prevention
+            - [ ] Monitoring improvements
+
+            ---
+            *Generated by NileTrace Analysis Service*
+            """;
+
+    // Byte-identical prefix of every report and reduce request
+    static final String REPORT_SYSTEM_PROMPT = SYSTEM_PROMPT + REPORT_TEMPLATE;
+
+    static final String CHUNK_SYSTEM_PROMPT = """
+            You are an expert Site Reliability Engineer (SRE) assisting with incident analysis.
+            You receive one part of a larger incident log. Summarize only what this part shows
+            so the summaries of all parts can later be combined into a postmortem.
+
+            Report, as short bullet points:
+            - Errors, exceptions and failing components, with their first timestamp and how often they repeat
+            - State changes (restarts, deployments, failovers, config changes) with timestamps
+            - Anything that looks like a cause or a consequence of the incident
+            Do not speculate beyond the log lines. Keep redaction markers such as [EMAIL_REDACTED] as they are.
+            If the part contains nothing relevant, answer "No relevant events."
+            """;
+
+    /**
+     * System prompts that never change; their request JSON is serialized once at startup.
+     */
+    static final List<String> STATIC_SYSTEM_PROMPTS = List.of(REPORT_SYSTEM_PROMPT, CHUNK_SYSTEM_PROMPT);
+
+    private static final String REPORT_INSTRUCTION = "\nWrite the postmortem report for the incident above, "
+            + "using exactly the template structure from the instructions.\n";
+
+    /**
+     * Report sections in template order, each with its heading and the template's guidance for it.
+     */
+    static final List<Section> REPORT_SECTIONS = sectionsOf(REPORT_TEMPLATE);
+
+    /**
+     * Closing lines of the template, after the last section.
+     */
+    static final String REPORT_FOOTER = REPORT_TEMPLATE.substring(REPORT_TEMPLATE.lastIndexOf("\n---\n") + 1);
+
+    private static final String LOG_HEADER = "\n## LOG CONTENT (PII Redacted)\n\n";
+
+    private static final String FENCE_OPEN = "```\n";
+
+    private static final String FENCE_CLOSE = "\n```\n";
+
+    // Stands in for lines left out of a reduced log
+    private static final String GAP_MARKER = "[...]\n";
+
+    // Tokens of both fences: an opening backtick run, and newline, backtick run, newline
+    private static final int FENCE_TOKENS = 5;
+
+    private static final String DIGEST_HEADER = "\n## LOG DIGEST (PII Redacted)\n\n"
+            + "_The log was condensed before analysis. Counts, signatures, stack traces and error rates "
+            + "below are exact and cover the whole log; a small sample of raw lines follows._\n\n";
+
+    private static final String SAMPLE_HEADER = "\n## RAW LOG SAMPLE\n\n";
+
+    private static final String SUMMARIES_HEADER = "\n## LOG SUMMARIES\n\n"
+            + "_The log was too large for one request; each part below was summarized separately, "
+            + "in log order._\n\n";
+
+    private static final String REDUCED_NOTE = "_Log reduced to fit the model context: errors and stack traces first, "
+            + "then lines near the incident start, then remaining lines with repeats collapsed._\n\n";
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss z")
+            .withZone(ZoneId.of("UTC"));
+
+    private final TokenEstimator tokenEstimator;
+
+    @Value("${groq.api.context-window:131072}")
+    private int contextWindow;
+
+    @Value("${groq.api.max-tokens:4096}")
+    private int maxCompletionTokens;
+
+    @Value("${groq.prompt.max-log-tokens:6000}")
+    private int maxLogTokens;
+
+    @Value("${groq.prompt.safety-margin-tokens:256}")
+    private int safetyMarginTokens;
+
+    @Value("${groq.prompt.window-minutes:5}")
+    private int windowMinutes;
+
+    /**
+     * Builds the system and user prompt for a postmortem report.
+     *
+     * @param snapshot            The incident snapshot
+     * @param sanitizedLogContent The PII-scrubbed log content
+     * @return The prompt and its token accounting
+     */
+    public Prompt build(IncidentSnapshot snapshot, String sanitizedLogContent) {
+        String context = buildIncidentContext(snapshot);
+
+        int fixedTokens = fixedTokens(context);
+        int logBudget = logBudget(fixedTokens);
+
+        LogSelection selection = selectLogs(sanitizedLogContent, snapshot.getIncidentStartTime(), logBudget);
+
+        // The log goes into the request as its own parts, never copied into one large prompt string
+        List<String> userParts = new ArrayList<>();
+        userParts.add(context);
+        userParts.add(selection.reduced() ? LOG_HEADER + REDUCED_NOTE + FENCE_OPEN : LOG_HEADER + FENCE_OPEN);
+        userParts.addAll(selection.parts());
+        userParts.add(FENCE_CLOSE + REPORT_INSTRUCTION);
+
+        int estimatedTokens = fixedTokens + selection.tokens();
+        if (selection.reduced()) {
+            log.info("Prompt for incident {} reduced to {} of {} log lines ({} collapsed repeats), ~{} tokens",
+                    snapshot.getIncidentId(), selection.includedLines(), selection.totalLines(),
+                    selection.collapsedLines(), estimatedTokens);
+        }
+
+        return new Prompt(REPORT_SYSTEM_PROMPT, List.copyOf(userParts), estimatedTokens, selection);
+    }
+
+    /**
+     * Builds the postmortem prompt from a log digest: the digest in full, then as much of the
+     * raw sample as the log budget leaves room for.
+     *
+     * @param snapshot The incident snapshot
+     * @param digest   The digest of the sanitized log
+     */
+    public Prompt buildDigestPrompt(IncidentSnapshot snapshot, LogDigestService.Digest digest) {
+        String context = buildIncidentContext(snapshot);
+        int digestTokens = tokenEstimator.estimate(digest.content());
+        int fixedTokens = fixedTokens(context) + tokenEstimator.estimate(DIGEST_HEADER) + digestTokens
+                + tokenEstimator.estimate(SAMPLE_HEADER);
+        int sampleBudget = Math.max(0, logBudget(fixedTokens - digestTokens) - digestTokens);
+
+        LogSelection selection = selectLogs(digest.sample(), snapshot.getIncidentStartTime(), sampleBudget);
+        List<String> userParts = new ArrayList<>(List.of(context, DIGEST_HEADER, digest.content(),
+                SAMPLE_HEADER + FENCE_OPEN));
+        userParts.addAll(selection.parts());
+        userParts.add(FENCE_CLOSE + REPORT_INSTRUCTION);
+
+        int estimatedTokens = fixedTokens + selection.tokens();
+        log.info("Digest prompt for incident {}: {} log lines condensed to ~{} digest tokens and {} sample lines, "
+                        + "~{} tokens", snapshot.getIncidentId(), digest.totalLines(), digestTokens,
+                selection.includedLines(), estimatedTokens);
+        return new Prompt(REPORT_SYSTEM_PROMPT, List.copyOf(userParts), estimatedTokens, selection);
+    }
+
+    /**
+     * Prompts that each ask for one section of the report, in template order. They differ from
+     * {@code report} only in the closing instruction, so system prompt, incident context and logs
+     * stay a shared prefix of every section request.
+     *
+     * @param report A prompt from {@link #build} or {@link #buildDigestPrompt}
+     */
+    public List<Prompt> buildSectionPrompts(Prompt report) {
+        List<String> parts = report.userParts();
+        String last = parts.get(parts.size() - 1);
+        if (!last.endsWith(REPORT_INSTRUCTION)) {
+            throw new IllegalArgumentException("Not a postmortem report prompt");
+        }
+        String closing = last.substring(0, last.length() - REPORT_INSTRUCTION.length());
+        int baseTokens = report.estimatedTokens() - tokenEstimator.estimate(REPORT_INSTRUCTION);
+
+        List<Prompt> prompts = new ArrayList<>(REPORT_SECTIONS.size());
+        for (Section section : REPORT_SECTIONS) {
+            String instruction = "\nWrite only the \"" + section.title() + "\" section of the postmortem report "
+                    + "for the incident above, following the template guidance for it. "
+                    + "Start with the line \"" + section.heading() + "\" and do not write any other section.\n";
+            List<String> userParts = new ArrayList<>(parts.subList(0, parts.size() - 1));
+            userParts.add(closing + instruction);
+            prompts.add(new Prompt(report.systemPrompt(), List.copyOf(userParts),
+                    baseTokens + tokenEstimator.estimate(instruction), report.logSelection()));
+        }
+        return prompts;
+    }
+
+    /**
+     * Whether the whole log fits the log section of a single postmortem prompt.
+     */
+    public boolean fitsSingleCall(IncidentSnapshot snapshot, String sanitizedLogContent) {
+        if (sanitizedLogContent == null) {
+            return true;
+        }
+        int budget = logBudget(fixedTokens(buildIncidentContext(snapshot)));
+        // Estimates never exceed one token per character, so short logs skip the scan
+        return sanitizedLogContent.length() <= budget || tokenEstimator.estimate(sanitizedLogContent) <= budget;
+    }
+
+    /**
+     * Builds the map-step prompt that summarizes one chunk of a log too large for a single call.
+     *
+     * @param snapshot The incident snapshot
+     * @param chunk    The chunk content, as produced by {@link #chunkLogs}
+     * @param index    Zero-based chunk index
+     * @param total    Number of chunks
+     */
+    public Prompt buildChunkPrompt(IncidentSnapshot snapshot, String chunk, int index, int total) {
+        String header = "## INCIDENT\n\n"
+                + "**Title:** " + snapshot.getTitle() + "\n"
+                + "**Incident Start Time:** " + FORMATTER.format(snapshot.getIncidentStartTime()) + "\n"
+                + "\n## LOG PART " + (index + 1) + " OF " + total + " (PII Redacted)\n\n";
+        List<String> userParts = List.of(header + FENCE_OPEN, chunk, FENCE_CLOSE);
+        int estimatedTokens = tokenEstimator.estimate(CHUNK_SYSTEM_PROMPT) + tokenEstimator.estimate(header)
+                + tokenEstimator.estimate(chunk) + FENCE_TOKENS;
+        return new Prompt(CHUNK_SYSTEM_PROMPT, userParts, estimatedTokens, null);
+    }
+
+    /**
+     * Builds the reduce-step prompt: the postmortem request with chunk summaries in place of
+     * the raw log. Summaries are trimmed evenly if together they would not fit the context.
+     */
+    public Prompt buildReducePrompt(IncidentSnapshot snapshot, List<String> summaries) {
+        String context = buildIncidentContext(snapshot);
+        int fixedTokens = tokenEstimator.estimate(REPORT_SYSTEM_PROMPT)
+                + tokenEstimator.estimate(context)
+                + tokenEstimator.estimate(SUMMARIES_HEADER)
+                + tokenEstimator.estimate(REPORT_INSTRUCTION);
+        int available = Math.max(0, contextWindow - maxCompletionTokens - fixedTokens - safetyMarginTokens);
+        int perSummary = summaries.isEmpty() ? 0 : Math.max(16, available / summaries.size() - 8);
+
+        StringBuilder prompt = new StringBuilder(context);
+        prompt.append(SUMMARIES_HEADER);
+        int summaryTokens = 0;
+        for (int i = 0; i < summaries.size(); i++) {
+            String summary = truncateToTokens(summaries.get(i).strip(), perSummary);
+            String section = "### Part " + (i + 1) + " of " + summaries.size() + "\n\n" + summary + "\n\n";
+            summaryTokens += tokenEstimator.estimate(section);
+            prompt.append(section);
+        }
+        prompt.append(REPORT_INSTRUCTION);
+
+        return new Prompt(REPORT_SYSTEM_PROMPT, List.of(prompt.toString()), fixedTokens + summaryTokens, null);
+    }
+
+    /**
+     * Tokens available for one chunk in a map-step prompt, capped by {@code chunkTokens}.
+     */
+    public int chunkBudget(IncidentSnapshot snapshot, int chunkTokens, int summaryMaxTokens) {
+        int fixed = buildChunkPrompt(snapshot, "", 0, 1).estimatedTokens();
+        int available = contextWindow - summaryMaxTokens - fixed - safetyMarginTokens;
+        return Math.max(1, Math.min(chunkTokens, available));
+    }
+
+    /**
+     * Splits a log into consecutive chunks of at most {@code chunkTokens} estimated tokens.
+     * Once a chunk is nine-tenths full it is closed at the next line that does not continue a
+     * stack trace, so traces stay with their exception message where possible. A single line
+     * larger than a chunk is cut to fit.
+     */
+    List<String> chunkLogs(String content, int chunkTokens) {
+        List<String> chunks = new ArrayList<>();
+        if (content == null || content.isBlank()) {
+            return chunks;
+        }
+
+        int softLimit = chunkTokens - chunkTokens / 10;
+        StringBuilder chunk = new StringBuilder();
+        int used = 0;
+        for (LogLines.Line line : LogLines.parse(content)) {
+            String text = line.text();
+            int tokens = tokenEstimator.estimate(text) + 1;
+            if (tokens > chunkTokens) {
+                text = truncateToTokens(text, chunkTokens - 1);
+                tokens = tokenEstimator.estimate(text) + 1;
+            }
+
+            boolean continuation = LogLines.isStackTraceLine(text);
+            if (used > 0 && (used + tokens > chunkTokens || (used >= softLimit && !continuation))) {
+                chunks.add(chunk.toString());
+                chunk.setLength(0);
+                used = 0;
+            }
+            chunk.append(text).append('\n');
+            used += tokens;
+        }
+        if (used > 0) {
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+
+    private String truncateToTokens(String text, int maxTokens) {
+        if (tokenEstimator.estimate(text) <= maxTokens) {
+            return text;
+        }
+        // Estimates are at most one token per character, so shrink by the overshoot until it fits;
+        // the marker appended afterwards costs a few tokens of its own
+        int target = Math.max(0, maxTokens - 4);
+        String truncated = text;
+        while (!truncated.isEmpty() && tokenEstimator.estimate(truncated) > target) {
+            int overshoot = tokenEstimator.estimate(truncated) - target;
+            truncated = truncated.substring(0, Math.max(0, truncated.length() - Math.max(overshoot, 16)));
+        }
+        return truncated + " [...]";
+    }
+
+    private int fixedTokens(String context) {
+        return tokenEstimator.estimate(REPORT_SYSTEM_PROMPT)
+                + tokenEstimator.estimate(context)
+                + tokenEstimator.estimate(LOG_HEADER)
+                + tokenEstimator.estimate(REDUCED_NOTE)
+                + FENCE_TOKENS
+                + tokenEstimator.estimate(REPORT_INSTRUCTION);
+    }
+
+    /**
+     * Renders the incident metadata section shared by all prompts.
+     */
+    String buildIncidentContext(IncidentSnapshot snapshot) {
+        StringBuilder context = new StringBuilder();
+
+        context.append("## INCIDENT CONTEXT\n\n");
+        context.append("**Incident ID:** ").append(snapshot.getIncidentId()).append("\n");
+        context.append("**Title:** ").append(snapshot.getTitle()).append("\n");
+        context.append("**Description:** ").append(snapshot.getDescription()).append("\n");
+        context.append("**Severity:** ").append(snapshot.getSeverity()).append("\n");
+        context.append("**Incident Start Time:** ").append(FORMATTER.format(snapshot.getIncidentStartTime()))
+                .append("\n");
+        context.append("**Created At:** ").append(FORMATTER.format(snapshot.getCreatedAt())).append("\n");
+
+        // Add optional context if available
+        if (snapshot.getServiceName() != null && !snapshot.getServiceName().isBlank()) {
+            context.append("**Service:** ").append(snapshot.getServiceName()).append("\n");
+        }
+        if (snapshot.getEnvironment() != null && !snapshot.getEnvironment().isBlank()) {
+            context.append("**Environment:** ").append(snapshot.getEnvironment()).append("\n");
+        }
+        if (snapshot.getRegion() != null && !snapshot.getRegion().isBlank()) {
+            context.append("**Region:** ").append(snapshot.getRegion()).append("\n");
+        }
+
+        return context.toString();
+    }
+
+    /**
+     * Tokens left for log content once the fixed sections and the completion are reserved.
+     */
+    int logBudget(int fixedTokens) {
+        int available = contextWindow - maxCompletionTokens - fixedTokens - safetyMarginTokens;
+        return Math.max(0, Math.min(maxLogTokens, available));
+    }
+
+    /**
+     * Selects log lines by priority until the token budget is used up.
+     * Selected lines are rendered in their original order.
+     */
+    LogSelection selectLogs(String content, Instant incidentStartTime, int budgetTokens) {
+        if (content == null || content.isBlank()) {
+            return new LogSelection(List.of(), 0, 0, 0, 0, false);
+        }
+
+        int rawTokens = tokenEstimator.estimate(content);
+        List<LogLines.Line> lines = LogLines.parse(content);
+        if (rawTokens <= budgetTokens) {
+            return new LogSelection(List.of(content), rawTokens, lines.size(), lines.size(), 0, false);
+        }
+
+        Budget budget = new Budget(lines.size(), budgetTokens - budgetTokens / 20);
+        Duration window = Duration.ofMinutes(windowMinutes);
+
+        // 1. Errors, stack traces and warnings - repeats of the same event collapsed
+        List<List<LogLines.Line>> priorityGroups = groupBySignature(lines.stream()
+                .filter(line -> line.isPriority() && !line.text().isBlank())
+                .toList());
+        priorityGroups.sort(Comparator
+                .comparingInt((List<LogLines.Line> group) -> group.get(0).level() == LogLines.Level.WARN
+                        && !group.get(0).stackTrace() ? 1 : 0)
+                .thenComparingInt(group -> group.get(0).index()));
+        priorityGroups.forEach(budget::offer);
+
+        // 2. Individual lines around the incident start, nearest first. Half of what is
+        //    left stays reserved so the collapsed overview of the rest still fits.
+        if (incidentStartTime != null) {
+            int reserve = budget.remaining / 2;
+            budget.remaining -= reserve;
+            lines.stream()
+                    .filter(line -> !budget.covered[line.index()] && !line.text().isBlank() && line.timestamp() != null)
+                    .filter(line -> distance(line, incidentStartTime).compareTo(window) <= 0)
+                    .sorted(Comparator.comparing((LogLines.Line line) -> distance(line, incidentStartTime)))
+                    .forEach(line -> budget.offer(List.of(line)));
+            budget.remaining += reserve;
+        }
+
+        // 3. Everything else, one line per repeated event with its count, most frequent first
+        List<List<LogLines.Line>> restGroups = groupBySignature(lines.stream()
+                .filter(line -> !budget.covered[line.index()] && !line.text().isBlank())
+                .toList());
+        restGroups.sort(Comparator
+                .comparingInt((List<LogLines.Line> group) -> group.size()).reversed()
+                .thenComparingInt(group -> group.get(0).index()));
+        restGroups.forEach(budget::offer);
+
+        return budget.render(lines);
+    }
+
+    private List<List<LogLines.Line>> groupBySignature(List<LogLines.Line> lines) {
+        Map<String, List<LogLines.Line>> groups = new LinkedHashMap<>();
+        for (LogLines.Line line : lines) {
+            groups.computeIfAbsent(LogLines.signatureOf(line.text()), key -> new ArrayList<>()).add(line);
+        }
+        return new ArrayList<>(groups.values());
+    }
+
+    private static Duration distance(LogLines.Line line, Instant incidentStartTime) {
+        return Duration.between(line.timestamp(), incidentStartTime).abs();
+    }
+
+    /**
+     * Greedy token budget: a group is rendered once at its first line and covers all its members.
+     */
+    private final class Budget {
+        private final boolean[] covered;
+        private final String[] rendered;
+        private int remaining;
+        private int used;
+        private int collapsed;
+
+        Budget(int lineCount, int tokens) {
+            this.covered = new boolean[lineCount];
+            this.rendered = new String[lineCount];
+            this.remaining = tokens;
+        }
+
+        void offer(List<LogLines.Line> group) {
+            LogLines.Line first = group.get(0);
+            String text = group.size() > 1
+                    ? first.text() + "  [repeated " + group.size() + " times]"
+                    : first.text();
+            int tokens = tokenEstimator.estimate(text) + 1;
+            if (tokens > remaining) {
+                return;
+            }
+            remaining -= tokens;
+            used += tokens;
+            collapsed += group.size() - 1;
+            rendered[first.index()] = text;
+            for (LogLines.Line line : group) {
+                covered[line.index()] = true;
+            }
+        }
+
+        LogSelection render(List<LogLines.Line> lines) {
+            // The selected lines are kept as parts rather than joined, and written to the request one by one
+            List<String> out = new ArrayList<>();
+            int included = 0;
+            boolean gap = false;
+            for (LogLines.Line line : lines) {
+                int i = line.index();
+                if (rendered[i] != null) {
+                    if (gap) {
+                        out.add(GAP_MARKER);
+                        used += 2;
+                        gap = false;
+                    }
+                    out.add(rendered[i]);
+                    out.add("\n");
+                }
+                if (covered[i]) {
+                    included++;
+                } else if (!line.text().isBlank()) {
+                    gap = true;
+                }
+            }
+            if (gap) {
+                out.add(GAP_MARKER);
+                used += 2;
+            }
+            return new LogSelection(List.copyOf(out), used, lines.size(), included, collapsed, true);
+        }
+    }
+
+    /**
+     * Log lines chosen for the prompt and how much of the original log they cover. The log is
+     * kept as consecutive parts (the original log, or the selected lines and markers).
+     */
+    record LogSelection(
+            List<String> parts,
+            int tokens,
+            int totalLines,
+            int includedLines,
+            int collapsedLines,
+            boolean reduced) {
+
+        /**
+         * The selected log as a single string, for previews. Prompts take {@link #parts()} instead.
+         */
+        public String content() {
+            return String.join("", parts);
+        }
+    }
+
+    private static List<Section> sectionsOf(String template) {
+        List<Section> sections = new ArrayList<>();
+        String heading = null;
+        StringBuilder guidance = new StringBuilder();
+        for (String line : template.split("\n")) {
+            if (line.startsWith("---")) {
+                break;
+            }
+            if (line.startsWith("#")) {
+                if (heading != null) {
+                    sections.add(new Section(heading, guidance.toString().strip()));
+                }
+                heading = line.strip();
+                guidance.setLength(0);
+            } else if (heading != null) {
+                guidance.append(line).append('\n');
+            }
+        }
+        if (heading != null) {
+            sections.add(new Section(heading, guidance.toString().strip()));
+        }
+        return List.copyOf(sections);
+    }
+
+    /**
+     * One section of the report template.
+     *
+     * @param heading  Markdown heading line, e.g. {@code ## Root Cause Analysis}
+     * @param guidance Template text under the heading
+     */
+    public record Section(String heading, String guidance) {
+
+        public String title() {
+            return heading.replaceFirst("^#+\\s*", "");
+        }
+
+        /**
+         * The section as it appears in the report: the canonical heading and the generated text,
+         * without a heading the model repeated and without anything from a following section or the footer.
+         */
+        public String render(String generated) {
+            List<String> lines = new ArrayList<>(List.of(generated.strip().split("\n", -1)));
+            if (!lines.isEmpty() && lines.get(0).startsWith("#")
+                    && lines.get(0).replaceFirst("^#+\\s*", "").strip().equalsIgnoreCase(title())) {
+                lines.remove(0);
+            }
+            StringBuilder body = new StringBuilder();
+            for (String line : lines) {
+                if (line.startsWith("# ") || line.startsWith("## ") || line.startsWith("---")) {
+                    break;
+                }
+                body.append(line).append('\n');
+            }
+            return heading + "\n" + body.toString().strip() + "\n\n";
+        }
+    }
+
+    /**
+     * A fully built prompt with its estimated size. The user message is kept as consecutive
+     * parts, so the log content is written to the request as the string it already is.
+     */
+    public record Prompt(
+            String systemPrompt,
+            List<String> userParts,
+            int estimatedTokens,
+            LogSelection logSelection) {
+
+        /**
+         * The user message as a single string. Requests stream {@link #userParts()} instead.
+         */
+        public String userPrompt() {
+            return String.join("", userParts);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.niletrace.analysis.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Disk storage for the reports of finished jobs once retained jobs exceed their memory budget.
+ * Reports are written gzip-compressed to {@code <directory>/<jobId>.md.gz} and read back on
+ * demand. Spilling runs on one background thread, so the threads finishing jobs never wait on
+ * the disk. A budget of 0 keeps every report in memory.
+ */
+@Component
+@Slf4j
+public class ReportSpillStore {
+
+    private static final String SUFFIX = ".md.gz";
+
+    private final long budgetBytes;
+    private final Path directory;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private ExecutorService spiller;
+
+    public ReportSpillStore(@Value("${analysis.job.memory-budget-mb:256}") long budgetMb,
+                            @Value("${analysis.job.spill-directory:./data/reports}") String directory) {
+        this.budgetBytes = budgetMb * 1024 * 1024;
+        this.directory = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Estimated heap retained jobs may use before reports are spilled, 0 for no limit.
+     */
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+
+    public boolean isOverBudget(long retainedBytes) {
+        return budgetBytes > 0 && retainedBytes > budgetBytes;
+    }
+
+    /**
+     * Runs {@code spill} on the spill thread unless a run is already pending.
+     */
+    public void schedule(Runnable spill) {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor().execute(() -> {
+            scheduled.set(false);
+            try {
+                spill.run();
+            } catch (RuntimeException e) {
+                log.error("Spilling reports to {} failed: {}", directory, e.getMessage(), e);
+            }
+        });
+    }
+
+    private synchronized ExecutorService executor() {
+        if (spiller == null) {
+            spiller = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("report-spill").daemon().factory());
+        }
+        return spiller;
+    }
+
+    public void write(UUID jobId, String report) {
+        Path file = fileOf(jobId);
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(directory);
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 8192)) {
+                out.write(report.getBytes(StandardCharsets.UTF_8));
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill report of job " + jobId, e);
+        }
+    }
+
+    public String read(UUID jobId) {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(fileOf(jobId)), 8192)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read spilled report of job " + jobId, e);
+        }
+    }
+
+    public void delete(UUID jobId) {
+        try {
+            Files.deleteIfExists(fileOf(jobId));
+        } catch (IOException e) {
+            log.warn("Failed to delete spilled report of job {}: {}", jobId, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes spilled reports of jobs that no longer exist, e.g. after a restart without the job journal.
+     */
+    public void retainOnly(Set<UUID> jobIds) {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> {
+                String name = file.getFileName().toString();
+                if (!name.endsWith(SUFFIX)) {
+                    return name.endsWith(".tmp");
+                }
+                try {
+                    return !jobIds.contains(UUID.fromString(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            }).forEach(file -> {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Failed to delete orphaned report {}: {}", file, e.getMessage());
+                }
+            });
+        } catch (NoSuchFileException e) {
+            // Nothing spilled yet
+        } catch (IOException e) {
+            log.warn("Failed to clean up spilled reports in {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private Path fileOf(UUID jobId) {
+        return directory.resolve(jobId + SUFFIX);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (spiller != null) {
+            spiller.shutdown();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.niletrace.analysis.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Relays report tokens from the Groq stream to SSE subscribers.
+ * Each running job has a replaying sink, so a client that connects mid-generation
+ * first receives the tokens produced so far. Sinks are dropped once the job finishes;
+ * later clients read the stored result from {@link JobManagerService} instead.
+ */
+@Service
+@Slf4j
+public class ReportStreamService {
+
+    private static final Sinks.EmitFailureHandler RETRY_ON_CONTENTION =
+            Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(100));
+
+    private final Map<UUID, Sinks.Many<String>> streams = new ConcurrentHashMap<>();
+
+    /**
+     * Opens the token stream for a job. Called when the job is created so that
+     * subscribers arriving before generation starts do not miss anything.
+     */
+    public void open(UUID jobId) {
+        streams.computeIfAbsent(jobId, id -> Sinks.many().replay().all());
+    }
+
+    /**
+     * Attaches a coalesced job to the stream of the job it joined, so its subscribers
+     * receive the same tokens (including those already produced).
+     */
+    public void follow(UUID jobId, UUID leaderJobId) {
+        Sinks.Many<String> leader = streams.get(leaderJobId);
+        if (leader != null) {
+            streams.put(jobId, leader);
+        } else {
+            open(jobId);
+        }
+    }
+
+    /**
+     * Appends a report fragment to the job's stream.
+     */
+    public void emit(UUID jobId, String token) {
+        Sinks.Many<String> sink = streams.get(jobId);
+        if (sink != null && token != null && !token.isEmpty()) {
+            sink.emitNext(token, RETRY_ON_CONTENTION);
+        }
+    }
+
+    /**
+     * Completes the job's stream. Call after the report is stored.
+     */
+    public void complete(UUID jobId) {
+        Sinks.Many<String> sink = streams.remove(jobId);
+        if (sink != null) {
+            // A shared (coalesced) sink may already be complete; that is not an error
+            sink.tryEmitComplete();
+        }
+    }
+
+    /**
+     * Terminates the job's stream with an error. Call after the job is marked failed.
+     */
+    public void fail(UUID jobId, String errorMessage) {
+        Sinks.Many<String> sink = streams.remove(jobId);
+        if (sink != null) {
+            sink.tryEmitError(new IllegalStateException(errorMessage));
+        }
+    }
+
+    /**
+     * Tokens of a job still in progress, replayed from the start; empty once the job has finished.
+     */
+    public Optional<Flux<String>> tokens(UUID jobId) {
+        Sinks.Many<String> sink = streams.get(jobId);
+        return sink != null ? Optional.of(sink.asFlux()) : Optional.empty();
+    }
+}
@@ -0,0 +1,56 @@
+package com.niletrace.analysis.service;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Local token count estimator for BPE-style LLM tokenizers (Llama 3 / tiktoken family).
+ * Mirrors their pre-tokenization: words, digit groups of up to three, punctuation
+ * runs and whitespace. Long words are charged one token per four characters.
+ * Errs slightly high so budgets computed from it stay inside the real context window.
+ */
+@Component
+public class TokenEstimator {
+
+    private static final int CHARS_PER_WORD_TOKEN = 4;
+
+    public int estimate(CharSequence text) {
+        if (text == null) {
+            return 0;
+        }
+
+        int tokens = 0;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            int start = i;
+
+            if (Character.isLetter(c)) {
+                while (i < length && Character.isLetter(text.charAt(i))) {
+                    i++;
+                }
+                tokens += (i - start + CHARS_PER_WORD_TOKEN - 1) / CHARS_PER_WORD_TOKEN;
+            } else if (Character.isDigit(c)) {
+                while (i < length && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+                tokens += (i - start + 2) / 3;
+            } else if (Character.isWhitespace(c)) {
+                while (i < length && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+                // A single space is merged into the following word; newlines and indentation are not
+                if (i - start > 1 || c != ' ') {
+                    tokens++;
+                }
+            } else {
+                while (i < length && !Character.isLetterOrDigit(text.charAt(i))
+                        && !Character.isWhitespace(text.charAt(i)) && i - start < 3) {
+                    i++;
+                }
+                tokens++;
+            }
+        }
+        return tokens;
+    }
+}
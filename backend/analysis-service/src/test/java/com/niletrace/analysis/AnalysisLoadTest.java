@@ -0,0 +1,198 @@
+package com.niletrace.analysis;
+
+import com.niletrace.analysis.dto.AnalysisJobResponse;
+import com.niletrace.analysis.dto.AnalysisResultResponse;
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.JobStatus;
+import com.niletrace.analysis.service.JobManagerService;
+import com.niletrace.analysis.support.GroqStubServer;
+import com.niletrace.analysis.support.LatencyDistribution;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Load driver: pushes concurrent incident submissions through the REST API against a local
+ * Groq stand-in and reports throughput, latency percentiles and job queue depth. Runs offline.
+ * <p>
+ * Run with {@code mvn test -Dtest=AnalysisLoadTest -Danalysis.loadtest=true}. Tunables are
+ * {@code analysis.loadtest.*} system properties (see {@link #setting}); any application property,
+ * e.g. {@code -Dgroq.http.max-connections=256}, can be overridden
+ * the same way.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "analysis.loadtest", matches = "true")
+class AnalysisLoadTest {
+
+    private static GroqStubServer stub;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JobManagerService jobManagerService;
+
+    @DynamicPropertySource
+    static void groqStub(DynamicPropertyRegistry registry) {
+        // Started here rather than statically so a skipped test never binds a port
+        stub = GroqStubServer.builder()
+                .latency(LatencyDistribution.logNormal(
+                        Duration.ofMillis(setting("latency-median-ms", 800)),
+                        Duration.ofMillis(setting("latency-p99-ms", 4000))))
+                .tokensPerSecond(setting("tokens-per-second", 250))
+                .completion("# Executive Summary\n" + "The checkout service failed because the payment pool ".repeat(40))
+                .rateLimitRatio(setting("rate-limit-percent", 2) / 100.0)
+                .serverErrorRatio(setting("server-error-percent", 1) / 100.0)
+                .start();
+        registry.add("groq.api.base-url", stub::baseUrl);
+        registry.add("groq.api.key", () -> "stub");
+        registry.add("groq.api.retry.delay-seconds", () -> 1);
+        registry.add("groq.rate-limit.enabled", () -> false);
+        registry.add("groq.cache.enabled", () -> false);
+    }
+
+    @AfterAll
+    static void stopStub() {
+        if (stub != null) {
+            stub.close();
+        }
+    }
+
+    private static int setting(String name, int defaultValue) {
+        return Integer.getInteger("analysis.loadtest." + name, defaultValue);
+    }
+
+    @Test
+    @DisplayName("Load test the analysis pipeline against a local Groq stub")
+    void loadTest() {
+        int jobs = setting("jobs", 200);
+        int concurrency = setting("concurrency", 100);
+        int logLines = setting("log-lines", 300);
+
+        WebClient client = WebClient.builder().baseUrl("http://localhost:" + port + "/api/analysis").build();
+        Set<UUID> submitted = ConcurrentHashMap.newKeySet();
+        QueueSampler sampler = new QueueSampler(submitted);
+        Disposable sampling = Flux.interval(Duration.ofMillis(100)).subscribe(tick -> sampler.sample());
+
+        long start = System.nanoTime();
+        List<Result> results = Flux.range(0, jobs)
+                .flatMap(i -> run(client, createSnapshot(i, logLines), submitted), concurrency)
+                .collectList()
+                .block(Duration.ofMinutes(30));
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        sampling.dispose();
+
+        List<Long> submitMillis = results.stream().map(Result::submitMillis).sorted().toList();
+        List<Long> totalMillis = results.stream().map(Result::totalMillis).sorted().toList();
+        long completed = results.stream().filter(r -> r.status() == JobStatus.COMPLETED).count();
+
+        System.out.printf("jobs=%d concurrency=%d elapsed=%.1fs throughput=%.1f jobs/s%n",
+                jobs, concurrency, elapsedSeconds, jobs / elapsedSeconds);
+        System.out.printf("  completed=%d failed=%d%n", completed, jobs - completed);
+        System.out.printf("  submit   p50=%dms p99=%dms%n", percentile(submitMillis, 50), percentile(submitMillis, 99));
+        System.out.printf("  complete p50=%dms p99=%dms max=%dms%n", percentile(totalMillis, 50),
+                percentile(totalMillis, 99), totalMillis.get(totalMillis.size() - 1));
+        System.out.printf("  queue    max-queued=%d max-processing=%d%n", sampler.maxQueued.get(), sampler.maxProcessing.get());
+        System.out.printf("  groq     requests=%d max-in-flight=%d 429=%d 5xx=%d%n",
+                stub.requests(), stub.maxInFlight(), stub.rateLimited(), stub.serverErrors());
+
+        assertThat(results).hasSize(jobs);
+    }
+
+    private Mono<Result> run(WebClient client, IncidentSnapshot snapshot, Set<UUID> submitted) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return client.post().uri("/jobs")
+                    .bodyValue(snapshot)
+                    .retrieve()
+                    .bodyToMono(AnalysisJobResponse.class)
+                    .flatMap(accepted -> {
+                        long submitMillis = (System.nanoTime() - start) / 1_000_000;
+                        submitted.add(accepted.getJobId());
+                        return client.get().uri("/jobs/{jobId}", accepted.getJobId())
+                                .retrieve()
+                                .bodyToMono(AnalysisResultResponse.class)
+                                .filter(result -> result.getStatus() == JobStatus.COMPLETED
+                                        || result.getStatus() == JobStatus.FAILED)
+                                .repeatWhenEmpty(repeat -> repeat.delayElements(Duration.ofMillis(50)))
+                                .map(result -> new Result(result.getStatus(), submitMillis,
+                                        (System.nanoTime() - start) / 1_000_000));
+                    });
+        });
+    }
+
+    private static IncidentSnapshot createSnapshot(int index, int logLines) {
+        Instant base = Instant.parse("2024-01-15T10:00:00Z");
+        StringBuilder log = new StringBuilder();
+        for (int i = 0; i < logLines; i++) {
+            String level = i % 50 == 49 ? "ERROR Payment pool exhausted for order " : "INFO Processed order ";
+            log.append(base.plusSeconds(i)).append(' ').append(level).append(index * 10_000 + i)
+                    .append(" user=user").append(i % 97).append("@example.com\n");
+        }
+        return IncidentSnapshot.builder()
+                .incidentId(UUID.randomUUID())
+                .title("Checkout failures " + index)
+                .description("Payments timing out")
+                .severity("SEV1")
+                .logContent(log.toString())
+                .incidentStartTime(base.plusSeconds(logLines / 2))
+                .createdAt(base.plusSeconds(logLines))
+                .serviceName("checkout")
+                .build();
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+    }
+
+    private record Result(JobStatus status, long submitMillis, long totalMillis) {
+    }
+
+    /**
+     * Tracks the peak number of submitted jobs waiting and running.
+     */
+    private final class QueueSampler {
+        private final Set<UUID> submitted;
+        private final AtomicInteger maxQueued = new AtomicInteger();
+        private final AtomicInteger maxProcessing = new AtomicInteger();
+
+        QueueSampler(Set<UUID> submitted) {
+            this.submitted = submitted;
+        }
+
+        void sample() {
+            Map<JobStatus, Integer> counts = new EnumMap<>(JobStatus.class);
+            for (UUID jobId : submitted) {
+                jobManagerService.getJobResult(jobId)
+                        .ifPresent(result -> counts.merge(result.getStatus(), 1, Integer::sum));
+            }
+            maxQueued.accumulateAndGet(counts.getOrDefault(JobStatus.QUEUED, 0), Math::max);
+            maxProcessing.accumulateAndGet(counts.getOrDefault(JobStatus.PROCESSING, 0), Math::max);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.niletrace.analysis.config;
+
+import com.niletrace.analysis.support.GroqStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroqConfigTest {
+
+    private final List<ConnectionProvider> providers = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        providers.forEach(ConnectionProvider::dispose);
+    }
+
+    private WebClient webClient(String baseUrl, int maxConnections, boolean compressRequests) {
+        GroqConfig config = new GroqConfig();
+        ReflectionTestUtils.setField(config, "apiKey", "test-key");
+        ReflectionTestUtils.setField(config, "baseUrl", baseUrl);
+        ReflectionTestUtils.setField(config, "maxConnections", maxConnections);
+        ReflectionTestUtils.setField(config, "pendingAcquireMaxCount", 10_000);
+        ReflectionTestUtils.setField(config, "pendingAcquireTimeoutSeconds", 60);
+        ReflectionTestUtils.setField(config, "maxIdleSeconds", 30);
+        ReflectionTestUtils.setField(config, "maxLifeMinutes", 10);
+        ReflectionTestUtils.setField(config, "evictIntervalSeconds", 30);
+        ReflectionTestUtils.setField(config, "connectTimeoutMillis", 5000);
+        ReflectionTestUtils.setField(config, "responseTimeoutSeconds", 30);
+        ReflectionTestUtils.setField(config, "http2", true);
+        ReflectionTestUtils.setField(config, "compressRequests", compressRequests);
+        ReflectionTestUtils.setField(config, "metrics", false);
+
+        ConnectionProvider provider = config.groqConnectionProvider();
+        providers.add(provider);
+        return config.groqWebClient(provider);
+    }
+
+    private static Mono<String> post(WebClient webClient, String body) {
+        return webClient.post()
+                .uri("/chat/completions")
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class);
+    }
+
+    @Test
+    @DisplayName("Should gzip large request bodies when compression is enabled")
+    void shouldCompressLargeRequests() {
+        try (GroqStubServer stub = GroqStubServer.start(Duration.ZERO)) {
+            WebClient webClient = webClient(stub.baseUrl(), 4, true);
+            String prompt = "2024-01-15T10:05:00Z ERROR Payment gateway returned 504\n".repeat(200);
+
+            assertThat(post(webClient, prompt).block(Duration.ofSeconds(10))).contains("Executive Summary");
+            assertThat(stub.lastContentEncoding()).isEqualTo("gzip");
+            assertThat(stub.lastBody()).isEqualTo(prompt);
+
+            post(webClient, "short").block(Duration.ofSeconds(10));
+            assertThat(stub.lastContentEncoding()).isNull();
+            assertThat(stub.lastBody()).isEqualTo("short");
+        }
+    }
+
+    @Test
+    @DisplayName("Should gzip a body written in many buffers as it streams")
+    void shouldCompressStreamedRequests() {
+        try (GroqStubServer stub = GroqStubServer.start(Duration.ZERO)) {
+            WebClient webClient = webClient(stub.baseUrl(), 4, true);
+            List<String> lines = Flux.range(0, 2000)
+                    .map(i -> "2024-01-15T10:05:00Z ERROR Payment " + i + " declined by gateway\n")
+                    .collectList()
+                    .block();
+
+            String response = webClient.post()
+                    .uri("/chat/completions")
+                    .body(Flux.fromIterable(lines), String.class)
+                    .retrieve()
+                    .bodyToMono(String.class)
+                    .block(Duration.ofSeconds(10));
+
+            assertThat(response).contains("Executive Summary");
+            assertThat(stub.lastContentEncoding()).isEqualTo("gzip");
+            assertThat(stub.lastBody()).isEqualTo(String.join("", lines));
+        }
+    }
+
+    @Test
+    @DisplayName("Should not hold more connections than the pool allows")
+    void shouldBoundConnections() {
+        try (GroqStubServer stub = GroqStubServer.start(Duration.ofMillis(50))) {
+            WebClient webClient = webClient(stub.baseUrl(), 4, false);
+
+            Flux.range(0, 20)
+                    .flatMap(i -> post(webClient, "request-" + i), 20)
+                    .blockLast(Duration.ofSeconds(10));
+
+            assertThat(stub.requests()).isEqualTo(20);
+            assertThat(stub.maxInFlight()).isLessThanOrEqualTo(4);
+        }
+    }
+
+    /**
+     * Latency at high concurrency with a pool sized like Reactor Netty's default versus the
+     * configured pool. Run with {@code mvn test -Dtest=GroqConfigTest -Dgroq.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "groq.benchmark", matches = "true")
+    @DisplayName("Benchmark pool sizing against a local stub")
+    void benchmarkPoolSizing() {
+        int concurrency = Integer.getInteger("groq.benchmark.concurrency", 256);
+        int requests = Integer.getInteger("groq.benchmark.requests", 2048);
+
+        Duration latency = Duration.ofMillis(50);
+        try (GroqStubServer stub = GroqStubServer.start(latency)) {
+            int defaultPool = Math.max(16, Runtime.getRuntime().availableProcessors() * 2);
+            Stats small = run(webClient(stub.baseUrl(), defaultPool, false), concurrency, requests);
+            Stats tuned = run(webClient(stub.baseUrl(), concurrency, false), concurrency, requests);
+
+            System.out.printf("concurrency=%d requests=%d stub-latency=%dms%n",
+                    concurrency, requests, latency.toMillis());
+            System.out.printf("  pool=%-4d %s%n", defaultPool, small);
+            System.out.printf("  pool=%-4d %s%n", concurrency, tuned);
+
+            assertThat(tuned.p50Millis()).isLessThanOrEqualTo(small.p50Millis());
+        }
+    }
+
+    private static Stats run(WebClient webClient, int concurrency, int requests) {
+        // Warm up connections so both runs measure steady state
+        Flux.range(0, concurrency).flatMap(i -> post(webClient, "warmup"), concurrency)
+                .blockLast(Duration.ofMinutes(1));
+
+        long start = System.nanoTime();
+        List<Long> latencies = Flux.range(0, requests)
+                .flatMap(i -> Mono.fromSupplier(System::nanoTime)
+                        .flatMap(sent -> post(webClient, "request-" + i)
+                                .map(body -> System.nanoTime() - sent)), concurrency)
+                .collectSortedList()
+                .block(Duration.ofMinutes(5));
+        long elapsed = System.nanoTime() - start;
+        return new Stats(percentile(latencies, 50), percentile(latencies, 95), percentile(latencies, 99),
+                requests * 1_000_000_000.0 / elapsed);
+    }
+
+    private static long percentile(List<Long> sorted, int percentile) {
+        int index = Math.min(sorted.size() - 1, (int) Math.ceil(percentile / 100.0 * sorted.size()) - 1);
+        return Duration.ofNanos(sorted.get(Math.max(0, index))).toMillis();
+    }
+
+    private record Stats(long p50Millis, long p95Millis, long p99Millis, double requestsPerSecond) {
+        @Override
+        public String toString() {
+            return String.format("p50=%dms p95=%dms p99=%dms throughput=%.0f req/s",
+                    p50Millis, p95Millis, p99Millis, requestsPerSecond);
+        }
+    }
+}
@@ -7,6 +7,7 @@ import com.niletrace.analysis.dto.JobStatus;
 import com.niletrace.analysis.dto.Severity;
 import com.niletrace.analysis.service.AnalysisService;
 import com.niletrace.analysis.service.JobManagerService;
+import com.niletrace.analysis.service.ReportStreamService;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -40,6 +41,9 @@ class AnalysisControllerTest {
         @MockBean
         private JobManagerService jobManagerService;
 
+        @MockBean
+        private ReportStreamService reportStreamService;
+
         private IncidentSnapshot createValidSnapshot() {
                 return IncidentSnapshot.builder()
                                 .incidentId(UUID.randomUUID())
@@ -0,0 +1,299 @@
+package com.niletrace.analysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.analysis.dto.AnalysisResultResponse;
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.JobStatus;
+import com.niletrace.analysis.dto.ModelCall;
+import com.niletrace.analysis.exception.LlmUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AnalysisServiceTest {
+
+    private GroqClientService groqClientService;
+    private JobManagerService jobManagerService;
+    private LogDigestService logDigestService;
+    private PromptBuilder promptBuilder;
+    private Scheduler scheduler;
+    private AnalysisService analysisService;
+
+    @BeforeEach
+    void setUp() {
+        LogSamplerService logSamplerService = new LogSamplerService();
+        ReflectionTestUtils.setField(logSamplerService, "windowMinutes", 5);
+
+        promptBuilder = new PromptBuilder(new TokenEstimator());
+        ReflectionTestUtils.setField(promptBuilder, "contextWindow", 131072);
+        ReflectionTestUtils.setField(promptBuilder, "maxCompletionTokens", 4096);
+        ReflectionTestUtils.setField(promptBuilder, "maxLogTokens", 6000);
+        ReflectionTestUtils.setField(promptBuilder, "safetyMarginTokens", 256);
+        ReflectionTestUtils.setField(promptBuilder, "windowMinutes", 5);
+
+        logDigestService = new LogDigestService();
+        ReflectionTestUtils.setField(logDigestService, "enabled", true);
+        ReflectionTestUtils.setField(logDigestService, "minChars", 15000);
+        ReflectionTestUtils.setField(logDigestService, "topSignatures", 10);
+        ReflectionTestUtils.setField(logDigestService, "maxStackTraces", 5);
+        ReflectionTestUtils.setField(logDigestService, "windowMinutes", 10);
+        ReflectionTestUtils.setField(logDigestService, "sampleChars", 3000);
+
+        groqClientService = mock(GroqClientService.class);
+        jobManagerService = new JobManagerService(new JobJournal(new ObjectMapper(), false, "data/jobs", 300, 0),
+                new ReportSpillStore(0, "data/reports"));
+        scheduler = Schedulers.newBoundedElastic(2, 100, "analysis-test");
+        analysisService = new AnalysisService(new PiiSanitizerService(), logSamplerService, logDigestService,
+                promptBuilder, groqClientService,
+                jobManagerService, new ReportStreamService(), new LocalReportGenerator(),
+                new LlmUsageService(new SimpleMeterRegistry(), "", false, 24, 0, 0, LlmUsageService.BudgetAction.DOWNGRADE),
+                scheduler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.dispose();
+    }
+
+    private IncidentSnapshot createSnapshot(UUID incidentId, String logContent) {
+        return IncidentSnapshot.builder()
+                .incidentId(incidentId)
+                .title("Checkout failures")
+                .description("Payments timing out")
+                .severity("SEV1")
+                .logContent(logContent)
+                .incidentStartTime(Instant.parse("2024-01-15T10:05:00Z"))
+                .createdAt(Instant.parse("2024-01-15T10:30:00Z"))
+                .build();
+    }
+
+    private JobStatus statusOf(UUID jobId) {
+        return jobManagerService.getJobResult(jobId).map(AnalysisResultResponse::getStatus).orElseThrow();
+    }
+
+    private JobStatus awaitStatus(UUID jobId, JobStatus expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (statusOf(jobId) != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        return statusOf(jobId);
+    }
+
+    @Test
+    @DisplayName("Should complete jobs without holding a thread while the LLM call is pending")
+    void shouldCompleteFromCallback() throws Exception {
+        Sinks.One<String> pendingCall = Sinks.one();
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any())).thenReturn(pendingCall.asMono());
+
+        UUID jobId = analysisService.submitAnalysis(createSnapshot(UUID.randomUUID(), "ERROR timeout\n"));
+
+        assertThat(awaitStatus(jobId, JobStatus.PROCESSING)).isEqualTo(JobStatus.PROCESSING);
+        pendingCall.tryEmitValue("# Executive Summary");
+
+        assertThat(awaitStatus(jobId, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        assertThat(jobManagerService.getJobResult(jobId).orElseThrow().getMarkdownReport())
+                .isEqualTo("# Executive Summary");
+    }
+
+    @Test
+    @DisplayName("Should coalesce concurrent submissions for the same incident and log")
+    void shouldCoalesceConcurrentSubmissions() throws Exception {
+        Sinks.One<String> pendingCall = Sinks.one();
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any())).thenReturn(pendingCall.asMono());
+        UUID incidentId = UUID.randomUUID();
+        String logContent = "2024-01-15 10:05:00 ERROR Payment gateway timeout\n";
+
+        UUID leader = analysisService.submitAnalysis(createSnapshot(incidentId, logContent));
+        assertThat(awaitStatus(leader, JobStatus.PROCESSING)).isEqualTo(JobStatus.PROCESSING);
+
+        UUID follower = analysisService.submitAnalysis(createSnapshot(incidentId, logContent));
+        assertThat(statusOf(follower)).isEqualTo(JobStatus.PROCESSING);
+
+        pendingCall.tryEmitValue("# Executive Summary");
+
+        assertThat(follower).isNotEqualTo(leader);
+        assertThat(awaitStatus(leader, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        assertThat(awaitStatus(follower, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        assertThat(jobManagerService.getJobResult(follower).orElseThrow().getMarkdownReport())
+                .isEqualTo("# Executive Summary");
+        verify(groqClientService, times(1)).generatePostmortemReport(any(), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should not coalesce submissions with different log content")
+    void shouldRunSeparatelyForDifferentLogs() throws Exception {
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any())).thenReturn(Mono.just("# Report"));
+        UUID incidentId = UUID.randomUUID();
+
+        UUID first = analysisService.submitAnalysis(createSnapshot(incidentId, "ERROR first\n"));
+        UUID second = analysisService.submitAnalysis(createSnapshot(incidentId, "ERROR second\n"));
+
+        assertThat(awaitStatus(first, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        assertThat(awaitStatus(second, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        verify(groqClientService, times(2)).generatePostmortemReport(any(), anyString(), any());
+    }
+
+    @Test
+    @DisplayName("Should fail the job fast when the LLM is unavailable")
+    void shouldFailWhenLlmUnavailable() throws Exception {
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any()))
+                .thenReturn(Mono.error(new LlmUnavailableException("Groq API unavailable", null)));
+
+        UUID jobId = analysisService.submitAnalysis(createSnapshot(UUID.randomUUID(), "ERROR timeout\n"));
+
+        assertThat(awaitStatus(jobId, JobStatus.FAILED)).isEqualTo(JobStatus.FAILED);
+    }
+
+    @Test
+    @DisplayName("Should complete with a local report when the fallback is enabled")
+    void shouldUseLocalFallbackReport() throws Exception {
+        ReflectionTestUtils.setField(analysisService, "localFallbackEnabled", true);
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any()))
+                .thenReturn(Mono.error(new LlmUnavailableException("Groq API unavailable", null)));
+        String logContent = "2024-01-15 10:05:00 ERROR Payment gateway timeout for order 1\n"
+                + "2024-01-15 10:05:01 ERROR Payment gateway timeout for order 2\n"
+                + "2024-01-15 10:05:02 INFO Retrying payment\n";
+
+        UUID jobId = analysisService.submitAnalysis(createSnapshot(UUID.randomUUID(), logContent));
+
+        assertThat(awaitStatus(jobId, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        assertThat(jobManagerService.getJobResult(jobId).orElseThrow().getMarkdownReport())
+                .contains("# Executive Summary")
+                .contains("## Root Cause Analysis")
+                .contains("2x `2024-01-15 10:05:00 ERROR Payment gateway timeout for order 1`")
+                .contains("LLM unavailable");
+        assertThat(jobManagerService.getJobResult(jobId).orElseThrow().getModel()).isEqualTo(AnalysisService.LOCAL_MODEL);
+    }
+
+    @Test
+    @DisplayName("Should record the routing decision and model calls on every coalesced job")
+    void shouldRecordRoutingOnJobs() throws Exception {
+        Sinks.One<String> pendingCall = Sinks.one();
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any())).thenAnswer(invocation -> {
+            GenerationListener listener = invocation.getArgument(2);
+            listener.onRoute(new ModelRouter.Route(List.of("large", "fast"), "severity SEV1"));
+            return pendingCall.asMono().doOnNext(report -> listener.onModelCall(ModelCall.builder()
+                    .model("large")
+                    .purpose("report")
+                    .outcome(ModelCall.Outcome.SUCCEEDED)
+                    .latencyMillis(1200)
+                    .build()));
+        });
+        UUID incidentId = UUID.randomUUID();
+        String logContent = "2024-01-15 10:05:00 ERROR Payment gateway timeout\n";
+
+        UUID leader = analysisService.submitAnalysis(createSnapshot(incidentId, logContent));
+        assertThat(awaitStatus(leader, JobStatus.PROCESSING)).isEqualTo(JobStatus.PROCESSING);
+        UUID follower = analysisService.submitAnalysis(createSnapshot(incidentId, logContent));
+        pendingCall.tryEmitValue("# Executive Summary");
+
+        assertThat(awaitStatus(follower, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        for (UUID jobId : List.of(leader, follower)) {
+            AnalysisResultResponse result = jobManagerService.getJobResult(jobId).orElseThrow();
+            assertThat(result.getModel()).isEqualTo("large");
+            assertThat(result.getRoutingDecision()).isEqualTo("severity SEV1 -> large > fast");
+            assertThat(result.getModelCalls()).extracting(ModelCall::getLatencyMillis).containsExactly(1200L);
+        }
+    }
+
+    @Test
+    @DisplayName("Should hand oversized logs to the prompt builder whole and fill the prompt by priority")
+    void shouldBudgetOversizedLogsInPrompt() throws Exception {
+        ReflectionTestUtils.setField(logDigestService, "minChars", 300000);
+        // Builds the prompt as GroqClientService.generatePostmortemReport does
+        AtomicReference<String> handedOver = new AtomicReference<>();
+        AtomicReference<PromptBuilder.Prompt> prompt = new AtomicReference<>();
+        when(groqClientService.generatePostmortemReport(any(), anyString(), any())).thenAnswer(invocation -> {
+            handedOver.set(invocation.getArgument(1));
+            prompt.set(promptBuilder.build(invocation.getArgument(0), invocation.getArgument(1)));
+            return Mono.just("# Report");
+        });
+        StringBuilder log = new StringBuilder();
+        Instant base = Instant.parse("2024-01-15T09:00:00Z");
+        for (int i = 0; i < 3000; i++) {
+            log.append(base.plusSeconds(i)).append(" INFO Processed order ").append(100000 + i)
+                    .append(" for tenant eu-west in ").append(i % 90).append("ms\n");
+            if (i % 60 == 0) {
+                log.append(base.plusSeconds(i)).append(" ERROR Payment gateway timeout for order ")
+                        .append(100000 + i).append(", retrying\n");
+            }
+        }
+        log.append("2024-01-15T10:05:00Z FATAL Ledger database unreachable\n");
+        String logContent = log.toString();
+
+        UUID jobId = analysisService.submitAnalysis(createSnapshot(UUID.randomUUID(), logContent));
+
+        assertThat(awaitStatus(jobId, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        assertThat(logContent.length()).isGreaterThan(150_000);
+        assertThat(handedOver.get()).isEqualTo(logContent);
+        PromptBuilder.LogSelection selection = prompt.get().logSelection();
+        assertThat(selection.reduced()).isTrue();
+        assertThat(selection.tokens()).isLessThanOrEqualTo(6000);
+        assertThat(selection.content())
+                .contains("FATAL Ledger database unreachable")
+                .contains("ERROR Payment gateway timeout for order 100000, retrying  [repeated 50 times]")
+                .doesNotContain("lines omitted by sampling");
+    }
+
+    @Test
+    @DisplayName("Should summarize logs in chunks when they do not fit one prompt but are below the digest threshold")
+    void shouldPreferMapReduceBelowDigestThreshold() throws Exception {
+        ReflectionTestUtils.setField(logDigestService, "minChars", 300000);
+        when(groqClientService.requiresChunking(any(), anyString())).thenReturn(true);
+        when(groqClientService.maxChunkedLogChars()).thenReturn(288000);
+        when(groqClientService.generateChunkedPostmortemReport(any(), anyString(), any()))
+                .thenReturn(Mono.just("# Report"));
+        String logContent = "2024-01-15 10:04:00 INFO Request handled in 12ms\n".repeat(400)
+                + "2024-01-15 10:05:00 ERROR Payment gateway timeout\n";
+
+        UUID jobId = analysisService.submitAnalysis(createSnapshot(UUID.randomUUID(), logContent));
+
+        assertThat(awaitStatus(jobId, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        verify(groqClientService).generateChunkedPostmortemReport(any(), eq(logContent),
+                any());
+        verify(groqClientService, never()).generateDigestReport(any(), any(), any());
+    }
+
+    @Test
+    @DisplayName("Should send large logs to the LLM as a digest")
+    void shouldDigestLargeLogs() throws Exception {
+        // The digest takes precedence over map-reduce from its threshold on
+        when(groqClientService.requiresChunking(any(), anyString())).thenReturn(true);
+        when(groqClientService.generateDigestReport(any(), any(), any())).thenReturn(Mono.just("# Report"));
+        String logContent = "2024-01-15 10:04:00 INFO Request handled in 12ms\n".repeat(400)
+                + "2024-01-15 10:05:00 ERROR Payment gateway timeout\n";
+
+        UUID jobId = analysisService.submitAnalysis(createSnapshot(UUID.randomUUID(), logContent));
+
+        assertThat(awaitStatus(jobId, JobStatus.COMPLETED)).isEqualTo(JobStatus.COMPLETED);
+        ArgumentCaptor<LogDigestService.Digest> digest = ArgumentCaptor.forClass(LogDigestService.Digest.class);
+        verify(groqClientService).generateDigestReport(any(), digest.capture(), any());
+        verify(groqClientService, never()).generatePostmortemReport(any(), anyString(), any());
+        verify(groqClientService, never()).generateChunkedPostmortemReport(any(), anyString(), any());
+        assertThat(digest.getValue().content()).contains("Payment gateway timeout").contains("INFO=400");
+        assertThat(digest.getValue().totalLines()).isEqualTo(401);
+    }
+}
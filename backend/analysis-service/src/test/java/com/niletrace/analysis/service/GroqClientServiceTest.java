@@ -0,0 +1,531 @@
+package com.niletrace.analysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.ModelCall;
+import com.niletrace.analysis.exception.LlmUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.assertj.core.api.Assertions.within;
+
+class GroqClientServiceTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile int failingCall = -1;
+    private volatile int slowCall = -1;
+    private volatile String streamBody;
+
+    @TempDir
+    Path cacheDir;
+
+    private PromptBuilder promptBuilder;
+    private ModelRouter modelRouter;
+    private SimpleMeterRegistry meterRegistry;
+    private LlmUsageService usageService;
+    private GroqClientService groqClientService;
+
+    @BeforeEach
+    void setUp() {
+        // Each call answers "reply-N" after a short delay (slowCall after 5s); call number failingCall gets a 400
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> {
+                    int call = calls.incrementAndGet();
+                    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    ClientResponse response = call == failingCall
+                            ? ClientResponse.create(HttpStatus.BAD_REQUEST).build()
+                            : streamBody != null
+                            ? ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_EVENT_STREAM_VALUE)
+                            .body(streamBody)
+                            .build()
+                            : ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body("{\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"reply-"
+                                    + call + "\"}}],"
+                                    + "\"usage\":{\"prompt_tokens\":120,\"completion_tokens\":8,\"total_tokens\":128}}")
+                            .build();
+                    return Mono.delay(Duration.ofMillis(call == slowCall ? 5000 : 50))
+                            .doOnNext(tick -> inFlight.decrementAndGet())
+                            .thenReturn(response);
+                })
+                .build();
+
+        promptBuilder = new PromptBuilder(new TokenEstimator());
+        ReflectionTestUtils.setField(promptBuilder, "contextWindow", 131072);
+        ReflectionTestUtils.setField(promptBuilder, "maxCompletionTokens", 4096);
+        ReflectionTestUtils.setField(promptBuilder, "maxLogTokens", 400);
+        ReflectionTestUtils.setField(promptBuilder, "safetyMarginTokens", 256);
+        ReflectionTestUtils.setField(promptBuilder, "windowMinutes", 5);
+
+        meterRegistry = new SimpleMeterRegistry();
+        usageService = new LlmUsageService(meterRegistry, "large-model:0.60:0.80", false, 24, 0, 0,
+                LlmUsageService.BudgetAction.DOWNGRADE);
+        modelRouter = new ModelRouter(CircuitBreakerRegistry.ofDefaults(), true, "fast-model", "large-model",
+                "", "SEV3,SEV4", 4000, 30, 300);
+        groqClientService = new GroqClientService(webClient, promptBuilder,
+                new GroqRequestWriter(new ObjectMapper()), new ObjectMapper(),
+                new LlmResponseCache(true, 16, cacheDir.toString(), 24), new GroqRateLimiter(false, 30, 12000, 1024),
+                modelRouter, new HedgePolicy(modelRouter, meterRegistry, false, 0.95, 5, 100, true, 100, 5), usageService, new TokenEstimator(), Bulkhead.ofDefaults("groq"));
+        ReflectionTestUtils.setField(groqClientService, "temperature", 0.3);
+        ReflectionTestUtils.setField(groqClientService, "maxTokens", 4096);
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", true);
+        ReflectionTestUtils.setField(groqClientService, "maxRetryAttempts", 0);
+        ReflectionTestUtils.setField(groqClientService, "retryDelaySeconds", 0);
+        ReflectionTestUtils.setField(groqClientService, "reportTimeoutSeconds", 30);
+        ReflectionTestUtils.setField(groqClientService, "mapReduceEnabled", true);
+        ReflectionTestUtils.setField(groqClientService, "chunkTokens", 300);
+        ReflectionTestUtils.setField(groqClientService, "maxChunks", 16);
+        ReflectionTestUtils.setField(groqClientService, "chunkConcurrency", 3);
+        ReflectionTestUtils.setField(groqClientService, "summaryMaxTokens", 256);
+        ReflectionTestUtils.setField(groqClientService, "mapReduceTimeoutSeconds", 30);
+    }
+
+    /**
+     * Hedges large-model calls pending longer than 200ms, with a budget for every call.
+     */
+    private void enableHedging() {
+        ReflectionTestUtils.setField(groqClientService, "hedgePolicy",
+                new HedgePolicy(modelRouter, meterRegistry, true, 0.95, 5, 100, true, 100, 5));
+        for (int i = 0; i < 5; i++) {
+            modelRouter.recordLatency("large-model", "report", Duration.ofMillis(200));
+        }
+    }
+
+    private IncidentSnapshot createSnapshot(String logContent) {
+        return createSnapshot(logContent, "SEV1");
+    }
+
+    private IncidentSnapshot createSnapshot(String logContent, String severity) {
+        return IncidentSnapshot.builder()
+                .incidentId(UUID.randomUUID())
+                .title("Checkout failures")
+                .description("Payments timing out")
+                .severity(severity)
+                .logContent(logContent)
+                .incidentStartTime(Instant.parse("2024-01-15T10:05:00Z"))
+                .createdAt(Instant.parse("2024-01-15T10:30:00Z"))
+                .build();
+    }
+
+    private String buildLog(int lines) {
+        StringBuilder log = new StringBuilder();
+        Instant base = Instant.parse("2024-01-15T10:00:00Z");
+        for (int i = 0; i < lines; i++) {
+            log.append(base.plusSeconds(i)).append(" INFO Processed order ").append(1000 + i)
+                    .append(" for tenant eu-west\n");
+        }
+        return log.toString();
+    }
+
+    @Test
+    @DisplayName("Should only chunk logs that do not fit a single prompt")
+    void shouldDetectOversizedLogs() {
+        String small = buildLog(5);
+        String large = buildLog(400);
+
+        assertThat(groqClientService.requiresChunking(createSnapshot(small), small)).isFalse();
+        assertThat(groqClientService.requiresChunking(createSnapshot(large), large)).isTrue();
+
+        ReflectionTestUtils.setField(groqClientService, "mapReduceEnabled", false);
+        assertThat(groqClientService.requiresChunking(createSnapshot(large), large)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should summarize chunks concurrently and reduce them into one report")
+    void shouldMapReduceLargeLogs() {
+        String logContent = buildLog(400);
+        IncidentSnapshot snapshot = createSnapshot(logContent);
+        int chunks = promptBuilder.chunkLogs(logContent, promptBuilder.chunkBudget(snapshot, 300, 256)).size();
+
+        String report = groqClientService.generateChunkedPostmortemReport(snapshot, logContent, null)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(chunks).isGreaterThan(3);
+        assertThat(calls.get()).isEqualTo(chunks + 1);
+        assertThat(report).isEqualTo("reply-" + (chunks + 1));
+        assertThat(maxInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(3);
+    }
+
+    @Test
+    @DisplayName("Should still reduce when a chunk summary fails")
+    void shouldTolerateFailedChunk() {
+        failingCall = 1;
+        String logContent = buildLog(400);
+        IncidentSnapshot snapshot = createSnapshot(logContent);
+        int chunks = promptBuilder.chunkLogs(logContent, promptBuilder.chunkBudget(snapshot, 300, 256)).size();
+
+        String report = groqClientService.generateChunkedPostmortemReport(snapshot, logContent, null)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(calls.get()).isEqualTo(chunks + 1);
+        assertThat(report).isEqualTo("reply-" + (chunks + 1));
+    }
+
+    @Test
+    @DisplayName("Should relay streamed tokens and return the assembled report")
+    void shouldStreamReportTokens() {
+        streamBody = "data: {\"choices\":[{\"index\":0,\"delta\":{\"role\":\"assistant\"}}]}\n\n"
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"# Executive\"}}]}\n\n"
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\" Summary\"}}]}\n\n"
+                + "data: {\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}\n\n"
+                + "data: [DONE]\n\n";
+        String logContent = buildLog(5);
+        List<String> tokens = new ArrayList<>();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, tokens::add)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(tokens).containsExactly("# Executive", " Summary");
+        assertThat(report).isEqualTo("# Executive Summary");
+    }
+
+    @Test
+    @DisplayName("Should serve an identical prompt from the cache")
+    void shouldServeRepeatedPromptFromCache() {
+        String logContent = buildLog(5);
+        IncidentSnapshot snapshot = createSnapshot(logContent);
+        List<String> tokens = new ArrayList<>();
+
+        String first = groqClientService.generatePostmortemReport(snapshot, logContent, null)
+                .block(Duration.ofSeconds(10));
+        String second = groqClientService.generatePostmortemReport(snapshot, logContent, tokens::add)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(second).isEqualTo(first);
+        assertThat(tokens).containsExactly(first);
+    }
+
+    @Test
+    @DisplayName("Should fail fast without calling Groq while every model's circuit is open")
+    void shouldFailFastWhenCircuitOpen() {
+        modelRouter.circuitBreaker("large-model").transitionToOpenState();
+        modelRouter.circuitBreaker("fast-model").transitionToOpenState();
+        String logContent = buildLog(5);
+
+        assertThatThrownBy(() -> groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, null)
+                .block(Duration.ofSeconds(10)))
+                .isInstanceOf(LlmUnavailableException.class);
+        assertThat(calls.get()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should route small low-severity incidents to the fast model and record the call")
+    void shouldRouteToFastModel() {
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        groqClientService.generatePostmortemReport(createSnapshot(logContent, "SEV3"), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(listener.route.primary()).isEqualTo("fast-model");
+        assertThat(listener.calls).singleElement().satisfies(call -> {
+            assertThat(call.getModel()).isEqualTo("fast-model");
+            assertThat(call.getPurpose()).isEqualTo("report");
+            assertThat(call.getOutcome()).isEqualTo(ModelCall.Outcome.SUCCEEDED);
+            assertThat(call.getLatencyMillis()).isGreaterThanOrEqualTo(50);
+        });
+    }
+
+    @Test
+    @DisplayName("Should fall back to the next model while the primary's circuit is open")
+    void shouldFallBackWhenPrimaryCircuitOpen() {
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        modelRouter.circuitBreaker("large-model").transitionToOpenState();
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(report).isEqualTo("reply-1");
+        assertThat(listener.route.models()).containsExactly("large-model", "fast-model");
+        assertThat(listener.calls).extracting(ModelCall::getModel, ModelCall::getOutcome).containsExactly(
+                tuple("large-model", ModelCall.Outcome.FAILED),
+                tuple("fast-model", ModelCall.Outcome.SUCCEEDED));
+    }
+
+    @Test
+    @DisplayName("Should skip a model whose latency is over the SLO")
+    void shouldSkipSlowModel() {
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        for (int i = 0; i < 5; i++) {
+            modelRouter.recordLatency("fast-model", "report", Duration.ofSeconds(45));
+        }
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        groqClientService.generatePostmortemReport(createSnapshot(logContent, "SEV3"), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(listener.calls).extracting(ModelCall::getModel, ModelCall::getOutcome).containsExactly(
+                tuple("fast-model", ModelCall.Outcome.SKIPPED),
+                tuple("large-model", ModelCall.Outcome.SUCCEEDED));
+    }
+
+    @Test
+    @DisplayName("Should keep the large model for severe incidents even when it is over the SLO")
+    void shouldNotSkipLargeModelForSevereIncidents() {
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        for (int i = 0; i < 5; i++) {
+            modelRouter.recordLatency("large-model", "report", Duration.ofSeconds(45));
+        }
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(listener.calls).extracting(ModelCall::getModel, ModelCall::getOutcome).containsExactly(
+                tuple("large-model", ModelCall.Outcome.SUCCEEDED));
+    }
+
+    @Test
+    @DisplayName("Should hedge a call pending past the model's p95 and cancel the slower request")
+    void shouldHedgeSlowCall() {
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        enableHedging();
+        slowCall = 1;
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(report).isEqualTo("reply-2");
+        assertThat(listener.calls).extracting(ModelCall::getModel, ModelCall::getOutcome, ModelCall::getDetail)
+                .containsExactly(
+                        tuple("fast-model", ModelCall.Outcome.SUCCEEDED, "hedge"),
+                        tuple("large-model", ModelCall.Outcome.CANCELLED, null));
+        assertThat(listener.calls.get(1).getLatencyMillis()).isBetween(200L, 5000L);
+        assertThat(meterRegistry.get("groq.hedge.requests").tag("outcome", "won").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should not hedge a call that is only waiting for rate-limit capacity")
+    void shouldNotHedgeQueuedCall() {
+        // One request a second once the budget is spent, so the call queues well past the hedge delay
+        GroqRateLimiter rateLimiter = new GroqRateLimiter(true, 60, 1_000_000, 1024);
+        for (int i = 0; i < 60; i++) {
+            rateLimiter.reserve("large-model", 0, 0);
+        }
+        ReflectionTestUtils.setField(groqClientService, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        enableHedging();
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(report).isEqualTo("reply-1");
+        assertThat(listener.calls).extracting(ModelCall::getModel, ModelCall::getOutcome, ModelCall::getDetail)
+                .containsExactly(tuple("large-model", ModelCall.Outcome.SUCCEEDED, null));
+        assertThat(listener.calls.get(0).getQueueWaitMillis()).isGreaterThan(500);
+    }
+
+    @Test
+    @DisplayName("Should relay only the tokens of the request that streamed first")
+    void shouldRelayOneStreamWhenHedged() {
+        streamBody = "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"# Executive Summary\"}}]}\n\n"
+                + "data: [DONE]\n\n";
+        enableHedging();
+        slowCall = 1;
+        String logContent = buildLog(5);
+        List<String> tokens = new CopyOnWriteArrayList<>();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, tokens::add)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(report).isEqualTo("# Executive Summary");
+        assertThat(tokens).containsExactly("# Executive Summary");
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should write sections concurrently and stitch them in template order")
+    void shouldGenerateSectionsInParallel() {
+        ReflectionTestUtils.setField(groqClientService, "sectionsEnabled", true);
+        ReflectionTestUtils.setField(groqClientService, "sectionSeverities", List.of("SEV1"));
+        ReflectionTestUtils.setField(groqClientService, "sectionConcurrency", 7);
+        ReflectionTestUtils.setField(groqClientService, "sectionMaxTokens", 600);
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(calls.get()).isEqualTo(7);
+        assertThat(maxInFlight.get()).isGreaterThan(1);
+        assertThat(report).startsWith("# Executive Summary\nreply-")
+                .endsWith(PromptBuilder.REPORT_FOOTER);
+        List<Integer> positions = PromptBuilder.REPORT_SECTIONS.stream()
+                .map(section -> report.indexOf(section.heading() + "\n"))
+                .toList();
+        assertThat(positions).doesNotContain(-1).isSorted();
+        assertThat(String.join("", listener.tokens)).isEqualTo(report);
+        assertThat(listener.calls).extracting(ModelCall::getPurpose)
+                .containsExactlyInAnyOrder("section 1/7", "section 2/7", "section 3/7", "section 4/7",
+                        "section 5/7", "section 6/7", "section 7/7");
+    }
+
+    @Test
+    @DisplayName("Should mark a failed section as unavailable and keep the others")
+    void shouldTolerateFailedSection() {
+        ReflectionTestUtils.setField(groqClientService, "sectionsEnabled", true);
+        ReflectionTestUtils.setField(groqClientService, "sectionSeverities", List.of("SEV1"));
+        ReflectionTestUtils.setField(groqClientService, "sectionConcurrency", 1);
+        ReflectionTestUtils.setField(groqClientService, "sectionMaxTokens", 600);
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        failingCall = 3;
+        String logContent = buildLog(5);
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, null)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(report).contains("## Root Cause Analysis\n" + GroqClientService.SECTION_UNAVAILABLE)
+                .contains("## Impact Assessment\nreply-");
+    }
+
+    @Test
+    @DisplayName("Should record tokens, timings and cost of each call")
+    void shouldRecordUsage() {
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        ModelCall call = listener.calls.get(0);
+        assertThat(call.getPromptTokens()).isEqualTo(120);
+        assertThat(call.getCompletionTokens()).isEqualTo(8);
+        assertThat(call.isUsageEstimated()).isFalse();
+        assertThat(call.getTimeToFirstTokenMillis()).isGreaterThanOrEqualTo(50);
+        assertThat(call.getEstimatedCostUsd()).isCloseTo((120 * 0.60 + 8 * 0.80) / 1_000_000, within(1e-12));
+        assertThat(meterRegistry.get("groq.tokens").tags("model", "large-model", "type", "prompt").summary()
+                .totalAmount()).isEqualTo(120);
+        assertThat(meterRegistry.get("groq.call.duration").tags("outcome", "succeeded").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("groq.cost").counter().count()).isEqualTo(call.getEstimatedCostUsd());
+    }
+
+    @Test
+    @DisplayName("Should not count time queued for rate-limit capacity against the timeout")
+    void shouldWaitForCapacityBeyondTimeout() {
+        // One request every two seconds, and the request budget is already spent
+        GroqRateLimiter rateLimiter = new GroqRateLimiter(true, 30, 1_000_000, 1024);
+        for (int i = 0; i < 30; i++) {
+            rateLimiter.reserve("large-model", 0, 0);
+        }
+        ReflectionTestUtils.setField(groqClientService, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(groqClientService, "reportTimeoutSeconds", 1);
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        String report = groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        assertThat(report).isEqualTo("reply-1");
+        assertThat(listener.calls.get(0).getQueueWaitMillis()).isGreaterThan(1000);
+        // The routing window sees only the network time
+        assertThat(modelRouter.latencyPercentile("large-model", "report", 0.95))
+                .hasValueSatisfying(latency -> assertThat(latency).isLessThan(Duration.ofSeconds(1)));
+    }
+
+    @Test
+    @DisplayName("Should not hold a bulkhead permit while waiting for rate-limit capacity")
+    void shouldQueueOutsideBulkhead() {
+        // One request a second once the budget is spent, and one call in flight at a time
+        GroqRateLimiter rateLimiter = new GroqRateLimiter(true, 60, 1_000_000, 1024);
+        for (int i = 0; i < 60; i++) {
+            rateLimiter.reserve("large-model", 0, 0);
+        }
+        ReflectionTestUtils.setField(groqClientService, "rateLimiter", rateLimiter);
+        ReflectionTestUtils.setField(groqClientService, "groqBulkhead", Bulkhead.of("groq", BulkheadConfig.custom()
+                .maxConcurrentCalls(1)
+                .maxWaitDuration(Duration.ZERO)
+                .build()));
+        ReflectionTestUtils.setField(groqClientService, "streamEnabled", false);
+        ReflectionTestUtils.setField(groqClientService, "responseCache", new LlmResponseCache(false, 16,
+                cacheDir.toString(), 24));
+        String logContent = buildLog(5);
+
+        List<String> reports = Flux.range(0, 3)
+                .flatMap(i -> groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, null))
+                .collectList()
+                .block(Duration.ofSeconds(15));
+
+        assertThat(reports).hasSize(3);
+        assertThat(maxInFlight.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Should estimate usage of a stream that does not report it")
+    void shouldEstimateStreamUsage() {
+        streamBody = "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"# Executive Summary\"}}]}\n\n"
+                + "data: [DONE]\n\n";
+        String logContent = buildLog(5);
+        RecordingListener listener = new RecordingListener();
+
+        groqClientService.generatePostmortemReport(createSnapshot(logContent), logContent, listener)
+                .block(Duration.ofSeconds(10));
+
+        ModelCall call = listener.calls.get(0);
+        assertThat(call.isUsageEstimated()).isTrue();
+        assertThat(call.getPromptTokens()).isPositive();
+        assertThat(call.getCompletionTokens()).isEqualTo(new TokenEstimator().estimate("# Executive Summary"));
+    }
+
+    private static final class RecordingListener implements GenerationListener {
+        private final List<ModelCall> calls = new CopyOnWriteArrayList<>();
+        private final List<String> tokens = new CopyOnWriteArrayList<>();
+        private volatile ModelRouter.Route route;
+
+        @Override
+        public void onToken(String token) {
+            tokens.add(token);
+        }
+
+        @Override
+        public void onRoute(ModelRouter.Route route) {
+            this.route = route;
+        }
+
+        @Override
+        public void onModelCall(ModelCall call) {
+            calls.add(call);
+        }
+    }
+}
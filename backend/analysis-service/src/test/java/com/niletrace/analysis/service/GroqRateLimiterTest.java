@@ -0,0 +1,140 @@
+package com.niletrace.analysis.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroqRateLimiterTest {
+
+    private static final String MODEL = "llama-3.3-70b-versatile";
+
+    @Test
+    @DisplayName("Should admit requests within budget and delay the rest in order")
+    void shouldQueueRequestsOverBudget() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 2, 1_000_000, 10);
+
+        assertThat(limiter.reserve(MODEL, 10, 10).waitTime()).isZero();
+        assertThat(limiter.reserve(MODEL, 10, 10).waitTime()).isZero();
+        assertThat(limiter.reserve(MODEL, 10, 10).waitTime()).isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30));
+        assertThat(limiter.reserve(MODEL, 10, 10).waitTime()).isBetween(Duration.ofSeconds(59), Duration.ofSeconds(60));
+    }
+
+    @Test
+    @DisplayName("Should delay requests until enough tokens have refilled")
+    void shouldDelayOnTokenBudget() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 6000, 1000);
+
+        assertThat(limiter.reserve(MODEL, 5000, 4096).waitTime()).isZero();
+        assertThat(limiter.reserve(MODEL, 2000, 4096).waitTime()).isBetween(Duration.ofSeconds(29), Duration.ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("Should reserve the expected completion rather than max_tokens")
+    void shouldReserveExpectedCompletion() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 12000, 1024);
+
+        assertThat(limiter.reserve(MODEL, 2000, 4096).reservedTokens()).isEqualTo(3024);
+        assertThat(limiter.reserve(MODEL, 2000, 512).reservedTokens()).isEqualTo(2512);
+    }
+
+    @Test
+    @DisplayName("Should size reservations from reported usage")
+    void shouldLearnCompletionSize() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 1_000_000, 1024);
+
+        for (int i = 0; i < 30; i++) {
+            limiter.reserve(MODEL, 100, 4096).settle(100, 300);
+        }
+
+        assertThat(limiter.expectedCompletionTokens(MODEL, 4096)).isBetween(300, 310);
+        assertThat(limiter.expectedCompletionTokens(MODEL, 512)).isEqualTo(512);
+    }
+
+    @Test
+    @DisplayName("Should credit back tokens a call did not use")
+    void shouldSettleUnusedTokens() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 6000, 1000);
+
+        GroqRateLimiter.Reservation reservation = limiter.reserve(MODEL, 5000, 4096);
+        reservation.settle(800, 200);
+        reservation.release();
+
+        assertThat(limiter.reserve(MODEL, 4000, 1000).waitTime()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should return the completion part of a call that ends without usage")
+    void shouldReleaseUnsettledCall() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 6000, 3000);
+
+        limiter.reserve(MODEL, 3000, 4096).release();
+
+        assertThat(limiter.reserve(MODEL, 0, 4096).waitTime()).isZero();
+        assertThat(limiter.reserve(MODEL, 0, 4096).waitTime()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Should return the whole reservation when cancelled while queued")
+    void shouldRefundCancelledWaiter() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 6000, 1000);
+        assertThat(limiter.reserve(MODEL, 5000, 1000).waitTime()).isZero();
+
+        limiter.acquire(MODEL, 5000, 1000).subscribe().dispose();
+
+        // Only the first reservation is outstanding: a minute's refill covers it again
+        assertThat(limiter.reserve(MODEL, 6000, 0).waitTime()).isBetween(Duration.ofSeconds(59), Duration.ofSeconds(60));
+    }
+
+    @Test
+    @DisplayName("Should follow remaining-tokens and retry-after headers")
+    void shouldAdaptToHeaders() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1000, 6000, 1000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-limit-tokens", "6000");
+        headers.add("x-ratelimit-remaining-tokens", "0");
+        headers.add("retry-after", "5");
+
+        limiter.onResponse(MODEL, headers);
+
+        assertThat(limiter.reserve(MODEL, 1, 1).waitTime()).isBetween(Duration.ofSeconds(4), Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Should keep budgets and pauses per model")
+    void shouldLimitEachModelSeparately() {
+        GroqRateLimiter limiter = new GroqRateLimiter(true, 1, 6000, 1000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.add("x-ratelimit-limit-tokens", "2000");
+        headers.add("retry-after", "5");
+
+        assertThat(limiter.reserve(MODEL, 10, 10).waitTime()).isZero();
+        limiter.onResponse(MODEL, headers);
+
+        // Another model has its own request slot, token limit and no pause
+        assertThat(limiter.reserve("llama-3.1-8b-instant", 4000, 1000).waitTime()).isZero();
+        assertThat(limiter.reserve(MODEL, 10, 10).waitTime()).isGreaterThan(Duration.ofSeconds(5));
+    }
+
+    @Test
+    @DisplayName("Should parse Groq reset durations")
+    void shouldParseResetDurations() {
+        assertThat(GroqRateLimiter.parseDuration("7.66s")).isEqualTo(Duration.ofMillis(7660));
+        assertThat(GroqRateLimiter.parseDuration("2m59.56s")).isEqualTo(Duration.ofMillis(179_560));
+        assertThat(GroqRateLimiter.parseDuration("1h2m3s")).isEqualTo(Duration.ofSeconds(3723));
+        assertThat(GroqRateLimiter.parseDuration("250ms")).isEqualTo(Duration.ofMillis(250));
+        assertThat(GroqRateLimiter.parseDuration(null)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should never delay when disabled")
+    void shouldBypassWhenDisabled() {
+        GroqRateLimiter limiter = new GroqRateLimiter(false, 1, 1, 1);
+
+        assertThat(limiter.acquire(MODEL, 1000, 1000).block(Duration.ofSeconds(1))).isNotNull();
+        assertThat(limiter.acquire(MODEL, 1000, 1000).block(Duration.ofSeconds(1))).isNotNull();
+    }
+}
@@ -0,0 +1,108 @@
+package com.niletrace.analysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.analysis.dto.GroqChatRequest;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GroqRequestWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final GroqRequestWriter requestWriter = new GroqRequestWriter(objectMapper);
+
+    private static PromptBuilder.Prompt prompt(String systemPrompt, String... userParts) {
+        return new PromptBuilder.Prompt(systemPrompt, List.of(userParts), 100, null);
+    }
+
+    private String write(String model, boolean stream, PromptBuilder.Prompt prompt) {
+        DataBuffer buffer = DataBufferUtils.join(requestWriter.write(DefaultDataBufferFactory.sharedInstance, model,
+                0.3, 4096, stream, prompt)).block();
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("Should write the same body as the request DTO")
+    void shouldWriteRequestBody() throws Exception {
+        String body = write("large-model", true,
+                prompt(PromptBuilder.REPORT_SYSTEM_PROMPT, "Logs with \"quotes\" and\ttabs ✓"));
+
+        GroqChatRequest request = objectMapper.readValue(body, GroqChatRequest.class);
+        assertThat(request.getModel()).isEqualTo("large-model");
+        assertThat(request.getTemperature()).isEqualTo(0.3);
+        assertThat(request.getMax_tokens()).isEqualTo(4096);
+        assertThat(request.isStream()).isTrue();
+        assertThat(request.getMessages()).extracting(GroqChatRequest.Message::getRole).containsExactly("system", "user");
+        assertThat(request.getMessages().get(0).getContent()).isEqualTo(PromptBuilder.REPORT_SYSTEM_PROMPT);
+        assertThat(request.getMessages().get(1).getContent()).isEqualTo("Logs with \"quotes\" and\ttabs ✓");
+        assertThat(body).contains("\"stream\":true");
+    }
+
+    @Test
+    @DisplayName("Should stream large multi-part user messages into one escaped string")
+    void shouldWriteUserParts() throws Exception {
+        String log = "2024-01-15T10:05:00Z ERROR \"pool\" exhausted \\ café 🔥\n".repeat(2000);
+
+        String body = write("m", false, prompt(PromptBuilder.REPORT_SYSTEM_PROMPT, "## CONTEXT\n", log, "```\n"));
+
+        GroqChatRequest request = objectMapper.readValue(body, GroqChatRequest.class);
+        assertThat(request.getMessages().get(1).getContent()).isEqualTo("## CONTEXT\n" + log + "```\n");
+    }
+
+    @Test
+    @DisplayName("Should write large bodies as bounded pooled Netty buffers that the caller releases")
+    void shouldWritePooledBuffers() {
+        NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(PooledByteBufAllocator.DEFAULT);
+
+        List<DataBuffer> buffers = requestWriter.write(bufferFactory, "m", 0.3, 512, false,
+                prompt(PromptBuilder.CHUNK_SYSTEM_PROMPT, "x".repeat(100_000), "y".repeat(100_000))).collectList().block();
+
+        assertThat(buffers).hasSizeGreaterThan(10).allSatisfy(buffer -> {
+            assertThat(buffer).isInstanceOf(NettyDataBuffer.class);
+            assertThat(buffer.readableByteCount()).isLessThanOrEqualTo(GroqRequestWriter.CHUNK_BYTES + 4096);
+        });
+        assertThat(buffers.stream().mapToInt(DataBuffer::readableByteCount).sum()).isGreaterThan(200_000);
+        assertThat(buffers).allSatisfy(buffer -> assertThat(DataBufferUtils.release(buffer)).isTrue());
+    }
+
+    @Test
+    @DisplayName("Should not split surrogate pairs between slices")
+    void shouldKeepSurrogatePairs() throws Exception {
+        // Pairs straddle every slice boundary once the odd prefix shifts them
+        String log = "a" + "🔥".repeat(10_000);
+
+        String body = write("m", false, prompt(PromptBuilder.REPORT_SYSTEM_PROMPT, log));
+
+        assertThat(objectMapper.readValue(body, GroqChatRequest.class).getMessages().get(1).getContent()).isEqualTo(log);
+    }
+
+    @Test
+    @DisplayName("Should start every request for a model with the same static message bytes")
+    void shouldKeepStablePrefix() {
+        String first = write("m", false, prompt(PromptBuilder.CHUNK_SYSTEM_PROMPT, "part one"));
+        String second = write("m", false, prompt(PromptBuilder.CHUNK_SYSTEM_PROMPT, "part two"));
+
+        String prefix = first.substring(0, first.indexOf("part one"));
+        assertThat(second).startsWith(prefix);
+        assertThat(prefix).contains("No relevant events.");
+    }
+
+    @Test
+    @DisplayName("Should serialize system prompts that are not static on the fly")
+    void shouldWriteDynamicSystemPrompt() throws Exception {
+        GroqChatRequest request = objectMapper.readValue(write("m", false, prompt("custom", "user")),
+                GroqChatRequest.class);
+
+        assertThat(request.getMessages().get(0).getContent()).isEqualTo("custom");
+    }
+}
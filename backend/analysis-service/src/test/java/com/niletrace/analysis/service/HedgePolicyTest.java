@@ -0,0 +1,97 @@
+package com.niletrace.analysis.service;
+
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgePolicyTest {
+
+    private ModelRouter modelRouter;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        modelRouter = new ModelRouter(CircuitBreakerRegistry.ofDefaults(), true, "fast-model", "large-model",
+                "", "SEV3,SEV4", 4000, 30, 300);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    private HedgePolicy policy(boolean enabled, double budgetPercent) {
+        return new HedgePolicy(modelRouter, meterRegistry, enabled, 0.95, 5, 100, true, budgetPercent, 2);
+    }
+
+    @Test
+    @DisplayName("Should hedge only after enough samples, at the p95 but not below the minimum delay")
+    void shouldDelayByObservedP95() {
+        HedgePolicy policy = policy(true, 5);
+        for (int i = 0; i < 4; i++) {
+            modelRouter.recordLatency("large-model", "report", Duration.ofMillis(400));
+        }
+        assertThat(policy.delayFor("large-model", "report")).isEmpty();
+
+        modelRouter.recordLatency("large-model", "report", Duration.ofMillis(800));
+        assertThat(policy.delayFor("large-model", "report")).contains(Duration.ofMillis(800));
+
+        for (int i = 0; i < 5; i++) {
+            modelRouter.recordLatency("fast-model", "report", Duration.ofMillis(20));
+        }
+        assertThat(policy.delayFor("fast-model", "report")).contains(Duration.ofMillis(100));
+    }
+
+    @Test
+    @DisplayName("Should never hedge when disabled")
+    void shouldNotHedgeWhenDisabled() {
+        HedgePolicy policy = policy(false, 5);
+        for (int i = 0; i < 5; i++) {
+            modelRouter.recordLatency("large-model", "report", Duration.ofMillis(400));
+        }
+
+        assertThat(policy.delayFor("large-model", "report")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should allow hedges for the configured share of calls, with bounded bursts")
+    void shouldLimitHedgesToBudget() {
+        HedgePolicy policy = policy(true, 5);
+        assertThat(policy.tryAcquire()).isFalse();
+
+        for (int i = 0; i < 19; i++) {
+            policy.onCall();
+        }
+        assertThat(policy.tryAcquire()).isFalse();
+        policy.onCall();
+        assertThat(policy.tryAcquire()).isTrue();
+        assertThat(policy.tryAcquire()).isFalse();
+
+        // Idle periods accumulate at most max-burst hedges
+        for (int i = 0; i < 1000; i++) {
+            policy.onCall();
+        }
+        assertThat(policy.tryAcquire()).isTrue();
+        assertThat(policy.tryAcquire()).isTrue();
+        assertThat(policy.tryAcquire()).isFalse();
+        assertThat(meterRegistry.get("groq.hedge.requests").tag("outcome", "fired").counter().count()).isEqualTo(3);
+        assertThat(meterRegistry.get("groq.hedge.requests").tag("outcome", "budget_exhausted").counter().count())
+                .isEqualTo(4);
+    }
+
+    @Test
+    @DisplayName("Should hedge to the next model unless it is unavailable")
+    void shouldPickHedgeModel() {
+        HedgePolicy policy = policy(true, 5);
+        List<String> models = List.of("large-model", "fast-model");
+
+        assertThat(policy.hedgeModel(models, 0, "report")).isEqualTo("fast-model");
+        assertThat(policy.hedgeModel(models, 1, "report")).isEqualTo("fast-model");
+
+        modelRouter.circuitBreaker("fast-model").transitionToOpenState();
+        assertThat(policy.hedgeModel(models, 0, "report")).isEqualTo("large-model");
+    }
+}
@@ -0,0 +1,185 @@
+package com.niletrace.analysis.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.analysis.dto.AnalysisResultResponse;
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.JobStatus;
+import com.niletrace.analysis.dto.ModelCall;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JobJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<JobJournal> journals = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        journals.forEach(JobJournal::close);
+    }
+
+    private JobJournal journal(long compactBytes) {
+        JobJournal journal = new JobJournal(new ObjectMapper().findAndRegisterModules(), true, directory.toString(),
+                300, compactBytes);
+        journals.add(journal);
+        return journal;
+    }
+
+    private ReportSpillStore spillStore() {
+        return new ReportSpillStore(0, directory.resolve("reports").toString());
+    }
+
+    /**
+     * Stops the service's journal, as a shutdown would, and starts a new service on the same files.
+     */
+    private JobManagerService restart(JobJournal journal, long compactBytes) {
+        journal.close();
+        return new JobManagerService(journal(compactBytes), spillStore());
+    }
+
+    private IncidentSnapshot createSnapshot() {
+        return IncidentSnapshot.builder()
+                .incidentId(UUID.randomUUID())
+                .title("Checkout failures")
+                .description("Payments timing out")
+                .severity("SEV1")
+                .logContent("2024-01-15T10:05:00Z ERROR Connection refused\n")
+                .incidentStartTime(Instant.parse("2024-01-15T10:05:00Z"))
+                .createdAt(Instant.parse("2024-01-15T10:30:00Z"))
+                .build();
+    }
+
+    @Test
+    @DisplayName("Should recover finished jobs and re-queue unfinished ones after a restart")
+    void shouldRecoverJobs() {
+        JobJournal journal = journal(Long.MAX_VALUE);
+        JobManagerService jobManagerService = new JobManagerService(journal, spillStore());
+        UUID completed = jobManagerService.createJob(createSnapshot());
+        jobManagerService.markProcessing(completed);
+        jobManagerService.recordRouting(completed, "severity SEV1 -> large-model", List.of(ModelCall.builder()
+                .model("large-model").purpose("report").outcome(ModelCall.Outcome.SUCCEEDED).build()));
+        jobManagerService.markCompleted(completed, "# Executive Summary\nDone", 2);
+        UUID processing = jobManagerService.createJob(createSnapshot());
+        jobManagerService.markProcessing(processing);
+        UUID queued = jobManagerService.createJob(createSnapshot());
+
+        JobManagerService recovered = restart(journal, Long.MAX_VALUE);
+
+        AnalysisResultResponse result = recovered.getJobResult(completed).orElseThrow();
+        assertThat(result.getStatus()).isEqualTo(JobStatus.COMPLETED);
+        assertThat(result.getMarkdownReport()).isEqualTo("# Executive Summary\nDone");
+        assertThat(result.getPiiEntitiesMasked()).isEqualTo(2);
+        assertThat(result.getModel()).isEqualTo("large-model");
+        assertThat(recovered.getJobResult(processing).orElseThrow().getStatus()).isEqualTo(JobStatus.QUEUED);
+        assertThat(recovered.getJobSnapshot(queued).orElseThrow().getLogContent()).contains("Connection refused");
+        assertThat(recovered.takeRecoveredJobs()).containsExactlyInAnyOrder(processing, queued);
+        assertThat(recovered.takeRecoveredJobs()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should journal model calls once, with the finished job")
+    void shouldJournalRoutingOnFinish() throws IOException {
+        JobJournal journal = journal(Long.MAX_VALUE);
+        JobManagerService jobManagerService = new JobManagerService(journal, spillStore());
+        UUID jobId = jobManagerService.createJob(createSnapshot());
+        jobManagerService.markProcessing(jobId);
+        List<ModelCall> calls = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            calls.add(ModelCall.builder()
+                    .model("fast-model").purpose("chunk " + (i + 1) + "/16").outcome(ModelCall.Outcome.SUCCEEDED).build());
+            jobManagerService.recordRouting(jobId, "log split into 16 chunks -> large-model", calls);
+        }
+        // Visible on the job while it runs
+        assertThat(jobManagerService.getJobResult(jobId).orElseThrow().getModelCalls()).hasSize(16);
+        jobManagerService.markCompleted(jobId, "# Executive Summary\nDone", 0);
+
+        JobManagerService recovered = restart(journal, Long.MAX_VALUE);
+
+        // Created, processing and completed
+        assertThat(Files.readAllLines(directory.resolve(JobJournal.WAL_FILE))).hasSize(3);
+        assertThat(recovered.getJobResult(jobId).orElseThrow().getModelCalls()).hasSize(16);
+    }
+
+    @Test
+    @DisplayName("Should compact the log into a snapshot without losing jobs")
+    void shouldCompactIntoSnapshot() throws IOException {
+        JobJournal journal = journal(1);
+        JobManagerService jobManagerService = new JobManagerService(journal, spillStore());
+        List<UUID> jobIds = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            UUID jobId = jobManagerService.createJob(createSnapshot());
+            jobManagerService.markProcessing(jobId);
+            jobManagerService.markFailed(jobId, "failure " + i);
+            jobIds.add(jobId);
+        }
+
+        JobManagerService recovered = restart(journal, Long.MAX_VALUE);
+
+        assertThat(Files.size(directory.resolve(JobJournal.WAL_FILE))).isZero();
+        assertThat(Files.readAllLines(directory.resolve(JobJournal.SNAPSHOT_FILE))).isNotEmpty();
+        assertThat(jobIds).allSatisfy(jobId -> assertThat(recovered.getJobResult(jobId).orElseThrow().getStatus())
+                .isEqualTo(JobStatus.FAILED));
+        assertThat(recovered.getTotalJobCount()).isEqualTo(20);
+    }
+
+    @Test
+    @DisplayName("Should skip a line torn by a crash and keep appending after it")
+    void shouldSkipTornLine() throws IOException {
+        JobJournal journal = journal(Long.MAX_VALUE);
+        UUID jobId = new JobManagerService(journal, spillStore()).createJob(createSnapshot());
+        journal.close();
+        Files.writeString(directory.resolve(JobJournal.WAL_FILE), "{\"op\":\"UPDATED\",\"jobId\":\"",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        JobJournal reopened = journal(Long.MAX_VALUE);
+        JobManagerService recovered = new JobManagerService(reopened, spillStore());
+        recovered.markFailed(jobId, "gateway timeout");
+        JobManagerService again = restart(reopened, Long.MAX_VALUE);
+
+        assertThat(again.getJobResult(jobId).orElseThrow().getErrorMessage()).isEqualTo("gateway timeout");
+    }
+
+    @Test
+    @DisplayName("Should retry a batch that failed to write instead of dropping it")
+    void shouldRetryFailedBatch() throws IOException {
+        JobJournal journal = journal(Long.MAX_VALUE);
+        JobManagerService jobManagerService = new JobManagerService(journal, spillStore());
+        // Every write fails while the log is closed
+        ((FileChannel) ReflectionTestUtils.getField(journal, "wal")).close();
+
+        long start = System.nanoTime();
+        UUID jobId = jobManagerService.createJob(createSnapshot());
+        // Accepted without waiting for the disk
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofMillis(500));
+        jobManagerService.markProcessing(jobId);
+        jobManagerService.markFailed(jobId, "gateway timeout");
+        assertThat(Files.readString(directory.resolve(JobJournal.WAL_FILE))).doesNotContain(jobId.toString());
+
+        FileChannel reopened = FileChannel.open(directory.resolve(JobJournal.WAL_FILE), StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        reopened.position(reopened.size());
+        ReflectionTestUtils.setField(journal, "wal", reopened);
+        JobManagerService recovered = restart(journal, Long.MAX_VALUE);
+
+        assertThat(recovered.getJobResult(jobId).orElseThrow().getErrorMessage()).isEqualTo("gateway timeout");
+    }
+}
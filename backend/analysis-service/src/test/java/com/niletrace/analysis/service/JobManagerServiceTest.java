@@ -1,16 +1,28 @@
 package com.niletrace.analysis.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.niletrace.analysis.dto.AnalysisResultResponse;
 import com.niletrace.analysis.dto.IncidentSnapshot;
 import com.niletrace.analysis.dto.JobStatus;
 import com.niletrace.analysis.dto.Severity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.Disposable;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -20,7 +32,8 @@ class JobManagerServiceTest {
 
     @BeforeEach
     void setUp() {
-        jobManagerService = new JobManagerService();
+        jobManagerService = new JobManagerService(new JobJournal(new ObjectMapper(), false, "data/jobs", 300, 0),
+                new ReportSpillStore(0, "data/reports"));
     }
 
     private IncidentSnapshot createTestSnapshot() {
@@ -127,6 +140,66 @@ class JobManagerServiceTest {
         assertThat(jobManagerService.getTotalJobCount()).isEqualTo(2);
     }
 
+    @Test
+    @DisplayName("Should count jobs per status and expose them as gauges")
+    void shouldCountJobsPerStatus() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        new JobMetrics(jobManagerService, meterRegistry);
+        UUID completed = jobManagerService.createJob(createTestSnapshot());
+        UUID failed = jobManagerService.createJob(createTestSnapshot());
+        jobManagerService.createJob(createTestSnapshot());
+
+        jobManagerService.markProcessing(completed);
+        jobManagerService.markCompleted(completed, "Report", 0);
+        jobManagerService.markProcessing(failed);
+        jobManagerService.markFailed(failed, "Error");
+
+        assertThat(jobManagerService.getJobCount(JobStatus.QUEUED)).isEqualTo(1);
+        assertThat(jobManagerService.getJobCount(JobStatus.PROCESSING)).isZero();
+        assertThat(jobManagerService.getJobCount(JobStatus.COMPLETED)).isEqualTo(1);
+        assertThat(jobManagerService.getJobCount(JobStatus.FAILED)).isEqualTo(1);
+        assertThat(meterRegistry.get("analysis.jobs").tag("status", "queued").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("analysis.jobs").tag("status", "completed").gauge().value()).isEqualTo(1);
+        assertThat(meterRegistry.get("analysis.jobs.retained").gauge().value())
+                .isEqualTo(jobManagerService.getRetainedBytes());
+        assertThat(meterRegistry.get("analysis.jobs.oldest-queued-age").timeGauge().value(TimeUnit.MILLISECONDS))
+                .isGreaterThanOrEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Should report the age of the oldest job still queued")
+    void shouldReportOldestQueuedAge() {
+        assertThat(jobManagerService.getOldestQueuedAge()).isZero();
+        UUID started = jobManagerService.createJob(createTestSnapshot());
+        UUID waiting = jobManagerService.createJob(createTestSnapshot());
+        jobManagerService.markProcessing(started);
+
+        Duration age = jobManagerService.getOldestQueuedAge();
+
+        assertThat(age).isBetween(Duration.ZERO, Duration.ofMinutes(1));
+        jobManagerService.markProcessing(waiting);
+        assertThat(jobManagerService.getOldestQueuedAge()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should stop tracking jobs in queue order once they leave QUEUED")
+    void shouldDropJobsLeavingQueue() {
+        for (int i = 0; i < 1000; i++) {
+            UUID jobId = jobManagerService.createJob(createTestSnapshot());
+            if (i % 2 == 0) {
+                jobManagerService.markProcessing(jobId);
+                jobManagerService.markCompleted(jobId, "Report", 0);
+            } else {
+                jobManagerService.markFailed(jobId, "Rejected");
+            }
+        }
+        UUID waiting = jobManagerService.createJob(createTestSnapshot());
+
+        assertThat(jobManagerService.getQueuedJobCount()).isEqualTo(1);
+        jobManagerService.markProcessing(waiting);
+        assertThat(jobManagerService.getQueuedJobCount()).isZero();
+    }
+
     @Test
     @DisplayName("Should check job existence")
     void shouldCheckJobExistence() {
@@ -149,4 +222,135 @@ class JobManagerServiceTest {
         assertThat(retrieved.get().getIncidentId()).isEqualTo(snapshot.getIncidentId());
         assertThat(retrieved.get().getTitle()).isEqualTo(snapshot.getTitle());
     }
+
+    @Test
+    @DisplayName("Should push each status change to watchers until the job finishes")
+    void shouldPushStatusChanges() {
+        UUID jobId = jobManagerService.createJob(createTestSnapshot());
+        List<JobStatus> statuses = new CopyOnWriteArrayList<>();
+        Disposable watcher = jobManagerService.statusChanges(jobId).subscribe(statuses::add);
+
+        jobManagerService.markProcessing(jobId);
+        jobManagerService.markCompleted(jobId, "Report", 0);
+
+        assertThat(statuses).containsExactly(JobStatus.QUEUED, JobStatus.PROCESSING, JobStatus.COMPLETED);
+        assertThat(watcher.isDisposed()).isTrue();
+        assertThat(jobManagerService.statusChanges(jobId).collectList().block(Duration.ofSeconds(1)))
+                .containsExactly(JobStatus.COMPLETED);
+        assertThat(jobManagerService.statusChanges(UUID.randomUUID()).collectList().block(Duration.ofSeconds(1)))
+                .isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should answer a long poll once the job finishes or the timeout passes")
+    void shouldAwaitStatus() throws Exception {
+        UUID jobId = jobManagerService.createJob(createTestSnapshot());
+        CompletableFuture<AnalysisResultResponse> completed = jobManagerService
+                .awaitStatus(jobId, JobStatus.COMPLETED, Duration.ofSeconds(10)).toFuture();
+
+        assertThat(jobManagerService.awaitStatus(jobId, JobStatus.COMPLETED, Duration.ofMillis(50))
+                .block(Duration.ofSeconds(1)).getStatus()).isEqualTo(JobStatus.QUEUED);
+        assertThat(completed).isNotDone();
+
+        jobManagerService.markProcessing(jobId);
+        jobManagerService.markFailed(jobId, "Timeout");
+
+        AnalysisResultResponse result = completed.get(1, TimeUnit.SECONDS);
+        assertThat(result.getStatus()).isEqualTo(JobStatus.FAILED);
+        assertThat(result.getErrorMessage()).isEqualTo("Timeout");
+        assertThat(jobManagerService.awaitStatus(UUID.randomUUID(), JobStatus.COMPLETED, Duration.ofSeconds(1))
+                .blockOptional(Duration.ofSeconds(1))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should expire finished jobs once their retention has passed")
+    void shouldExpireFinishedJobs() {
+        ReflectionTestUtils.setField(jobManagerService, "retentionHours", 1);
+        UUID completed = jobManagerService.createJob(createTestSnapshot());
+        UUID failed = jobManagerService.createJob(createTestSnapshot());
+        UUID queued = jobManagerService.createJob(createTestSnapshot());
+        jobManagerService.markCompleted(completed, "Report", 0);
+        jobManagerService.markFailed(failed, "Timeout");
+
+        jobManagerService.cleanupOldJobs();
+        assertThat(jobManagerService.getTotalJobCount()).isEqualTo(3);
+
+        ReflectionTestUtils.setField(jobManagerService, "retentionHours", 0);
+        jobManagerService.cleanupOldJobs();
+
+        assertThat(jobManagerService.jobExists(completed)).isFalse();
+        assertThat(jobManagerService.jobExists(failed)).isFalse();
+        assertThat(jobManagerService.jobExists(queued)).isTrue();
+        assertThat(jobManagerService.getJobCount(JobStatus.COMPLETED)).isZero();
+        assertThat(jobManagerService.getJobCount(JobStatus.FAILED)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should forget spill candidates once their jobs expire")
+    void shouldBoundSpillCandidates(@TempDir Path spillDirectory) {
+        JobManagerService budgeted = new JobManagerService(
+                new JobJournal(new ObjectMapper(), false, "data/jobs", 300, 0),
+                new ReportSpillStore(64, spillDirectory.toString()));
+        ReflectionTestUtils.setField(budgeted, "retentionHours", 0);
+        for (int i = 0; i < 1000; i++) {
+            UUID jobId = budgeted.createJob(createTestSnapshot());
+            budgeted.markCompleted(jobId, "Report " + i, 0);
+            jobManagerService.markCompleted(jobManagerService.createJob(createTestSnapshot()), "Report " + i, 0);
+        }
+        assertThat(budgeted.getSpillCandidateCount()).isEqualTo(1000);
+
+        budgeted.cleanupOldJobs();
+
+        assertThat(budgeted.getTotalJobCount()).isZero();
+        assertThat(budgeted.getSpillCandidateCount()).isZero();
+        // Without a memory budget nothing is ever spilled, so nothing is tracked
+        assertThat(jobManagerService.getSpillCandidateCount()).isZero();
+    }
+
+    @Test
+    @DisplayName("Should drop log content once a job finishes")
+    void shouldDropLogContentWhenFinished() {
+        IncidentSnapshot snapshot = createTestSnapshot();
+        snapshot.setLogContent("x".repeat(100_000));
+        UUID completed = jobManagerService.createJob(snapshot);
+        UUID failed = jobManagerService.createJob(createTestSnapshot());
+        long retained = jobManagerService.getRetainedBytes();
+        assertThat(retained).isGreaterThan(200_000);
+
+        jobManagerService.markCompleted(completed, "Report", 0);
+        jobManagerService.markFailed(failed, "Timeout");
+
+        assertThat(jobManagerService.getJobSnapshot(completed).orElseThrow().getLogContent()).isNull();
+        assertThat(jobManagerService.getJobSnapshot(failed).orElseThrow().getLogContent()).isNull();
+        assertThat(jobManagerService.getJobSnapshot(completed).orElseThrow().getTitle()).isEqualTo("Test Incident");
+        assertThat(jobManagerService.getRetainedBytes()).isLessThan(retained - 200_000);
+        assertThat(snapshot.getLogContent()).hasSize(100_000);
+    }
+
+    @Test
+    @DisplayName("Should spill the oldest reports to disk over the memory budget and read them back")
+    void shouldSpillReportsOverBudget(@TempDir Path spillDirectory) throws InterruptedException {
+        JobManagerService budgeted = new JobManagerService(
+                new JobJournal(new ObjectMapper(), false, "data/jobs", 300, 0),
+                new ReportSpillStore(1, spillDirectory.toString()));
+        List<UUID> jobIds = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            UUID jobId = budgeted.createJob(createTestSnapshot());
+            budgeted.markCompleted(jobId, "# Report " + i + "\n" + "details ".repeat(40_000), 0);
+            jobIds.add(jobId);
+        }
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (budgeted.getRetainedBytes() > 1024 * 1024 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(budgeted.getRetainedBytes()).isLessThanOrEqualTo(1024 * 1024);
+        assertThat(spillDirectory.resolve(jobIds.get(0) + ".md.gz")).exists();
+        assertThat(spillDirectory.resolve(jobIds.get(3) + ".md.gz")).doesNotExist();
+        for (int i = 0; i < 4; i++) {
+            assertThat(budgeted.getJobResult(jobIds.get(i)).orElseThrow().getMarkdownReport())
+                    .startsWith("# Report " + i + "\n").hasSize(("# Report " + i + "\n").length() + 320_000);
+        }
+    }
 }
@@ -0,0 +1,83 @@
+package com.niletrace.analysis.service;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LlmResponseCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    private LlmResponseCache newCache(int maxEntries) {
+        return new LlmResponseCache(true, maxEntries, cacheDir.toString(), 24);
+    }
+
+    @Test
+    @DisplayName("Should derive different keys for any change in model, parameters or prompt")
+    void shouldDeriveDistinctKeys() {
+        String key = LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "user");
+
+        assertThat(LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "user")).isEqualTo(key);
+        assertThat(LlmResponseCache.keyOf("llama", 0.2, 4096, "system", "user")).isNotEqualTo(key);
+        assertThat(LlmResponseCache.keyOf("llama", 0.3, 2048, "system", "user")).isNotEqualTo(key);
+        assertThat(LlmResponseCache.keyOf("other", 0.3, 4096, "system", "user")).isNotEqualTo(key);
+        assertThat(LlmResponseCache.keyOf("llama", 0.3, 4096, "systemuser", "")).isNotEqualTo(key);
+    }
+
+    @Test
+    @DisplayName("Should key prompt parts the same as the joined prompt")
+    void shouldKeyPromptParts() {
+        String log = "2024-01-15 ERROR caf\u00e9 \ud83d\udd25 timeout\n".repeat(500);
+
+        assertThat(LlmResponseCache.keyOf("llama", 0.3, 4096, "system", List.of("## CONTEXT\n", log, "end")))
+                .isEqualTo(LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "## CONTEXT\n" + log + "end"));
+        assertThat(LlmResponseCache.keyOf("llama", 0.3, 4096, "system", List.of("a", "b")))
+                .isNotEqualTo(LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "ab "));
+    }
+
+    @Test
+    @DisplayName("Should serve entries from disk after a restart")
+    void shouldSurviveRestart() {
+        String key = LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "user");
+        newCache(10).put(key, "# Executive Summary");
+
+        LlmResponseCache restarted = newCache(10);
+
+        assertThat(restarted.get(key)).contains("# Executive Summary");
+        assertThat(restarted.get(LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "other"))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should drop entries older than the TTL")
+    void shouldExpireOldEntries() throws Exception {
+        String key = LlmResponseCache.keyOf("llama", 0.3, 4096, "system", "user");
+        newCache(10).put(key, "stale report");
+        try (Stream<Path> files = Files.walk(cacheDir)) {
+            for (Path file : files.filter(Files::isRegularFile).toList()) {
+                Files.setLastModifiedTime(file, FileTime.from(Instant.now().minus(Duration.ofHours(25))));
+            }
+        }
+
+        assertThat(newCache(10).get(key)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should return nothing when disabled")
+    void shouldBypassWhenDisabled() {
+        LlmResponseCache cache = new LlmResponseCache(false, 10, cacheDir.toString(), 24);
+        cache.put("abc", "report");
+
+        assertThat(cache.get("abc")).isEmpty();
+    }
+}
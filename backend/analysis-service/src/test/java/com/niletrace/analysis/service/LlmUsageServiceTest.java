@@ -0,0 +1,106 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import com.niletrace.analysis.dto.ModelCall;
+import com.niletrace.analysis.exception.TokenBudgetExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class LlmUsageServiceTest {
+
+    private static final String PRICING = "fast:0.05:0.08,large:0.59:0.79";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LlmUsageService usageService(long globalTokens, long ownerTokens, LlmUsageService.BudgetAction action) {
+        return new LlmUsageService(meterRegistry, PRICING, true, 24, globalTokens, ownerTokens, action);
+    }
+
+    private IncidentSnapshot createSnapshot(String ownerId) {
+        return IncidentSnapshot.builder()
+                .incidentId(UUID.randomUUID())
+                .title("Checkout failures")
+                .description("Payments timing out")
+                .severity("SEV1")
+                .logContent("log")
+                .incidentStartTime(Instant.parse("2024-01-15T10:05:00Z"))
+                .createdAt(Instant.parse("2024-01-15T10:30:00Z"))
+                .ownerId(ownerId)
+                .build();
+    }
+
+    private static ModelCall call(ModelCall.Outcome outcome, int promptTokens, int completionTokens) {
+        return ModelCall.builder()
+                .model("large")
+                .purpose("chunk 2/5")
+                .outcome(outcome)
+                .latencyMillis(900)
+                .timeToFirstTokenMillis(200)
+                .promptTokens(promptTokens)
+                .completionTokens(completionTokens)
+                .estimatedCostUsd(0.01)
+                .build();
+    }
+
+    @Test
+    @DisplayName("Should price calls per million input and output tokens")
+    void shouldPriceCalls() {
+        LlmUsageService usageService = usageService(0, 0, LlmUsageService.BudgetAction.REJECT);
+
+        assertThat(usageService.costOf("large", 1_000_000, 0)).isCloseTo(0.59, within(1e-9));
+        assertThat(usageService.costOf("fast", 2000, 1000)).isCloseTo((2000 * 0.05 + 1000 * 0.08) / 1e6, within(1e-12));
+        assertThat(usageService.costOf("unpriced", 1000, 1000)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should publish token, latency and cost meters")
+    void shouldPublishMeters() {
+        LlmUsageService usageService = usageService(0, 0, LlmUsageService.BudgetAction.REJECT);
+
+        usageService.record(createSnapshot(null), call(ModelCall.Outcome.SUCCEEDED, 3000, 400));
+
+        assertThat(meterRegistry.get("groq.tokens").tags("purpose", "chunk", "type", "prompt").summary().totalAmount())
+                .isEqualTo(3000);
+        assertThat(meterRegistry.get("groq.tokens").tags("type", "completion").summary().totalAmount()).isEqualTo(400);
+        assertThat(meterRegistry.get("groq.call.time-to-first-token").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.get("groq.cost").tags("model", "large").counter().count()).isEqualTo(0.01);
+    }
+
+    @Test
+    @DisplayName("Should reject new jobs once the global budget is used up")
+    void shouldRejectOverGlobalBudget() {
+        LlmUsageService usageService = usageService(1000, 0, LlmUsageService.BudgetAction.REJECT);
+        IncidentSnapshot snapshot = createSnapshot(null);
+
+        assertThatCode(() -> usageService.checkAdmission(snapshot)).doesNotThrowAnyException();
+        usageService.record(snapshot, call(ModelCall.Outcome.SUCCEEDED, 900, 100));
+
+        assertThatThrownBy(() -> usageService.checkAdmission(snapshot))
+                .isInstanceOf(TokenBudgetExceededException.class);
+        assertThat(usageService.shouldDowngrade(snapshot)).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should downgrade only the owner that used up its budget, and not charge cache hits")
+    void shouldDowngradeOverOwnerBudget() {
+        LlmUsageService usageService = usageService(0, 1000, LlmUsageService.BudgetAction.DOWNGRADE);
+        IncidentSnapshot heavy = createSnapshot("team-a");
+
+        usageService.record(heavy, call(ModelCall.Outcome.CACHED, 5000, 500));
+        assertThat(usageService.shouldDowngrade(heavy)).isFalse();
+
+        usageService.record(heavy, call(ModelCall.Outcome.SUCCEEDED, 900, 100));
+        assertThat(usageService.shouldDowngrade(heavy)).isTrue();
+        assertThat(usageService.shouldDowngrade(createSnapshot("team-b"))).isFalse();
+        assertThatCode(() -> usageService.checkAdmission(heavy)).doesNotThrowAnyException();
+    }
+}
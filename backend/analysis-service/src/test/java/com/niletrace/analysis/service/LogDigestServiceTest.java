@@ -0,0 +1,115 @@
+package com.niletrace.analysis.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogDigestServiceTest {
+
+    private static final Instant INCIDENT_START = Instant.parse("2024-01-15T10:10:00Z");
+
+    private LogDigestService digestService;
+
+    @BeforeEach
+    void setUp() {
+        digestService = new LogDigestService();
+        ReflectionTestUtils.setField(digestService, "enabled", true);
+        ReflectionTestUtils.setField(digestService, "minChars", 2000);
+        ReflectionTestUtils.setField(digestService, "topSignatures", 3);
+        ReflectionTestUtils.setField(digestService, "maxStackTraces", 5);
+        ReflectionTestUtils.setField(digestService, "windowMinutes", 5);
+        ReflectionTestUtils.setField(digestService, "sampleChars", 1500);
+    }
+
+    /**
+     * Twenty minutes of one line per second; from the incident start the database pool fails
+     * every ten seconds with the same stack trace, and the gateway times out every five.
+     */
+    private String buildLog() {
+        StringBuilder log = new StringBuilder();
+        Instant base = Instant.parse("2024-01-15T10:00:00Z");
+        for (int i = 0; i < 1200; i++) {
+            String ts = base.plusSeconds(i).toString();
+            if (i == 100) {
+                log.append(ts).append(" ERROR Cache warmup failed for region eu-1\n");
+            } else if (i >= 600 && i % 10 == 0) {
+                log.append(ts).append(" ERROR Connection pool exhausted after ").append(i).append("ms\n");
+                log.append("java.sql.SQLTransientConnectionException: timeout\n");
+                log.append("    at com.zaxxer.hikari.pool.HikariPool.getConnection(HikariPool.java:181)\n");
+                log.append("    at com.example.OrderRepository.save(OrderRepository.java:42)\n");
+            } else if (i >= 600 && i % 5 == 0) {
+                log.append(ts).append(" ERROR Payment gateway timeout for order ").append(90000 + i).append('\n');
+            } else {
+                log.append(ts).append(" INFO Request handled in ").append(i % 17).append("ms\n");
+            }
+        }
+        return log.toString();
+    }
+
+    @Test
+    @DisplayName("Should only digest logs above the minimum size")
+    void shouldApplyToLargeLogs() {
+        assertThat(digestService.appliesTo("2024-01-15 10:00:00 ERROR Failed\n")).isFalse();
+        assertThat(digestService.appliesTo(buildLog())).isTrue();
+
+        ReflectionTestUtils.setField(digestService, "enabled", false);
+        assertThat(digestService.appliesTo(buildLog())).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should extract the first failure, top signatures and distinct stack traces")
+    void shouldExtractEvidence() {
+        String log = buildLog();
+
+        LogDigestService.Digest digest = digestService.digest(log, INCIDENT_START);
+
+        assertThat(digest.totalLines()).isEqualTo(1380);
+        assertThat(digest.content())
+                .contains("### First Failure\n\n```\n2024-01-15T10:01:40Z ERROR Cache warmup failed for region eu-1")
+                .contains("Top Error Signatures (3 of 3 distinct)")
+                .contains("- 60x, first 2024-01-15 10:10:00 UTC, last 2024-01-15 10:19:50 UTC: "
+                        + "`2024-01-15T10:10:00Z ERROR Connection pool exhausted after 600ms`")
+                .contains("- 60x, first 2024-01-15 10:10:05 UTC")
+                .contains("Distinct Stack Traces (1 of 1)")
+                .contains("60x, first 2024-01-15 10:10:00 UTC:\n```\n")
+                .contains("OrderRepository.save");
+        assertThat(digest.content().indexOf("Connection pool exhausted"))
+                .isLessThan(digest.content().indexOf("Payment gateway timeout"));
+        assertThat(digest.sample())
+                .startsWith("[... ")
+                .contains("2024-01-15T10:10:00Z ERROR Connection pool exhausted after 600ms")
+                .contains("2024-01-15T10:09:59Z INFO")
+                .endsWith(" later lines ...]\n");
+        assertThat(digest.sample().length()).isLessThanOrEqualTo(1500 + 80);
+        assertThat(digest.content().length() + digest.sample().length()).isLessThan(log.length() / 10);
+    }
+
+    @Test
+    @DisplayName("Should compare the error rate before and after the incident start")
+    void shouldReportErrorRateChange() {
+        LogDigestService.Digest digest = digestService.digest(buildLog(), INCIDENT_START);
+
+        assertThat(digest.content())
+                .contains("Error Rate Around Incident Start (+/- 5 min)")
+                .contains("- Before: 0.0 errors/min (0 errors)")
+                .contains("- After: 12.0 errors/min (60 errors)")
+                .contains("| 10:09 | 60 | 0 |")
+                .contains("| 10:10 * | 66 | 12 |");
+    }
+
+    @Test
+    @DisplayName("Should produce the same digest for the same log")
+    void shouldBeDeterministic() {
+        String log = buildLog();
+
+        LogDigestService.Digest first = digestService.digest(log, INCIDENT_START);
+        LogDigestService.Digest second = digestService.digest(log, INCIDENT_START);
+
+        assertThat(second).isEqualTo(first);
+    }
+}
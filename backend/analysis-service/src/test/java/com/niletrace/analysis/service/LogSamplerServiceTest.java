@@ -0,0 +1,96 @@
+package com.niletrace.analysis.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LogSamplerServiceTest {
+
+    private static final int BUDGET_CHARS = 1500;
+
+    private LogSamplerService samplerService;
+
+    @BeforeEach
+    void setUp() {
+        samplerService = new LogSamplerService();
+        ReflectionTestUtils.setField(samplerService, "windowMinutes", 1);
+    }
+
+    private String buildLog() {
+        StringBuilder log = new StringBuilder();
+        Instant base = Instant.parse("2024-01-15T10:00:00Z");
+        for (int i = 0; i < 600; i++) {
+            String ts = base.plusSeconds(i).toString();
+            if (i == 300) {
+                log.append(ts).append(" ERROR Connection pool exhausted\n");
+                log.append("java.sql.SQLTransientConnectionException: timeout\n");
+                log.append("    at com.zaxxer.hikari.pool.HikariPool.getConnection(HikariPool.java:181)\n");
+                log.append("    ... 42 more\n");
+            } else if (i == 450) {
+                log.append(ts).append(" WARN Slow query detected\n");
+            } else {
+                log.append(ts).append(" INFO Request handled in 12ms\n");
+            }
+        }
+        return log.toString();
+    }
+
+    @Test
+    @DisplayName("Should leave small logs untouched")
+    void shouldNotSampleSmallLogs() {
+        String input = "2024-01-15 10:00:00 INFO Started\n2024-01-15 10:00:01 ERROR Failed\n";
+
+        LogSamplerService.SampledLog result = samplerService.sample(input, null, 1L, BUDGET_CHARS);
+
+        assertThat(result.sampled()).isFalse();
+        assertThat(result.content()).isEqualTo(input);
+        assertThat(result.totalLines()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("Should keep every error, warning and stack-trace line")
+    void shouldKeepPriorityLines() {
+        LogSamplerService.SampledLog result = samplerService.sample(buildLog(), null, 1L, BUDGET_CHARS);
+
+        assertThat(result.sampled()).isTrue();
+        assertThat(result.content())
+                .contains("ERROR Connection pool exhausted")
+                .contains("java.sql.SQLTransientConnectionException: timeout")
+                .contains("at com.zaxxer.hikari.pool.HikariPool.getConnection")
+                .contains("... 42 more")
+                .contains("WARN Slow query detected")
+                .contains("lines omitted by sampling");
+        assertThat(result.priorityLines()).isEqualTo(5);
+        assertThat(result.keptLines()).isLessThan(result.totalLines());
+        assertThat(result.content().length()).isLessThan(2500);
+    }
+
+    @Test
+    @DisplayName("Should keep lines nearest to the incident start")
+    void shouldKeepLinesNearIncidentStart() {
+        Instant start = Instant.parse("2024-01-15T10:02:00Z");
+
+        LogSamplerService.SampledLog result = samplerService.sample(buildLog(), start, 1L, BUDGET_CHARS);
+
+        assertThat(result.content())
+                .contains("2024-01-15T10:02:00Z INFO")
+                .contains("2024-01-15T10:01:59Z INFO")
+                .contains("2024-01-15T10:02:01Z INFO");
+    }
+
+    @Test
+    @DisplayName("Should be deterministic for the same seed")
+    void shouldBeDeterministicForSameSeed() {
+        String input = buildLog();
+
+        String first = samplerService.sample(input, null, 42L, BUDGET_CHARS).content();
+        String second = samplerService.sample(input, null, 42L, BUDGET_CHARS).content();
+
+        assertThat(first).isEqualTo(second);
+    }
+}
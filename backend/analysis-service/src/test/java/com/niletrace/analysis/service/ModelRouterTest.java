@@ -0,0 +1,104 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelRouterTest {
+
+    private ModelRouter modelRouter;
+
+    @BeforeEach
+    void setUp() {
+        modelRouter = new ModelRouter(CircuitBreakerRegistry.ofDefaults(), true, "fast", "large",
+                "backup", "SEV3,SEV4", 4000, 30, 300);
+    }
+
+    private IncidentSnapshot createSnapshot(String severity) {
+        return IncidentSnapshot.builder()
+                .incidentId(UUID.randomUUID())
+                .title("Checkout failures")
+                .description("Payments timing out")
+                .severity(severity)
+                .logContent("log")
+                .incidentStartTime(Instant.parse("2024-01-15T10:05:00Z"))
+                .createdAt(Instant.parse("2024-01-15T10:30:00Z"))
+                .build();
+    }
+
+    @Test
+    @DisplayName("Should route by severity and prompt size")
+    void shouldRouteBySeverityAndSize() {
+        assertThat(modelRouter.route(createSnapshot("SEV3"), 1000).models()).containsExactly("fast", "large", "backup");
+        assertThat(modelRouter.route(createSnapshot("SEV4"), 1000).primary()).isEqualTo("fast");
+        assertThat(modelRouter.route(createSnapshot("SEV1"), 1000).models()).containsExactly("large", "fast", "backup");
+        assertThat(modelRouter.route(createSnapshot("SEV2"), 1000).primary()).isEqualTo("large");
+        assertThat(modelRouter.route(createSnapshot("SEV3"), 9000).primary()).isEqualTo("large");
+        assertThat(modelRouter.route(createSnapshot("unknown"), 1000).primary()).isEqualTo("large");
+        assertThat(modelRouter.routeChunked(4).primary()).isEqualTo("large");
+        assertThat(modelRouter.routeSummary().primary()).isEqualTo("fast");
+    }
+
+    @Test
+    @DisplayName("Should keep downgraded routes off the large model")
+    void shouldDowngradeRoute() {
+        ModelRouter.Route route = modelRouter.downgrade(modelRouter.route(createSnapshot("SEV1"), 1000));
+
+        assertThat(route.models()).containsExactly("fast", "backup");
+        assertThat(route.reason()).contains("token budget exceeded");
+    }
+
+    @Test
+    @DisplayName("Should always use the large model when routing is disabled")
+    void shouldUseLargeModelWhenDisabled() {
+        modelRouter = new ModelRouter(CircuitBreakerRegistry.ofDefaults(), false, "fast", "large",
+                "", "SEV3,SEV4", 4000, 30, 300);
+
+        assertThat(modelRouter.route(createSnapshot("SEV4"), 100).primary()).isEqualTo("large");
+        assertThat(modelRouter.routeSummary().primary()).isEqualTo("large");
+    }
+
+    @Test
+    @DisplayName("Should flag a model over its latency SLO once enough calls of one purpose were slow")
+    void shouldTrackLatencySlo() {
+        for (int i = 0; i < 4; i++) {
+            modelRouter.recordLatency("large", "report", Duration.ofSeconds(40));
+        }
+        assertThat(modelRouter.isOverSlo("large", "report")).isFalse();
+
+        modelRouter.recordLatency("large", "report", Duration.ofSeconds(40));
+        assertThat(modelRouter.isOverSlo("large", "report")).isTrue();
+        assertThat(modelRouter.latencyPercentile("large", "report", 0.95)).contains(Duration.ofSeconds(40));
+        assertThat(modelRouter.isOverSlo("large", "chunk")).isFalse();
+        assertThat(modelRouter.isOverSlo("fast", "report")).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should never let routes that start with the large model skip it")
+    void shouldPinLargeModel() {
+        ModelRouter.Route severe = modelRouter.route(createSnapshot("SEV1"), 1000);
+        ModelRouter.Route minor = modelRouter.route(createSnapshot("SEV4"), 1000);
+
+        assertThat(modelRouter.isSkippable(severe, "large")).isFalse();
+        assertThat(modelRouter.isSkippable(severe, "fast")).isTrue();
+        assertThat(modelRouter.isSkippable(minor, "fast")).isTrue();
+        assertThat(modelRouter.isSkippable(minor, "large")).isTrue();
+    }
+
+    @Test
+    @DisplayName("Should keep one circuit breaker per model")
+    void shouldKeepBreakerPerModel() {
+        modelRouter.circuitBreaker("large").transitionToOpenState();
+
+        assertThat(modelRouter.circuitBreaker("large")).isSameAs(modelRouter.circuitBreaker("large"));
+        assertThat(modelRouter.circuitBreaker("fast").tryAcquirePermission()).isTrue();
+    }
+}
@@ -0,0 +1,232 @@
+package com.niletrace.analysis.service;
+
+import com.niletrace.analysis.dto.IncidentSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class PromptBuilderTest {
+
+    private TokenEstimator tokenEstimator;
+    private PromptBuilder promptBuilder;
+
+    @BeforeEach
+    void setUp() {
+        tokenEstimator = new TokenEstimator();
+        promptBuilder = new PromptBuilder(tokenEstimator);
+        ReflectionTestUtils.setField(promptBuilder, "contextWindow", 131072);
+        ReflectionTestUtils.setField(promptBuilder, "maxCompletionTokens", 4096);
+        ReflectionTestUtils.setField(promptBuilder, "maxLogTokens", 400);
+        ReflectionTestUtils.setField(promptBuilder, "safetyMarginTokens", 256);
+        ReflectionTestUtils.setField(promptBuilder, "windowMinutes", 1);
+    }
+
+    private IncidentSnapshot createSnapshot(String logContent) {
+        return IncidentSnapshot.builder()
+                .incidentId(UUID.randomUUID())
+                .title("Checkout failures")
+                .description("Payments timing out")
+                .severity("SEV1")
+                .logContent(logContent)
+                .incidentStartTime(Instant.parse("2024-01-15T10:05:00Z"))
+                .createdAt(Instant.parse("2024-01-15T10:30:00Z"))
+                .serviceName("checkout")
+                .build();
+    }
+
+    private String buildLog() {
+        StringBuilder log = new StringBuilder();
+        Instant base = Instant.parse("2024-01-15T10:00:00Z");
+        for (int i = 0; i < 600; i++) {
+            String ts = base.plusSeconds(i).toString();
+            if (i == 500) {
+                log.append(ts).append(" ERROR Payment gateway returned 504 for order 98123\n");
+            } else if (i % 2 == 0) {
+                log.append(ts).append(" INFO Health check ok in ").append(i % 17).append("ms\n");
+            } else {
+                log.append(ts).append(" DEBUG cache lookup key=user:").append(i).append(" session ")
+                        .append(UUID.randomUUID()).append('\n');
+            }
+        }
+        return log.toString();
+    }
+
+    @Test
+    @DisplayName("Should estimate tokens for words, numbers and punctuation")
+    void shouldEstimateTokens() {
+        assertThat(tokenEstimator.estimate("")).isZero();
+        assertThat(tokenEstimator.estimate("hello world")).isEqualTo(4);
+        assertThat(tokenEstimator.estimate("2024-01-15")).isEqualTo(6);
+        assertThat(tokenEstimator.estimate("x".repeat(400))).isEqualTo(100);
+    }
+
+    @Test
+    @DisplayName("Should include small logs verbatim")
+    void shouldIncludeSmallLogsVerbatim() {
+        String logContent = "2024-01-15 10:05:00 ERROR Connection refused\n";
+
+        PromptBuilder.Prompt prompt = promptBuilder.build(createSnapshot(logContent), logContent);
+
+        assertThat(prompt.userPrompt())
+                .contains("## INCIDENT CONTEXT")
+                .contains("**Service:** checkout")
+                .contains(logContent)
+                .doesNotContain("# Executive Summary");
+        assertThat(prompt.logSelection().reduced()).isFalse();
+        assertThat(prompt.systemPrompt()).isEqualTo(PromptBuilder.REPORT_SYSTEM_PROMPT);
+    }
+
+    @Test
+    @DisplayName("Should keep the report template in the static system prompt")
+    void shouldKeepTemplateInStaticPrefix() {
+        String logContent = "2024-01-15 10:05:00 ERROR Connection refused\n";
+
+        PromptBuilder.Prompt first = promptBuilder.build(createSnapshot(logContent), logContent);
+        PromptBuilder.Prompt second = promptBuilder.build(createSnapshot("other"), "other");
+
+        assertThat(first.systemPrompt())
+                .isSameAs(second.systemPrompt())
+                .startsWith(PromptBuilder.SYSTEM_PROMPT)
+                .contains("# Executive Summary")
+                .doesNotContain("INCIDENT CONTEXT");
+        assertThat(PromptBuilder.STATIC_SYSTEM_PROMPTS).contains(first.systemPrompt());
+    }
+
+    @Test
+    @DisplayName("Should split the report template into its sections, in order")
+    void shouldParseTemplateSections() {
+        assertThat(PromptBuilder.REPORT_SECTIONS).extracting(PromptBuilder.Section::title).containsExactly(
+                "Executive Summary", "Incident Timeline", "Root Cause Analysis", "Impact Assessment",
+                "Resolution Steps", "Lessons Learned", "Action Items");
+        assertThat(PromptBuilder.REPORT_SECTIONS.get(6).guidance()).contains("- [ ] Monitoring improvements");
+        assertThat(PromptBuilder.REPORT_FOOTER).isEqualTo("---\n*Generated by NileTrace Analysis Service*\n");
+    }
+
+    @Test
+    @DisplayName("Should ask for one section per prompt while sharing everything before the instruction")
+    void shouldBuildSectionPrompts() {
+        String logContent = "2024-01-15 10:05:00 ERROR Connection refused\n";
+        PromptBuilder.Prompt report = promptBuilder.build(createSnapshot(logContent), logContent);
+
+        List<PromptBuilder.Prompt> sections = promptBuilder.buildSectionPrompts(report);
+
+        assertThat(sections).hasSize(PromptBuilder.REPORT_SECTIONS.size());
+        String closing = report.userParts().get(report.userParts().size() - 1);
+        String sharedPrefix = report.userPrompt().substring(0, report.userPrompt().length() - closing.length());
+        assertThat(sections).allSatisfy(section -> {
+            assertThat(section.systemPrompt()).isSameAs(report.systemPrompt());
+            assertThat(section.userPrompt()).startsWith(sharedPrefix).contains("Connection refused");
+            assertThat(section.estimatedTokens()).isCloseTo(report.estimatedTokens(), within(40));
+        });
+        assertThat(sections.get(2).userPrompt())
+                .contains("Write only the \"Root Cause Analysis\" section")
+                .contains("Start with the line \"## Root Cause Analysis\"")
+                .doesNotContain("using exactly the template structure");
+    }
+
+    @Test
+    @DisplayName("Should render a section under its canonical heading, dropping repeated headings and other sections")
+    void shouldRenderSection() {
+        PromptBuilder.Section rootCause = PromptBuilder.REPORT_SECTIONS.get(2);
+
+        assertThat(rootCause.render("### root cause analysis\nPool exhausted.\n\n### Contributing Factors\n- Retries\n"
+                + "\n## Impact Assessment\nCheckout down\n---\n*Generated*"))
+                .isEqualTo("## Root Cause Analysis\nPool exhausted.\n\n### Contributing Factors\n- Retries\n\n");
+        assertThat(rootCause.render("  Pool exhausted.  "))
+                .isEqualTo("## Root Cause Analysis\nPool exhausted.\n\n");
+    }
+
+    @Test
+    @DisplayName("Should keep errors and collapse repeats when over budget")
+    void shouldFillBudgetByPriority() {
+        String logContent = buildLog();
+
+        PromptBuilder.Prompt prompt = promptBuilder.build(createSnapshot(logContent), logContent);
+
+        PromptBuilder.LogSelection selection = prompt.logSelection();
+        assertThat(selection.reduced()).isTrue();
+        assertThat(selection.tokens()).isLessThanOrEqualTo(400);
+        assertThat(selection.content())
+                .contains("ERROR Payment gateway returned 504 for order 98123")
+                .contains("[repeated")
+                .contains("2024-01-15T10:05:00Z");
+        assertThat(prompt.userPrompt()).contains("Log reduced to fit the model context");
+    }
+
+    @Test
+    @DisplayName("Should send the digest in full and fit the raw sample into the rest of the log budget")
+    void shouldBuildDigestPrompt() {
+        String sample = buildLog();
+        LogDigestService.Digest digest = new LogDigestService.Digest("### First Failure\n\nGateway 504\n", sample,
+                600, 600, sample.length());
+
+        PromptBuilder.Prompt prompt = promptBuilder.buildDigestPrompt(createSnapshot(sample), digest);
+
+        assertThat(prompt.systemPrompt()).isEqualTo(PromptBuilder.REPORT_SYSTEM_PROMPT);
+        assertThat(prompt.userPrompt())
+                .contains("## LOG DIGEST")
+                .contains("### First Failure\n\nGateway 504")
+                .contains("## RAW LOG SAMPLE")
+                .contains("ERROR Payment gateway returned 504 for order 98123");
+        assertThat(prompt.userPrompt().indexOf("## LOG DIGEST")).isLessThan(prompt.userPrompt().indexOf("## RAW LOG SAMPLE"));
+        assertThat(prompt.logSelection().tokens() + tokenEstimator.estimate(digest.content())).isLessThanOrEqualTo(400);
+    }
+
+    @Test
+    @DisplayName("Should never exceed the model context window")
+    void shouldRespectContextWindow() {
+        ReflectionTestUtils.setField(promptBuilder, "contextWindow", 4096 + 256 + 100);
+
+        assertThat(promptBuilder.logBudget(50)).isEqualTo(50);
+        assertThat(promptBuilder.logBudget(500)).isZero();
+    }
+
+    @Test
+    @DisplayName("Should split logs into token-bounded chunks without losing lines")
+    void shouldChunkLogs() {
+        String logContent = buildLog();
+
+        List<String> chunks = promptBuilder.chunkLogs(logContent, 500);
+
+        assertThat(chunks).hasSizeGreaterThan(1);
+        assertThat(chunks).allSatisfy(chunk -> assertThat(tokenEstimator.estimate(chunk)).isLessThanOrEqualTo(500));
+        assertThat(String.join("", chunks)).isEqualTo(logContent);
+    }
+
+    @Test
+    @DisplayName("Should keep a stack trace in the chunk of its exception message")
+    void shouldNotSplitStackTraces() {
+        String logContent = "2024-01-15 10:05:00 INFO Request accepted by the checkout handler\n".repeat(9)
+                + "2024-01-15 10:05:01 ERROR java.lang.IllegalStateException: pool exhausted\n"
+                + "\tat com.example.Pool.acquire(Pool.java:42)\n"
+                + "\tat com.example.Checkout.run(Checkout.java:7)\n"
+                + "2024-01-15 10:05:02 INFO Request accepted by the checkout handler\n";
+
+        List<String> chunks = promptBuilder.chunkLogs(logContent, 150);
+
+        assertThat(chunks).anySatisfy(chunk -> assertThat(chunk)
+                .contains("pool exhausted")
+                .contains("Pool.acquire")
+                .contains("Checkout.run"));
+    }
+
+    @Test
+    @DisplayName("Should build the reduce prompt from chunk summaries in order")
+    void shouldBuildReducePrompt() {
+        PromptBuilder.Prompt prompt = promptBuilder.buildReducePrompt(createSnapshot(""),
+                List.of("- Gateway 504s start at 10:05", "- Pool exhausted at 10:06"));
+
+        assertThat(prompt.systemPrompt()).isEqualTo(PromptBuilder.REPORT_SYSTEM_PROMPT);
+        assertThat(prompt.userPrompt()).contains("## LOG SUMMARIES");
+        assertThat(prompt.userPrompt().indexOf("Part 1 of 2")).isLessThan(prompt.userPrompt().indexOf("Part 2 of 2"));
+        assertThat(prompt.userPrompt().indexOf("Gateway 504s")).isLessThan(prompt.userPrompt().indexOf("Pool exhausted"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.niletrace.analysis.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReportStreamServiceTest {
+
+    private ReportStreamService reportStreamService;
+
+    @BeforeEach
+    void setUp() {
+        reportStreamService = new ReportStreamService();
+    }
+
+    @Test
+    @DisplayName("Should replay earlier tokens to late subscribers")
+    void shouldReplayTokensToLateSubscribers() {
+        UUID jobId = UUID.randomUUID();
+        reportStreamService.open(jobId);
+        reportStreamService.emit(jobId, "# Executive");
+
+        Flux<String> tokens = reportStreamService.tokens(jobId).orElseThrow();
+        reportStreamService.emit(jobId, " Summary");
+        reportStreamService.complete(jobId);
+
+        assertThat(tokens.collectList().block(Duration.ofSeconds(1))).containsExactly("# Executive", " Summary");
+        assertThat(reportStreamService.tokens(jobId)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should propagate job failure to subscribers")
+    void shouldPropagateFailure() {
+        UUID jobId = UUID.randomUUID();
+        reportStreamService.open(jobId);
+        Flux<String> tokens = reportStreamService.tokens(jobId).orElseThrow();
+
+        reportStreamService.fail(jobId, "Groq API call failed");
+
+        assertThatThrownBy(() -> tokens.blockLast(Duration.ofSeconds(1)))
+                .hasMessageContaining("Groq API call failed");
+    }
+}
@@ -0,0 +1,276 @@
+package com.niletrace.analysis.support;
+
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.NettyOutbound;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local, OpenAI-compatible stand-in for the Groq chat completions endpoint, served by
+ * Reactor Netty on a random port. Latency follows a {@link LatencyDistribution},
+ * streamed completions ({@code "stream":true}) are emitted as SSE at a fixed token rate,
+ * and a share of requests can be answered with 429 or 503 to exercise retries and the
+ * circuit breaker. Runs fully offline.
+ */
+public final class GroqStubServer implements AutoCloseable {
+
+    private final DisposableServer server;
+    private final LatencyDistribution latency;
+    private final List<String> completionTokens;
+    private final int tokensPerSecond;
+    private final double rateLimitRatio;
+    private final double serverErrorRatio;
+    private final Duration retryAfter;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private final AtomicInteger serverErrors = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicReference<String> lastContentEncoding = new AtomicReference<>();
+    private final AtomicReference<String> lastBody = new AtomicReference<>();
+
+    private GroqStubServer(Builder builder) {
+        this.latency = builder.latency;
+        this.completionTokens = tokenize(builder.completion);
+        this.tokensPerSecond = builder.tokensPerSecond;
+        this.rateLimitRatio = builder.rateLimitRatio;
+        this.serverErrorRatio = builder.serverErrorRatio;
+        this.retryAfter = builder.retryAfter;
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes.post("/chat/completions", (request, response) -> request.receive()
+                        .aggregate()
+                        .asByteArray()
+                        .defaultIfEmpty(new byte[0])
+                        .flatMap(bytes -> {
+                            String encoding = request.requestHeaders().get(HttpHeaderNames.CONTENT_ENCODING);
+                            String body = decode(bytes, encoding);
+                            lastContentEncoding.set(encoding);
+                            lastBody.set(body);
+                            return Mono.from(respond(body, response));
+                        })))
+                .bindNow();
+    }
+
+    public static GroqStubServer start(Duration latency) {
+        return builder().latency(LatencyDistribution.fixed(latency)).start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private NettyOutbound respond(String body, HttpServerResponse response) {
+        requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        Mono<Void> delay = Mono.delay(latency.next(ThreadLocalRandom.current())).then();
+        // Released before the last bytes are written: once the client has them it may reuse the connection
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+            }
+        };
+
+        double roll = ThreadLocalRandom.current().nextDouble();
+        if (roll < rateLimitRatio) {
+            rateLimited.incrementAndGet();
+            return response.status(HttpResponseStatus.TOO_MANY_REQUESTS)
+                    .header("retry-after", String.valueOf(retryAfter.toSeconds()))
+                    .sendString(delay.then(Mono.just("{\"error\":{\"message\":\"Rate limit reached\"}}"))
+                            .doOnNext(last -> release.run())
+                            .doFinally(signal -> release.run()));
+        }
+        if (roll < rateLimitRatio + serverErrorRatio) {
+            serverErrors.incrementAndGet();
+            return response.status(HttpResponseStatus.SERVICE_UNAVAILABLE)
+                    .sendString(delay.then(Mono.just("{\"error\":{\"message\":\"Service unavailable\"}}"))
+                            .doOnNext(last -> release.run())
+                            .doFinally(signal -> release.run()));
+        }
+
+        if (body.contains("\"stream\":true")) {
+            Flux<String> tokens = tokensPerSecond > 0
+                    ? Flux.fromIterable(completionTokens).delayElements(Duration.ofNanos(1_000_000_000L / tokensPerSecond))
+                    : Flux.fromIterable(completionTokens);
+            Flux<String> events = delay.thenMany(tokens)
+                    .map(token -> "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":" + quote(token) + "}}]}\n\n")
+                    .concatWithValues("data: {\"choices\":[{\"index\":0,\"delta\":{},\"finish_reason\":\"stop\"}]}\n\n")
+                    .concatWith(Mono.fromCallable(() -> {
+                        release.run();
+                        return "data: [DONE]\n\n";
+                    }))
+                    .doFinally(signal -> release.run());
+            return response.header(HttpHeaderNames.CONTENT_TYPE, "text/event-stream")
+                    .sendString(events);
+        }
+
+        String completion = "{\"id\":\"stub\",\"object\":\"chat.completion\",\"model\":\"stub\","
+                + "\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":"
+                + quote(String.join("", completionTokens)) + "},\"finish_reason\":\"stop\"}],"
+                + "\"usage\":{\"prompt_tokens\":" + body.length() / 4 + ",\"completion_tokens\":"
+                + completionTokens.size() + ",\"total_tokens\":" + (body.length() / 4 + completionTokens.size()) + "}}";
+        return response.header(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON)
+                .sendString(delay.then(Mono.just(completion))
+                        .doOnNext(last -> release.run())
+                        .doFinally(signal -> release.run()));
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public int requests() {
+        return requests.get();
+    }
+
+    public int rateLimited() {
+        return rateLimited.get();
+    }
+
+    public int serverErrors() {
+        return serverErrors.get();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public String lastContentEncoding() {
+        return lastContentEncoding.get();
+    }
+
+    /**
+     * Body of the last request, decompressed if it was sent gzipped.
+     */
+    public String lastBody() {
+        return lastBody.get();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private static List<String> tokenize(String completion) {
+        // Split after each space so the tokens concatenate back to the completion
+        List<String> tokens = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < completion.length(); i++) {
+            if (completion.charAt(i) == ' ') {
+                tokens.add(completion.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < completion.length()) {
+            tokens.add(completion.substring(start));
+        }
+        return List.copyOf(tokens);
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                default -> quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String decode(byte[] body, String encoding) {
+        if (!"gzip".equalsIgnoreCase(encoding)) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static final class Builder {
+        private LatencyDistribution latency = LatencyDistribution.fixed(Duration.ZERO);
+        private String completion = "# Executive Summary\nStub report.";
+        private int tokensPerSecond;
+        private double rateLimitRatio;
+        private double serverErrorRatio;
+        private Duration retryAfter = Duration.ofSeconds(1);
+
+        private Builder() {
+        }
+
+        public Builder latency(LatencyDistribution latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        /**
+         * Completion text; streamed responses emit it word by word.
+         */
+        public Builder completion(String completion) {
+            this.completion = completion;
+            return this;
+        }
+
+        /**
+         * Streaming rate after the first token; {@code 0} sends all tokens at once.
+         */
+        public Builder tokensPerSecond(int tokensPerSecond) {
+            this.tokensPerSecond = tokensPerSecond;
+            return this;
+        }
+
+        /**
+         * Share of requests answered with 429 and a {@code retry-after} header.
+         */
+        public Builder rateLimitRatio(double rateLimitRatio) {
+            this.rateLimitRatio = rateLimitRatio;
+            return this;
+        }
+
+        /**
+         * Share of requests answered with 503.
+         */
+        public Builder serverErrorRatio(double serverErrorRatio) {
+            this.serverErrorRatio = serverErrorRatio;
+            return this;
+        }
+
+        public Builder retryAfter(Duration retryAfter) {
+            this.retryAfter = retryAfter;
+            return this;
+        }
+
+        public GroqStubServer start() {
+            return new GroqStubServer(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.niletrace.analysis.support;
+
+import java.time.Duration;
+import java.util.random.RandomGenerator;
+
+/**
+ * Response latency model for {@link GroqStubServer}.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    // z-score of the 99th percentile of the standard normal distribution
+    double Z_99 = 2.326;
+
+    Duration next(RandomGenerator random);
+
+    static LatencyDistribution fixed(Duration latency) {
+        return random -> latency;
+    }
+
+    static LatencyDistribution uniform(Duration min, Duration max) {
+        long minNanos = min.toNanos();
+        long maxNanos = max.toNanos();
+        return random -> Duration.ofNanos(minNanos == maxNanos ? minNanos : random.nextLong(minNanos, maxNanos + 1));
+    }
+
+    /**
+     * Log-normal latencies with the given median and 99th percentile, the usual
+     * long-tailed shape of LLM API response times.
+     */
+    static LatencyDistribution logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z_99;
+        return random -> Duration.ofNanos((long) Math.exp(mu + sigma * random.nextGaussian()));
+    }
+}
@@ -4,6 +4,8 @@ import com.niletrace.incident.dto.*;
 import com.niletrace.incident.security.AuthenticatedUser;
 import com.niletrace.incident.service.IncidentService;
 import com.niletrace.incident.service.LogStorageService;
+import com.niletrace.incident.service.LogStreamIngestService;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
@@ -24,6 +26,7 @@ public class IncidentController {
 
     private final IncidentService incidentService;
     private final LogStorageService logStorageService;
+    private final LogStreamIngestService logStreamIngestService;
 
     /**
      * Create a new incident with optional text log content
@@ -102,6 +105,25 @@ public class IncidentController {
         return ResponseEntity.ok(new MessageResponse("Log content added successfully"));
     }
 
+    /**
+     * Append newline-delimited logs from a log shipper (NDJSON or plain text)
+     */
+    @PostMapping(value = "/{id}/logs/stream",
+            consumes = { MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_PLAIN_VALUE })
+    public ResponseEntity<LogIngestResponse> streamLogs(
+            @PathVariable UUID id,
+            HttpServletRequest request,
+            @AuthenticationPrincipal AuthenticatedUser user) throws IOException {
+
+        // Verify ownership
+        incidentService.getIncident(id, user.getUserId());
+
+        boolean ndjson = MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(request.getContentType()));
+        LogIngestResponse response = logStreamIngestService.ingest(id, request.getInputStream(), ndjson);
+
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Trigger AI analysis for an incident
      */
@@ -30,4 +30,5 @@ public class AnalysisJobRequest {
     private String serviceName;
     private String environment;
     private String region;
+    private UUID ownerId; // for per-owner token budgets
 }
@@ -0,0 +1,19 @@
+package com.niletrace.incident.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LogIngestResponse {
+
+    private long linesAccepted;
+    private long linesSkipped;
+    private long chunksWritten;
+    private long batchesWritten;
+    private long bytesRead;
+}
@@ -1,6 +1,7 @@
 package com.niletrace.incident.model;
 
 import com.niletrace.incident.model.enums.LogContentType;
+import com.niletrace.incident.model.enums.LogStorageTier;
 import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -26,7 +27,8 @@ public class IncidentLog {
     @Column(name = "incident_id", nullable = false)
     private UUID incidentId;
 
-    @Column(columnDefinition = "TEXT", nullable = false)
+    // Null once the log has been compacted to the cold tier
+    @Column(columnDefinition = "TEXT")
     private String content;
 
     @Enumerated(EnumType.STRING)
@@ -36,6 +38,18 @@ public class IncidentLog {
     @Column(name = "original_filename")
     private String originalFilename;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage_tier", nullable = false)
+    @Builder.Default
+    private LogStorageTier storageTier = LogStorageTier.HOT;
+
+    // Relative path of the compressed content in the cold tier
+    @Column(name = "cold_location")
+    private String coldLocation;
+
+    @Column(name = "stored_bytes")
+    private Long storedBytes;
+
     @CreationTimestamp
     @Column(name = "created_at", nullable = false, updatable = false)
     private OffsetDateTime createdAt;
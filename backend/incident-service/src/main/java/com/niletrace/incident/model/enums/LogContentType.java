@@ -2,5 +2,6 @@ package com.niletrace.incident.model.enums;
 
 public enum LogContentType {
     TEXT, // Plain text input from textarea
-    FILE // Uploaded file (.log, .txt, .json)
+    FILE, // Uploaded file (.log, .txt, .json)
+    STREAM // Appended by log shippers via the streaming endpoint
 }
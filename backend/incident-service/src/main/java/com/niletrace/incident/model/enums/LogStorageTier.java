@@ -0,0 +1,6 @@
+package com.niletrace.incident.model.enums;
+
+public enum LogStorageTier {
+    HOT, // Content stored inline in incident_logs
+    COLD // Content compacted to the cold file tier, row keeps a pointer
+}
@@ -0,0 +1,51 @@
+package com.niletrace.incident.repository;
+
+import com.niletrace.incident.model.IncidentLog;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * JDBC batch writer for high-volume log appends.
+ * Bypasses the persistence context so that streamed chunks are sent to the
+ * database in a single round trip per batch instead of one save() per row.
+ */
+@Repository
+@RequiredArgsConstructor
+public class IncidentLogBatchRepository {
+
+    private static final String INSERT_SQL = """
+            INSERT INTO incident_logs (id, incident_id, content, content_type, original_filename, storage_tier, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Inserts all rows as one JDBC batch. Ids and timestamps must already be set.
+     */
+    @Transactional
+    public void insertAll(List<IncidentLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_SQL, logs, logs.size(), (ps, logEntry) -> {
+            ps.setObject(1, logEntry.getId());
+            ps.setObject(2, logEntry.getIncidentId());
+            ps.setString(3, logEntry.getContent());
+            ps.setString(4, logEntry.getContentType().name());
+            if (logEntry.getOriginalFilename() != null) {
+                ps.setString(5, logEntry.getOriginalFilename());
+            } else {
+                ps.setNull(5, Types.VARCHAR);
+            }
+            ps.setString(6, logEntry.getStorageTier().name());
+            ps.setObject(7, logEntry.getCreatedAt());
+        });
+    }
+}
@@ -1,7 +1,10 @@
 package com.niletrace.incident.repository;
 
 import com.niletrace.incident.model.IncidentLog;
+import com.niletrace.incident.model.enums.LogStorageTier;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -10,7 +13,11 @@ import java.util.UUID;
 @Repository
 public interface IncidentLogRepository extends JpaRepository<IncidentLog, UUID> {
 
-    List<IncidentLog> findByIncidentId(UUID incidentId);
+    // Ordered so that streamed chunks are reassembled in arrival order
+    @Query("SELECT l FROM IncidentLog l WHERE l.incidentId = :incidentId ORDER BY l.createdAt")
+    List<IncidentLog> findByIncidentId(@Param("incidentId") UUID incidentId);
+
+    List<IncidentLog> findByIncidentIdAndStorageTier(UUID incidentId, LogStorageTier storageTier);
 
     void deleteByIncidentId(UUID incidentId);
 }
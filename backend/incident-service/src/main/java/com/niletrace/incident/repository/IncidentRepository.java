@@ -2,9 +2,11 @@ package com.niletrace.incident.repository;
 
 import com.niletrace.incident.model.Incident;
 import com.niletrace.incident.model.enums.IncidentStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -17,4 +19,8 @@ public interface IncidentRepository extends JpaRepository<Incident, UUID> {
     Optional<Incident> findByIdAndOwnerId(UUID id, UUID ownerId);
 
     List<Incident> findByOwnerIdAndStatus(UUID ownerId, IncidentStatus status);
+
+    // Keyset page of compaction candidates, resumable from the last processed id
+    List<Incident> findByStatusAndUpdatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+            IncidentStatus status, OffsetDateTime updatedBefore, UUID afterId, Pageable pageable);
 }
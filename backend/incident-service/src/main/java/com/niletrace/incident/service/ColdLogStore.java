@@ -0,0 +1,99 @@
+package com.niletrace.incident.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File-based cold tier for compacted incident logs.
+ * Content is stored gzip-compressed under {@code <directory>/<incidentId>/<logId>.log.gz}.
+ */
+@Service
+@Slf4j
+public class ColdLogStore {
+
+    private final Path root;
+
+    public ColdLogStore(@Value("${logs.cold.directory:./data/cold-logs}") String directory) {
+        this.root = Path.of(directory).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Compress and write log content, returning the location relative to the cold tier root.
+     */
+    public StoredLog write(UUID incidentId, UUID logId, String content) throws IOException {
+        String location = incidentId + "/" + logId + ".log.gz";
+        Path target = resolve(location);
+        Files.createDirectories(target.getParent());
+
+        // Write to a temp file first so a crash never leaves a truncated archive behind
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64 * 1024)) {
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return new StoredLog(location, Files.size(target));
+    }
+
+    /**
+     * Read and decompress log content from the cold tier.
+     */
+    public String read(String location) {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(resolve(location)), 64 * 1024)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read cold log " + location, e);
+        }
+    }
+
+    /**
+     * Remove all cold files for an incident.
+     */
+    public void deleteIncident(UUID incidentId) {
+        Path dir = resolve(incidentId.toString());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    log.warn("Failed to delete cold log file {}: {}", path, e.getMessage());
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to delete cold logs for incident {}: {}", incidentId, e.getMessage());
+        }
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    private Path resolve(String location) {
+        Path path = root.resolve(location).normalize();
+        if (!path.startsWith(root)) {
+            throw new IllegalArgumentException("Invalid cold log location: " + location);
+        }
+        return path;
+    }
+
+    public record StoredLog(String location, long storedBytes) {
+    }
+}
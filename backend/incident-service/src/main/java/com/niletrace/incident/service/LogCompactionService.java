@@ -0,0 +1,203 @@
+package com.niletrace.incident.service;
+
+import com.niletrace.incident.model.Incident;
+import com.niletrace.incident.model.IncidentLog;
+import com.niletrace.incident.model.enums.IncidentStatus;
+import com.niletrace.incident.model.enums.LogStorageTier;
+import com.niletrace.incident.repository.IncidentLogRepository;
+import com.niletrace.incident.repository.IncidentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Background job that moves logs of long-resolved incidents to the cold tier.
+ * Runs throttled to a byte rate and checkpoints its cursor after every incident,
+ * so a restart resumes where the previous pass stopped.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LogCompactionService {
+
+    static final String CHECKPOINT_FILE = "compaction.checkpoint";
+    private static final UUID START_CURSOR = new UUID(0L, 0L);
+
+    private final IncidentRepository incidentRepository;
+    private final IncidentLogRepository logRepository;
+    private final ColdLogStore coldLogStore;
+
+    @Value("${logs.compaction.enabled:true}")
+    private boolean enabled;
+
+    @Value("${logs.compaction.resolved-days:30}")
+    private int resolvedDays;
+
+    @Value("${logs.compaction.page-size:20}")
+    private int pageSize;
+
+    @Value("${logs.compaction.max-incidents-per-run:200}")
+    private int maxIncidentsPerRun;
+
+    @Value("${logs.compaction.max-bytes-per-second:5242880}")
+    private long maxBytesPerSecond;
+
+    /**
+     * Scheduled compaction pass (default: every hour).
+     */
+    @Scheduled(fixedDelayString = "${logs.compaction.interval-ms:3600000}",
+            initialDelayString = "${logs.compaction.initial-delay-ms:300000}")
+    public void compactResolvedIncidents() {
+        if (!enabled) {
+            return;
+        }
+
+        OffsetDateTime cutoff = OffsetDateTime.now().minusDays(resolvedDays);
+        Checkpoint checkpoint = loadCheckpoint();
+        Throttle throttle = new Throttle(maxBytesPerSecond);
+        int processed = 0;
+
+        log.info("Log compaction started (resolved before {}, resuming after {})", cutoff, checkpoint.cursor);
+
+        while (processed < maxIncidentsPerRun) {
+            List<Incident> candidates = incidentRepository.findByStatusAndUpdatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                    IncidentStatus.RESOLVED, cutoff, checkpoint.cursor,
+                    PageRequest.of(0, Math.min(pageSize, maxIncidentsPerRun - processed)));
+
+            if (candidates.isEmpty()) {
+                // Full pass complete - start from the beginning next time
+                checkpoint.cursor = START_CURSOR;
+                saveCheckpoint(checkpoint);
+                break;
+            }
+
+            for (Incident incident : candidates) {
+                compactIncident(incident.getId(), checkpoint, throttle);
+                checkpoint.cursor = incident.getId();
+                saveCheckpoint(checkpoint);
+                processed++;
+            }
+        }
+
+        log.info("Log compaction finished: {} incidents scanned, {} logs compacted in total ({} -> {} bytes)",
+                processed, checkpoint.compactedLogs, checkpoint.bytesIn, checkpoint.bytesOut);
+    }
+
+    private void compactIncident(UUID incidentId, Checkpoint checkpoint, Throttle throttle) {
+        List<IncidentLog> hotLogs = logRepository.findByIncidentIdAndStorageTier(incidentId, LogStorageTier.HOT);
+
+        for (IncidentLog logEntry : hotLogs) {
+            String content = logEntry.getContent() != null ? logEntry.getContent() : "";
+            try {
+                ColdLogStore.StoredLog stored = coldLogStore.write(incidentId, logEntry.getId(), content);
+
+                logEntry.setContent(null);
+                logEntry.setStorageTier(LogStorageTier.COLD);
+                logEntry.setColdLocation(stored.location());
+                logEntry.setStoredBytes(stored.storedBytes());
+                logRepository.save(logEntry);
+
+                long rawBytes = content.getBytes(StandardCharsets.UTF_8).length;
+                checkpoint.compactedLogs++;
+                checkpoint.bytesIn += rawBytes;
+                checkpoint.bytesOut += stored.storedBytes();
+                throttle.acquire(rawBytes + stored.storedBytes());
+            } catch (IOException e) {
+                // Leave the row hot; it will be retried on the next pass
+                log.error("Failed to compact log {} of incident {}: {}", logEntry.getId(), incidentId, e.getMessage());
+            }
+        }
+    }
+
+    Checkpoint loadCheckpoint() {
+        Checkpoint checkpoint = new Checkpoint();
+        Path file = coldLogStore.getRoot().resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return checkpoint;
+        }
+
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+            checkpoint.cursor = UUID.fromString(props.getProperty("cursor", START_CURSOR.toString()));
+            checkpoint.compactedLogs = Long.parseLong(props.getProperty("compactedLogs", "0"));
+            checkpoint.bytesIn = Long.parseLong(props.getProperty("bytesIn", "0"));
+            checkpoint.bytesOut = Long.parseLong(props.getProperty("bytesOut", "0"));
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Ignoring unreadable compaction checkpoint {}: {}", file, e.getMessage());
+            return new Checkpoint();
+        }
+        return checkpoint;
+    }
+
+    private void saveCheckpoint(Checkpoint checkpoint) {
+        Properties props = new Properties();
+        props.setProperty("cursor", checkpoint.cursor.toString());
+        props.setProperty("compactedLogs", Long.toString(checkpoint.compactedLogs));
+        props.setProperty("bytesIn", Long.toString(checkpoint.bytesIn));
+        props.setProperty("bytesOut", Long.toString(checkpoint.bytesOut));
+
+        Path file = coldLogStore.getRoot().resolve(CHECKPOINT_FILE);
+        Path temp = file.resolveSibling(CHECKPOINT_FILE + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                props.store(out, "NileTrace log compaction checkpoint");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.warn("Failed to write compaction checkpoint: {}", e.getMessage());
+        }
+    }
+
+    static class Checkpoint {
+        UUID cursor = START_CURSOR;
+        long compactedLogs;
+        long bytesIn;
+        long bytesOut;
+    }
+
+    /**
+     * Simple I/O rate limiter: sleeps whenever the pass runs ahead of the byte budget.
+     */
+    static class Throttle {
+        private final long bytesPerSecond;
+        private final long startNanos = System.nanoTime();
+        private long bytes;
+
+        Throttle(long bytesPerSecond) {
+            this.bytesPerSecond = bytesPerSecond;
+        }
+
+        void acquire(long count) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            bytes += count;
+            long expectedNanos = (long) (bytes * 1e9 / bytesPerSecond);
+            long aheadNanos = expectedNanos - (System.nanoTime() - startNanos);
+            if (aheadNanos > 0) {
+                try {
+                    Thread.sleep(aheadNanos / 1_000_000L, (int) (aheadNanos % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
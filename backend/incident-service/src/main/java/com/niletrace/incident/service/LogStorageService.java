@@ -2,11 +2,14 @@ package com.niletrace.incident.service;
 
 import com.niletrace.incident.model.IncidentLog;
 import com.niletrace.incident.model.enums.LogContentType;
+import com.niletrace.incident.model.enums.LogStorageTier;
 import com.niletrace.incident.repository.IncidentLogRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
@@ -20,6 +23,7 @@ import java.util.UUID;
 public class LogStorageService {
 
     private final IncidentLogRepository logRepository;
+    private final ColdLogStore coldLogStore;
 
     /**
      * Store plain text log content
@@ -79,17 +83,38 @@ public class LogStorageService {
             if (logEntry.getOriginalFilename() != null) {
                 combined.append("=== File: ").append(logEntry.getOriginalFilename()).append(" ===\n");
             }
-            combined.append(logEntry.getContent()).append("\n\n");
+            combined.append(getContent(logEntry)).append("\n\n");
         }
 
         return combined.toString();
     }
 
     /**
-     * Delete all logs for an incident
+     * Get log content, loading it from the cold tier if the log has been compacted
+     */
+    public String getContent(IncidentLog logEntry) {
+        if (logEntry.getStorageTier() == LogStorageTier.COLD) {
+            return coldLogStore.read(logEntry.getColdLocation());
+        }
+        return logEntry.getContent();
+    }
+
+    /**
+     * Delete all logs for an incident. Cold-tier files are removed once the transaction commits,
+     * so a rollback never leaves compacted rows pointing at deleted files.
      */
     @Transactional
     public void deleteLogsForIncident(UUID incidentId) {
         logRepository.deleteByIncidentId(incidentId);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            coldLogStore.deleteIncident(incidentId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                coldLogStore.deleteIncident(incidentId);
+            }
+        });
     }
 }
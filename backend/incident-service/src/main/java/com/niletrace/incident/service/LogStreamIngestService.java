@@ -0,0 +1,227 @@
+package com.niletrace.incident.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.incident.dto.LogIngestResponse;
+import com.niletrace.incident.model.IncidentLog;
+import com.niletrace.incident.model.enums.LogContentType;
+import com.niletrace.incident.repository.IncidentLogBatchRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streaming ingest for log shippers (Fluent Bit, Vector, ...).
+ * Reads the request body line by line, packs lines into chunks and appends
+ * the chunks with JDBC batch inserts, so the full body is never held in memory.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LogStreamIngestService {
+
+    private static final String[] MESSAGE_FIELDS = { "log", "message", "msg" };
+    private static final String[] TIMESTAMP_FIELDS = { "@timestamp", "timestamp", "time", "date" };
+    private static final String[] LEVEL_FIELDS = { "level", "severity", "lvl" };
+
+    private final IncidentLogBatchRepository batchRepository;
+    private final ObjectMapper objectMapper;
+
+    @Value("${logs.stream.chunk-lines:1000}")
+    private int chunkLines;
+
+    @Value("${logs.stream.chunk-bytes:262144}")
+    private int chunkBytes;
+
+    @Value("${logs.stream.batch-size:50}")
+    private int batchSize;
+
+    @Value("${logs.stream.max-line-length:16384}")
+    private int maxLineLength;
+
+    /**
+     * Append newline-delimited log data to an incident.
+     *
+     * @param incidentId Target incident (ownership must already be verified)
+     * @param body       Raw request body
+     * @param ndjson     Whether each line is a JSON object emitted by a shipper
+     */
+    public LogIngestResponse ingest(UUID incidentId, InputStream body, boolean ndjson) throws IOException {
+        log.info("Streaming log ingest started for incident: {} (ndjson={})", incidentId, ndjson);
+
+        IngestState state = new IngestState(incidentId);
+        CountingInputStream counted = new CountingInputStream(body);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(counted, StandardCharsets.UTF_8), 64 * 1024);
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String normalized = ndjson ? extractMessage(line) : line;
+            if (normalized == null || normalized.isBlank()) {
+                state.linesSkipped++;
+                continue;
+            }
+            if (normalized.length() > maxLineLength) {
+                normalized = normalized.substring(0, maxLineLength) + " [... LINE TRUNCATED ...]";
+            }
+
+            state.append(normalized);
+            if (state.chunkLineCount >= chunkLines || state.chunk.length() >= chunkBytes) {
+                state.sealChunk();
+                if (state.pending.size() >= batchSize) {
+                    flush(state);
+                }
+            }
+        }
+
+        state.sealChunk();
+        flush(state);
+
+        log.info("Streaming log ingest finished for incident: {} - {} lines in {} chunks ({} batches), {} skipped",
+                incidentId, state.linesAccepted, state.chunksWritten, state.batchesWritten, state.linesSkipped);
+
+        return LogIngestResponse.builder()
+                .linesAccepted(state.linesAccepted)
+                .linesSkipped(state.linesSkipped)
+                .chunksWritten(state.chunksWritten)
+                .batchesWritten(state.batchesWritten)
+                .bytesRead(counted.count)
+                .build();
+    }
+
+    private void flush(IngestState state) {
+        if (state.pending.isEmpty()) {
+            return;
+        }
+        batchRepository.insertAll(state.pending);
+        state.chunksWritten += state.pending.size();
+        state.batchesWritten++;
+        state.pending = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Turns one NDJSON record into a plain log line ("timestamp LEVEL message").
+     * Lines that are not JSON objects are kept verbatim.
+     */
+    String extractMessage(String line) {
+        String trimmed = line.trim();
+        if (!trimmed.startsWith("{")) {
+            return trimmed;
+        }
+
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(trimmed);
+        } catch (JsonProcessingException e) {
+            return trimmed;
+        }
+
+        String message = firstText(node, MESSAGE_FIELDS);
+        if (message == null) {
+            return trimmed;
+        }
+
+        StringBuilder result = new StringBuilder();
+        String timestamp = firstText(node, TIMESTAMP_FIELDS);
+        if (timestamp != null) {
+            result.append(timestamp).append(' ');
+        }
+        String level = firstText(node, LEVEL_FIELDS);
+        if (level != null) {
+            result.append(level.toUpperCase()).append(' ');
+        }
+        return result.append(message.stripTrailing()).toString();
+    }
+
+    private String firstText(JsonNode node, String[] fields) {
+        for (String field : fields) {
+            JsonNode value = node.get(field);
+            if (value != null && !value.isNull() && !value.isContainerNode()) {
+                return value.asText();
+            }
+        }
+        return null;
+    }
+
+    private class IngestState {
+        private final UUID incidentId;
+        private StringBuilder chunk = new StringBuilder();
+        private int chunkLineCount;
+        private List<IncidentLog> pending = new ArrayList<>();
+        private long linesAccepted;
+        private long linesSkipped;
+        private long chunksWritten;
+        private long batchesWritten;
+        private OffsetDateTime lastCreatedAt;
+
+        IngestState(UUID incidentId) {
+            this.incidentId = incidentId;
+        }
+
+        void append(String line) {
+            chunk.append(line).append('\n');
+            chunkLineCount++;
+            linesAccepted++;
+        }
+
+        void sealChunk() {
+            if (chunkLineCount == 0) {
+                return;
+            }
+            // Chunks are read back ordered by created_at, so keep timestamps strictly increasing
+            OffsetDateTime createdAt = OffsetDateTime.now();
+            if (lastCreatedAt != null && !createdAt.isAfter(lastCreatedAt)) {
+                createdAt = lastCreatedAt.plusNanos(1000);
+            }
+            lastCreatedAt = createdAt;
+
+            pending.add(IncidentLog.builder()
+                    .id(UUID.randomUUID())
+                    .incidentId(incidentId)
+                    .content(chunk.toString())
+                    .contentType(LogContentType.STREAM)
+                    .createdAt(createdAt)
+                    .build());
+            chunk = new StringBuilder();
+            chunkLineCount = 0;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+}
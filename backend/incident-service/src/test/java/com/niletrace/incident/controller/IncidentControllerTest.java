@@ -10,6 +10,7 @@ import com.niletrace.incident.model.enums.Severity;
 import com.niletrace.incident.security.AuthenticatedUser;
 import com.niletrace.incident.service.IncidentService;
 import com.niletrace.incident.service.LogStorageService;
+import com.niletrace.incident.service.LogStreamIngestService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -48,6 +49,9 @@ class IncidentControllerTest {
     @MockBean
     private LogStorageService logStorageService;
 
+    @MockBean
+    private LogStreamIngestService logStreamIngestService;
+
     private UUID userId;
     private UUID incidentId;
     private AuthenticatedUser authenticatedUser;
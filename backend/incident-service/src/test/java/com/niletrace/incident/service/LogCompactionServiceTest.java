@@ -0,0 +1,108 @@
+package com.niletrace.incident.service;
+
+import com.niletrace.incident.model.Incident;
+import com.niletrace.incident.model.IncidentLog;
+import com.niletrace.incident.model.enums.IncidentStatus;
+import com.niletrace.incident.model.enums.LogContentType;
+import com.niletrace.incident.model.enums.LogStorageTier;
+import com.niletrace.incident.repository.IncidentLogRepository;
+import com.niletrace.incident.repository.IncidentRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LogCompactionServiceTest {
+
+    @Mock
+    private IncidentRepository incidentRepository;
+
+    @Mock
+    private IncidentLogRepository logRepository;
+
+    @TempDir
+    Path coldDir;
+
+    private ColdLogStore coldLogStore;
+    private LogCompactionService compactionService;
+
+    @BeforeEach
+    void setUp() {
+        coldLogStore = new ColdLogStore(coldDir.toString());
+        compactionService = new LogCompactionService(incidentRepository, logRepository, coldLogStore);
+        ReflectionTestUtils.setField(compactionService, "enabled", true);
+        ReflectionTestUtils.setField(compactionService, "resolvedDays", 30);
+        ReflectionTestUtils.setField(compactionService, "pageSize", 10);
+        ReflectionTestUtils.setField(compactionService, "maxIncidentsPerRun", 10);
+        ReflectionTestUtils.setField(compactionService, "maxBytesPerSecond", 0L);
+    }
+
+    @Test
+    void compactResolvedIncidents_ShouldMoveContentToColdTier() {
+        Incident incident = Incident.builder()
+                .id(UUID.randomUUID())
+                .status(IncidentStatus.RESOLVED)
+                .updatedAt(OffsetDateTime.now().minusDays(60))
+                .build();
+        IncidentLog hotLog = IncidentLog.builder()
+                .id(UUID.randomUUID())
+                .incidentId(incident.getId())
+                .content("2026-01-16 10:00:00 ERROR Database timeout\n".repeat(100))
+                .contentType(LogContentType.TEXT)
+                .build();
+
+        when(incidentRepository.findByStatusAndUpdatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                eq(IncidentStatus.RESOLVED), any(OffsetDateTime.class), any(UUID.class), any(Pageable.class)))
+                .thenReturn(List.of(incident), List.of());
+        when(logRepository.findByIncidentIdAndStorageTier(incident.getId(), LogStorageTier.HOT))
+                .thenReturn(List.of(hotLog));
+
+        compactionService.compactResolvedIncidents();
+
+        ArgumentCaptor<IncidentLog> captor = ArgumentCaptor.forClass(IncidentLog.class);
+        verify(logRepository).save(captor.capture());
+        IncidentLog saved = captor.getValue();
+        assertEquals(LogStorageTier.COLD, saved.getStorageTier());
+        assertNull(saved.getContent());
+        assertTrue(saved.getStoredBytes() < 4400);
+        assertEquals("2026-01-16 10:00:00 ERROR Database timeout\n".repeat(100),
+                coldLogStore.read(saved.getColdLocation()));
+
+        LogCompactionService.Checkpoint checkpoint = compactionService.loadCheckpoint();
+        assertEquals(1, checkpoint.compactedLogs);
+        assertEquals(new UUID(0L, 0L), checkpoint.cursor);
+    }
+
+    @Test
+    void compactResolvedIncidents_ShouldResumeFromCheckpoint() throws Exception {
+        UUID lastProcessed = UUID.randomUUID();
+        Files.writeString(coldDir.resolve(LogCompactionService.CHECKPOINT_FILE), "cursor=" + lastProcessed + "\n");
+
+        when(incidentRepository.findByStatusAndUpdatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                eq(IncidentStatus.RESOLVED), any(OffsetDateTime.class), eq(lastProcessed), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        compactionService.compactResolvedIncidents();
+
+        verify(incidentRepository).findByStatusAndUpdatedAtBeforeAndIdGreaterThanOrderByIdAsc(
+                eq(IncidentStatus.RESOLVED), any(OffsetDateTime.class), eq(lastProcessed), any(Pageable.class));
+        verify(logRepository, never()).save(any());
+    }
+}
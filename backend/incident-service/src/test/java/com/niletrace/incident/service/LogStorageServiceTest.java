@@ -2,6 +2,7 @@ package com.niletrace.incident.service;
 
 import com.niletrace.incident.model.IncidentLog;
 import com.niletrace.incident.model.enums.LogContentType;
+import com.niletrace.incident.model.enums.LogStorageTier;
 import com.niletrace.incident.repository.IncidentLogRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -11,6 +12,8 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.io.IOException;
 import java.util.List;
@@ -26,6 +29,9 @@ class LogStorageServiceTest {
     @Mock
     private IncidentLogRepository logRepository;
 
+    @Mock
+    private ColdLogStore coldLogStore;
+
     @InjectMocks
     private LogStorageService logStorageService;
 
@@ -118,5 +124,52 @@ class LogStorageServiceTest {
         logStorageService.deleteLogsForIncident(incidentId);
 
         verify(logRepository).deleteByIncidentId(incidentId);
+        verify(coldLogStore).deleteIncident(incidentId);
+    }
+
+    @Test
+    void deleteLogsForIncident_InTransaction_ShouldDeleteColdFilesAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            logStorageService.deleteLogsForIncident(incidentId);
+
+            verify(logRepository).deleteByIncidentId(incidentId);
+            verify(coldLogStore, never()).deleteIncident(any());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(coldLogStore).deleteIncident(incidentId);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void deleteLogsForIncident_RolledBack_ShouldKeepColdFiles() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            logStorageService.deleteLogsForIncident(incidentId);
+
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+            verify(coldLogStore, never()).deleteIncident(any());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void getCombinedLogContent_ColdLog_ShouldReadFromColdTier() {
+        IncidentLog coldLog = IncidentLog.builder()
+                .contentType(LogContentType.STREAM)
+                .storageTier(LogStorageTier.COLD)
+                .coldLocation(incidentId + "/log.log.gz")
+                .build();
+
+        when(logRepository.findByIncidentId(incidentId)).thenReturn(List.of(coldLog));
+        when(coldLogStore.read(incidentId + "/log.log.gz")).thenReturn("Archived content");
+
+        String combined = logStorageService.getCombinedLogContent(incidentId);
+
+        assertTrue(combined.contains("Archived content"));
     }
 }
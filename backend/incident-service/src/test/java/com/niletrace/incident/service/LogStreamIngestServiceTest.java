@@ -0,0 +1,107 @@
+package com.niletrace.incident.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.niletrace.incident.dto.LogIngestResponse;
+import com.niletrace.incident.model.IncidentLog;
+import com.niletrace.incident.model.enums.LogContentType;
+import com.niletrace.incident.repository.IncidentLogBatchRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LogStreamIngestServiceTest {
+
+    @Mock
+    private IncidentLogBatchRepository batchRepository;
+
+    private LogStreamIngestService ingestService;
+
+    private UUID incidentId;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = new LogStreamIngestService(batchRepository, new ObjectMapper());
+        ReflectionTestUtils.setField(ingestService, "chunkLines", 2);
+        ReflectionTestUtils.setField(ingestService, "chunkBytes", 1024);
+        ReflectionTestUtils.setField(ingestService, "batchSize", 2);
+        ReflectionTestUtils.setField(ingestService, "maxLineLength", 1024);
+        incidentId = UUID.randomUUID();
+    }
+
+    @Test
+    void ingest_PlainText_ShouldChunkLinesAndWriteInBatches() throws IOException {
+        String body = "line 1\nline 2\nline 3\n\nline 4\nline 5\n";
+        List<List<IncidentLog>> batches = captureBatches();
+
+        LogIngestResponse response = ingestService.ingest(incidentId, stream(body), false);
+
+        assertEquals(5, response.getLinesAccepted());
+        assertEquals(1, response.getLinesSkipped());
+        assertEquals(3, response.getChunksWritten());
+        assertEquals(2, response.getBatchesWritten());
+        assertEquals(body.length(), response.getBytesRead());
+
+        assertEquals(2, batches.get(0).size());
+        assertEquals(1, batches.get(1).size());
+        IncidentLog first = batches.get(0).get(0);
+        assertEquals("line 1\nline 2\n", first.getContent());
+        assertEquals(LogContentType.STREAM, first.getContentType());
+        assertEquals(incidentId, first.getIncidentId());
+        assertNotNull(first.getId());
+        assertTrue(batches.get(0).get(1).getCreatedAt().isAfter(first.getCreatedAt()));
+    }
+
+    @Test
+    void ingest_Ndjson_ShouldFlattenShipperRecords() throws IOException {
+        String body = """
+                {"time":"2026-01-16T10:00:00Z","level":"error","log":"Database timeout"}
+                {"message":"Retrying","kubernetes":{"pod":"api-1"}}
+                not json at all
+                """;
+        List<List<IncidentLog>> batches = captureBatches();
+
+        LogIngestResponse response = ingestService.ingest(incidentId, stream(body), true);
+
+        assertEquals(3, response.getLinesAccepted());
+        String content = batches.get(0).get(0).getContent() + batches.get(0).get(1).getContent();
+        assertTrue(content.contains("2026-01-16T10:00:00Z ERROR Database timeout\n"));
+        assertTrue(content.contains("Retrying\n"));
+        assertTrue(content.contains("not json at all\n"));
+    }
+
+    @Test
+    void ingest_EmptyBody_ShouldNotWrite() throws IOException {
+        LogIngestResponse response = ingestService.ingest(incidentId, stream(""), false);
+
+        assertEquals(0, response.getLinesAccepted());
+        verify(batchRepository, never()).insertAll(anyList());
+    }
+
+    private List<List<IncidentLog>> captureBatches() {
+        List<List<IncidentLog>> batches = new ArrayList<>();
+        doAnswer(invocation -> {
+            batches.add(new ArrayList<>(invocation.getArgument(0)));
+            return null;
+        }).when(batchRepository).insertAll(anyList());
+        return batches;
+    }
+
+    private ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}